@@ -0,0 +1,138 @@
+package rtt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Local stand-in for the RFC 862 echo service on both UDP and TCP. An optional base delay plus
+// uniform jitter makes local runs look like a remote region.
+public class EchoServer implements AutoCloseable {
+    private final DatagramSocket udpSocket;
+    private final ServerSocket tcpSocket;
+    private final long delayMillis;
+    private final long jitterMillis;
+    private final ScheduledExecutorService delayer = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "echo-delay");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "echo-tcp");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public EchoServer(int port, long delayMillis, long jitterMillis) throws IOException {
+        this.udpSocket = new DatagramSocket(port);
+        this.tcpSocket = new ServerSocket(udpSocket.getLocalPort());
+        this.delayMillis = delayMillis;
+        this.jitterMillis = jitterMillis;
+        startThread(this::serveUdp, "echo-udp");
+        startThread(this::acceptTcp, "echo-accept");
+    }
+
+    public int getPort() {
+        return udpSocket.getLocalPort();
+    }
+
+    private static void startThread(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private long nextDelay() {
+        return delayMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+    }
+
+    private void serveUdp() {
+        byte[] buffer = new byte[1500];
+        while (!udpSocket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                udpSocket.receive(packet);
+                DatagramPacket reply = new DatagramPacket(packet.getData().clone(), packet.getLength(), packet.getSocketAddress());
+                delayer.schedule(() -> {
+                    try {
+                        udpSocket.send(reply);
+                    } catch (IOException e) {
+                        System.err.println("Echo reply failed: " + e.getMessage());
+                    }
+                }, nextDelay(), TimeUnit.MILLISECONDS);
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Echo receive failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void acceptTcp() {
+        while (!tcpSocket.isClosed()) {
+            try {
+                Socket socket = tcpSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.submit(() -> serveTcp(socket));
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Echo accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serveTcp(Socket socket) {
+        byte[] buffer = new byte[1500];
+        try (Socket s = socket; InputStream in = s.getInputStream(); OutputStream out = s.getOutputStream()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                long delay = nextDelay();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                out.write(buffer, 0, n);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Connection closed by the prober.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        udpSocket.close();
+        try {
+            tcpSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing echo server: " + e.getMessage());
+        }
+        delayer.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: java rtt.EchoServer <PORT> [DELAY_MS] [JITTER_MS]");
+            System.exit(1);
+        }
+        long delay = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        long jitter = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        try (EchoServer server = new EchoServer(Integer.parseInt(args[0]), delay, jitter)) {
+            System.out.println("Echo server listening on UDP/TCP port " + server.getPort()
+                    + " (delay " + delay + "ms, jitter " + jitter + "ms)");
+            Thread.currentThread().join();
+        }
+    }
+}
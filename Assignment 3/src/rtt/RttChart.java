@@ -0,0 +1,154 @@
+package rtt;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+// Draws the same three series the gnuplot script did (SampleRTT, EstimatedRTT, TimeoutInterval)
+// straight into a PNG, so no external plotting tool is needed.
+public final class RttChart {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 600;
+    private static final int LEFT = 80;
+    private static final int RIGHT = 30;
+    private static final int TOP = 50;
+    private static final int BOTTOM = 60;
+    private static final String[] SERIES = {"SampleRTT", "EstimatedRTT (EWMA)", "TimeoutInterval"};
+    private static final Color[] COLORS = {new Color(0x94, 0x00, 0xD3), new Color(0x00, 0x9E, 0x73), new Color(0x56, 0xB4, 0xE9)};
+
+    private RttChart() {
+    }
+
+    // Each point is {time in seconds, sample, estimated, timeout}; a NaN value leaves a gap (lost probe).
+    public static void render(Path file, String title, List<double[]> points) throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+
+            double maxX = 1;
+            double maxY = 1;
+            for (double[] p : points) {
+                maxX = Math.max(maxX, p[0]);
+                for (int s = 1; s <= SERIES.length; s++) {
+                    if (!Double.isNaN(p[s])) {
+                        maxY = Math.max(maxY, p[s]);
+                    }
+                }
+            }
+            maxX = niceCeiling(maxX);
+            maxY = niceCeiling(maxY * 1.05);
+
+            int plotWidth = WIDTH - LEFT - RIGHT;
+            int plotHeight = HEIGHT - TOP - BOTTOM;
+            drawAxes(g, maxX, maxY, plotWidth, plotHeight);
+
+            g.setStroke(new BasicStroke(2f));
+            for (int s = 0; s < SERIES.length; s++) {
+                g.setColor(COLORS[s]);
+                Path2D.Double line = new Path2D.Double();
+                boolean penDown = false;
+                for (double[] p : points) {
+                    double value = p[s + 1];
+                    if (Double.isNaN(value)) {
+                        penDown = false;
+                        continue;
+                    }
+                    double x = LEFT + p[0] / maxX * plotWidth;
+                    double y = TOP + plotHeight - value / maxY * plotHeight;
+                    if (penDown) {
+                        line.lineTo(x, y);
+                    } else {
+                        line.moveTo(x, y);
+                        penDown = true;
+                    }
+                    if (points.size() <= 200) {
+                        g.fillOval((int) x - 3, (int) y - 3, 7, 7);
+                    }
+                }
+                g.draw(line);
+            }
+
+            drawLegend(g);
+            g.setColor(Color.BLACK);
+            g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 16));
+            FontMetrics fm = g.getFontMetrics();
+            g.drawString(title, (WIDTH - fm.stringWidth(title)) / 2, TOP - 20);
+        } finally {
+            g.dispose();
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    private static void drawAxes(Graphics2D g, double maxX, double maxY, int plotWidth, int plotHeight) {
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        FontMetrics fm = g.getFontMetrics();
+        int ticks = 10;
+        for (int i = 0; i <= ticks; i++) {
+            int x = LEFT + i * plotWidth / ticks;
+            int y = TOP + plotHeight - i * plotHeight / ticks;
+            g.setColor(new Color(0xDD, 0xDD, 0xDD));
+            g.drawLine(x, TOP, x, TOP + plotHeight);
+            g.drawLine(LEFT, y, LEFT + plotWidth, y);
+
+            g.setColor(Color.BLACK);
+            String xLabel = format(maxX * i / ticks);
+            g.drawString(xLabel, x - fm.stringWidth(xLabel) / 2, TOP + plotHeight + 18);
+            String yLabel = format(maxY * i / ticks);
+            g.drawString(yLabel, LEFT - 8 - fm.stringWidth(yLabel), y + 4);
+        }
+        g.drawRect(LEFT, TOP, plotWidth, plotHeight);
+
+        String xAxis = "Time (seconds)";
+        g.drawString(xAxis, LEFT + (plotWidth - fm.stringWidth(xAxis)) / 2, HEIGHT - 15);
+        String yAxis = "RTT (milliseconds)";
+        Graphics2D rotated = (Graphics2D) g.create();
+        rotated.rotate(-Math.PI / 2);
+        rotated.drawString(yAxis, -(TOP + (plotHeight + fm.stringWidth(yAxis)) / 2), 20);
+        rotated.dispose();
+    }
+
+    private static void drawLegend(Graphics2D g) {
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        int x = LEFT + 15;
+        int y = TOP + 20;
+        for (int s = 0; s < SERIES.length; s++) {
+            g.setColor(COLORS[s]);
+            g.fillRect(x, y - 6 + s * 18, 24, 3);
+            g.setColor(Color.BLACK);
+            g.drawString(SERIES[s], x + 32, y + s * 18);
+        }
+    }
+
+    private static double niceCeiling(double value) {
+        double magnitude = Math.pow(10, Math.floor(Math.log10(value)));
+        for (double step : new double[] {1, 2, 2.5, 5, 10}) {
+            if (step * magnitude >= value) {
+                return step * magnitude;
+            }
+        }
+        return 10 * magnitude;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.1f", value);
+    }
+}
@@ -0,0 +1,60 @@
+package rtt;
+
+// TCP-style RTT estimation (RFC 6298 / Kurose & Ross):
+//   DevRTT          = (1 - beta) * DevRTT + beta * |SampleRTT - EstimatedRTT|   (using the previous EstimatedRTT)
+//   EstimatedRTT    = (1 - alpha) * EstimatedRTT + alpha * SampleRTT
+//   TimeoutInterval = EstimatedRTT + 4 * DevRTT
+// The first sample seeds EstimatedRTT = SampleRTT and DevRTT = SampleRTT / 2.
+public class RttEstimator {
+    public static final double DEFAULT_ALPHA = 0.125;
+    public static final double DEFAULT_BETA = 0.25;
+
+    private final double alpha;
+    private final double beta;
+    private double sampleRtt;
+    private double estimatedRtt;
+    private double devRtt;
+    private boolean seeded;
+
+    public RttEstimator() {
+        this(DEFAULT_ALPHA, DEFAULT_BETA);
+    }
+
+    public RttEstimator(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public synchronized void update(double sampleMillis) {
+        sampleRtt = sampleMillis;
+        if (!seeded) {
+            estimatedRtt = sampleMillis;
+            devRtt = sampleMillis / 2;
+            seeded = true;
+            return;
+        }
+        // RFC 6298 2.3: RTTVAR is updated with the old SRTT, before SRTT takes in the new sample
+        devRtt = (1 - beta) * devRtt + beta * Math.abs(sampleMillis - estimatedRtt);
+        estimatedRtt = (1 - alpha) * estimatedRtt + alpha * sampleMillis;
+    }
+
+    public synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    public synchronized double getSampleRtt() {
+        return sampleRtt;
+    }
+
+    public synchronized double getEstimatedRtt() {
+        return estimatedRtt;
+    }
+
+    public synchronized double getDevRtt() {
+        return devRtt;
+    }
+
+    public synchronized double getTimeoutInterval() {
+        return estimatedRtt + 4 * devRtt;
+    }
+}
@@ -0,0 +1,426 @@
+package rtt;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Replaces rtt_linux.sh / rtt_macos.sh: probes many targets concurrently over UDP or TCP echo,
+// keeps the EWMA estimators in-process, streams one CSV per region and renders the PNG chart.
+//
+// All UDP targets share one socket and one receive thread; in-flight probes are matched by id and
+// swept for timeouts, so hundreds of regions cost a handful of threads. TCP targets keep one
+// persistent connection each and probe on a shared scheduler pool.
+public class RttProber implements AutoCloseable {
+    private static final int PROBE_SIZE = 16;
+    private static final int MAX_CHART_POINTS = 2000;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long CHART_INTERVAL_MS = 10000;
+
+    public enum Protocol { UDP, TCP }
+
+    private final Protocol protocol;
+    private final long intervalMillis;
+    private final int samples;
+    private final long probeTimeoutMillis;
+    private final Path outputDir;
+    private final List<Target> targets = new ArrayList<>();
+    private final List<EchoServer> localEchoServers = new ArrayList<>();
+    private final Map<Long, Probe> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final DatagramSocket udpSocket;
+    private CountDownLatch finished;
+    private final long startNanos = System.nanoTime();
+
+    public RttProber(Protocol protocol, long intervalMillis, int samples, long probeTimeoutMillis, Path outputDir,
+                     int threads) throws SocketException {
+        this.protocol = protocol;
+        this.intervalMillis = intervalMillis;
+        this.samples = samples;
+        this.probeTimeoutMillis = probeTimeoutMillis;
+        this.outputDir = outputDir;
+        this.scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rtt-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        this.udpSocket = protocol == Protocol.UDP ? new DatagramSocket() : null;
+    }
+
+    // Host "local:DELAY[:JITTER]" starts an in-process echo server with that delay as a stand-in region.
+    public void addTarget(String hostSpec, String region) throws IOException {
+        InetSocketAddress address;
+        if (hostSpec.equals("local") || hostSpec.startsWith("local:")) {
+            String[] parts = hostSpec.split(":");
+            long delay = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+            long jitter = parts.length > 2 ? Long.parseLong(parts[2]) : 0;
+            EchoServer echo = new EchoServer(0, delay, jitter);
+            localEchoServers.add(echo);
+            address = new InetSocketAddress("127.0.0.1", echo.getPort());
+        } else {
+            int colon = hostSpec.lastIndexOf(':');
+            boolean hasPort = colon > 0 && hostSpec.indexOf(':') == colon;
+            address = new InetSocketAddress(hasPort ? hostSpec.substring(0, colon) : hostSpec,
+                    hasPort ? Integer.parseInt(hostSpec.substring(colon + 1)) : 7);
+        }
+        targets.add(new Target(targets.size(), region, hostSpec, address,
+                outputDir.resolve("data").resolve("rtt_" + region + ".csv")));
+    }
+
+    public void run() throws InterruptedException {
+        finished = new CountDownLatch(targets.size());
+        if (udpSocket != null) {
+            Thread receiver = new Thread(this::receiveUdp, "rtt-udp-receive");
+            receiver.setDaemon(true);
+            receiver.start();
+            scheduler.scheduleWithFixedDelay(this::expireProbes, 50, 50, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::flushAll, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::renderAll, CHART_INTERVAL_MS, CHART_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        System.out.println("Monitoring RTT for " + targets.size() + " target(s) over " + protocol
+                + " every " + intervalMillis + "ms" + (samples > 0 ? " (" + samples + " samples each)" : ""));
+        // Stagger first probes across one interval so targets do not fire in lockstep.
+        for (Target target : targets) {
+            long offset = targets.size() > 1 ? target.index * intervalMillis / targets.size() : 0;
+            target.task = scheduler.scheduleAtFixedRate(() -> probe(target), offset, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        finished.await();
+        renderAll();
+    }
+
+    private void probe(Target target) {
+        if (samples > 0 && target.sent >= samples) {
+            return;
+        }
+        long seq = ++target.sent;
+        if (samples > 0 && seq == samples && target.task != null) {
+            target.task.cancel(false);
+        }
+        if (protocol == Protocol.UDP) {
+            probeUdp(target, seq);
+        } else {
+            probeTcp(target, seq);
+        }
+    }
+
+    private void probeUdp(Target target, long seq) {
+        long id = ((long) target.index << 32) | seq;
+        byte[] payload = ByteBuffer.allocate(PROBE_SIZE).putLong(id).putLong(System.nanoTime()).array();
+        Probe probe = new Probe(target, seq, System.nanoTime());
+        inFlight.put(id, probe);
+        try {
+            udpSocket.send(new DatagramPacket(payload, payload.length, target.address));
+        } catch (IOException e) {
+            if (inFlight.remove(id) != null) {
+                target.record(seq, Double.NaN, "send failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void receiveUdp() {
+        byte[] buffer = new byte[1500];
+        while (!udpSocket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                udpSocket.receive(packet);
+                long now = System.nanoTime();
+                if (packet.getLength() < PROBE_SIZE) {
+                    continue;
+                }
+                Probe probe = inFlight.remove(ByteBuffer.wrap(packet.getData(), 0, PROBE_SIZE).getLong());
+                if (probe != null) {
+                    probe.target.record(probe.seq, (now - probe.sentNanos) / 1e6, null);
+                }
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Error receiving echo reply: " + e.getMessage());
+            }
+        }
+    }
+
+    // Late replies after the timeout are ignored; the probe is already counted as lost.
+    private void expireProbes() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(probeTimeoutMillis);
+        inFlight.forEach((id, probe) -> {
+            if (probe.sentNanos < cutoff && inFlight.remove(id, probe)) {
+                probe.target.record(probe.seq, Double.NaN, "timed out");
+            }
+        });
+    }
+
+    private void probeTcp(Target target, long seq) {
+        long sentNanos = System.nanoTime();
+        try {
+            if (target.tcpSocket == null) {
+                Socket socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout((int) probeTimeoutMillis);
+                socket.connect(target.address, (int) probeTimeoutMillis);
+                target.tcpSocket = socket;
+                target.tcpIn = new DataInputStream(socket.getInputStream());
+                target.tcpOut = new DataOutputStream(socket.getOutputStream());
+                sentNanos = System.nanoTime();
+            }
+            target.tcpOut.writeLong(seq);
+            target.tcpOut.writeLong(sentNanos);
+            target.tcpOut.flush();
+            long echoed;
+            do {
+                echoed = target.tcpIn.readLong();
+                target.tcpIn.readLong();
+            } while (echoed < seq);
+            target.record(seq, (System.nanoTime() - sentNanos) / 1e6, null);
+        } catch (IOException e) {
+            target.closeTcp();
+            target.record(seq, Double.NaN, e.getMessage());
+        }
+    }
+
+    private void flushAll() {
+        targets.forEach(Target::flush);
+    }
+
+    private void renderAll() {
+        targets.forEach(Target::render);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (udpSocket != null) {
+            udpSocket.close();
+        }
+        for (Target target : targets) {
+            target.closeTcp();
+            target.close();
+        }
+        localEchoServers.forEach(EchoServer::close);
+    }
+
+    private static class Probe {
+        final Target target;
+        final long seq;
+        final long sentNanos;
+
+        Probe(Target target, long seq, long sentNanos) {
+            this.target = target;
+            this.seq = seq;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private class Target {
+        final int index;
+        final String region;
+        final String host;
+        final InetSocketAddress address;
+        final Path csvFile;
+        final RttEstimator estimator = new RttEstimator();
+        final ArrayDeque<double[]> points = new ArrayDeque<>();
+        BufferedWriter csv;
+        volatile ScheduledFuture<?> task;
+        long sent;
+        long recorded;
+        long lost;
+        boolean done;
+        Socket tcpSocket;
+        DataInputStream tcpIn;
+        DataOutputStream tcpOut;
+
+        Target(int index, String region, String host, InetSocketAddress address, Path csvFile) throws IOException {
+            this.index = index;
+            this.region = region;
+            this.host = host;
+            this.address = address;
+            this.csvFile = csvFile;
+            Files.createDirectories(csvFile.getParent());
+            this.csv = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8);
+            csv.write("time_s,seq,sample_rtt_ms,estimated_rtt_ms,dev_rtt_ms,timeout_interval_ms\n");
+        }
+
+        // A lost probe is written with an empty SampleRTT and leaves the estimator untouched.
+        synchronized void record(long seq, double sampleMillis, String error) {
+            if (done) {
+                return;
+            }
+            // Rows are stamped when the outcome is known, which is when the estimator moves.
+            double time = (System.nanoTime() - startNanos) / 1e9;
+            boolean lostProbe = Double.isNaN(sampleMillis);
+            if (lostProbe) {
+                lost++;
+                System.out.printf("[%s] Seq %03d: lost (%s)%n", region, seq, error);
+            } else {
+                estimator.update(sampleMillis);
+                System.out.printf("[%s] Seq %03d: SampleRTT=%-7.2f ms | EstimatedRTT=%-7.2f ms | DevRTT=%-7.2f ms | Timeout=%-7.2f ms%n",
+                        region, seq, sampleMillis, estimator.getEstimatedRtt(), estimator.getDevRtt(), estimator.getTimeoutInterval());
+            }
+            if (estimator.isSeeded()) {
+                points.addLast(new double[] {time, sampleMillis, estimator.getEstimatedRtt(), estimator.getTimeoutInterval()});
+                if (points.size() > MAX_CHART_POINTS) {
+                    points.removeFirst();
+                }
+            }
+            try {
+                csv.write(String.format("%.3f,%d,%s,%s,%s,%s%n", time, seq, lostProbe ? "" : String.format("%.3f", sampleMillis),
+                        csvValue(estimator.getEstimatedRtt()), csvValue(estimator.getDevRtt()), csvValue(estimator.getTimeoutInterval())));
+            } catch (IOException e) {
+                System.err.println("Error writing " + csvFile + ": " + e.getMessage());
+            }
+
+            if (samples > 0 && ++recorded >= samples) {
+                // Modified by Brooks - The chart is drawn by run() once every target is done; rendering here would
+                // hold up the UDP receive thread (and every other target's replies) for the length of a PNG encode.
+                done = true;
+                close();
+                System.out.printf("[%s] Done: %d samples, %d lost. Data: %s%n", region, recorded, lost, csvFile);
+                finished.countDown();
+            }
+        }
+
+        private String csvValue(double value) {
+            return estimator.isSeeded() ? String.format("%.3f", value) : "";
+        }
+
+        synchronized void flush() {
+            try {
+                if (csv != null) {
+                    csv.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("Error flushing " + csvFile + ": " + e.getMessage());
+            }
+        }
+
+        synchronized void close() {
+            if (csv == null) {
+                return;
+            }
+            try {
+                csv.close();
+            } catch (IOException e) {
+                System.err.println("Error closing " + csvFile + ": " + e.getMessage());
+            }
+            csv = null;
+        }
+
+        void render() {
+            List<double[]> snapshot;
+            synchronized (this) {
+                if (points.isEmpty()) {
+                    return;
+                }
+                snapshot = new ArrayList<>(points);
+            }
+            Path plotFile = outputDir.resolve("graphs").resolve("rtt_plot_" + region + ".png");
+            try {
+                RttChart.render(plotFile, "RTT Analysis: " + region + " (" + host + ", " + protocol + ")", snapshot);
+            } catch (IOException e) {
+                System.err.println("Error rendering " + plotFile + ": " + e.getMessage());
+            }
+        }
+
+        void closeTcp() {
+            if (tcpSocket != null) {
+                try {
+                    tcpSocket.close();
+                } catch (IOException e) {
+                    // Already broken; reconnect on the next probe.
+                }
+                tcpSocket = null;
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java rtt.RttProber [--udp|--tcp] [--interval MS] [--samples N] [--timeout MS] [--threads N]");
+        System.out.println("                          [--out DIR] [--targets FILE] [<HOST[:PORT]> <REGION_NAME>]...");
+        System.out.println("  HOST may be local:DELAY_MS[:JITTER_MS] to probe an in-process echo stand-in.");
+        System.out.println("  --samples 0 probes until interrupted. The targets file holds one '<HOST[:PORT]> <REGION_NAME>' per line.");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        Protocol protocol = Protocol.UDP;
+        long interval = 500;
+        int samples = 20;
+        long timeout = 2000;
+        int threads = 0;
+        Path outputDir = Paths.get(".");
+        List<String[]> specs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--udp": protocol = Protocol.UDP; break;
+                    case "--tcp": protocol = Protocol.TCP; break;
+                    case "--interval": interval = Long.parseLong(args[++i]); break;
+                    case "--samples": samples = Integer.parseInt(args[++i]); break;
+                    case "--timeout": timeout = Long.parseLong(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--out": outputDir = Paths.get(args[++i]); break;
+                    case "--targets":
+                        for (String line : Files.readAllLines(Paths.get(args[++i]))) {
+                            line = line.trim();
+                            if (!line.isEmpty() && !line.startsWith("#")) {
+                                specs.add(line.split("\\s+"));
+                            }
+                        }
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || i + 1 >= args.length) {
+                            usage();
+                        }
+                        specs.add(new String[] {args[i], args[++i]});
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage();
+        }
+        if (specs.isEmpty()) {
+            usage();
+        }
+        if (threads <= 0) {
+            // TCP probes block for up to one RTT each, so give them more threads than UDP needs.
+            threads = protocol == Protocol.TCP ? Math.max(4, Math.min(specs.size(), 64)) : 4;
+        }
+
+        try (RttProber prober = new RttProber(protocol, interval, samples, timeout, outputDir, threads)) {
+            for (String[] spec : specs) {
+                if (spec.length != 2) {
+                    System.err.println("Invalid target line: " + String.join(" ", spec));
+                    System.exit(1);
+                }
+                prober.addTarget(spec[0], spec[1]);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                prober.flushAll();
+                prober.renderAll();
+            }));
+            prober.run();
+        }
+        System.out.println("\nResults saved under " + outputDir.resolve("data") + " and " + outputDir.resolve("graphs"));
+    }
+}
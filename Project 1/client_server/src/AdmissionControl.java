@@ -0,0 +1,155 @@
+package client_server.src;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AdmissionControl {
+    private static final long HINT_INTERVAL_MS = 1000;
+    private static final double HIGH_WATERMARK = 0.75;
+    private static final long SNAPSHOT_INTERVAL_MS = 1000;
+
+    private final BlockingQueue<Ingest> queue;
+    private final int queueCapacity;
+    private final double ratePerSource;
+    private final int burst;
+    private final long baseBackoffMillis;
+    private final Map<InetSocketAddress, SourceState> sources = new ConcurrentHashMap<>();
+    private final Set<InetAddress> trustedSources = ConcurrentHashMap.newKeySet();
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped;
+
+    public AdmissionControl(int queueCapacity, double ratePerSource, int burst, long baseBackoffMillis) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.ratePerSource = ratePerSource;
+        this.burst = burst;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    // Trusted sources (aggregators) skip the per-source token bucket but still respect the queue bound.
+    public void trust(InetAddress address) {
+        trustedSources.add(address);
+    }
+
+    // Called from the receive thread only; must stay cheap so the socket buffer keeps draining.
+    public boolean offer(byte[] data, InetSocketAddress source) {
+        long now = System.currentTimeMillis();
+        SourceState state = sources.computeIfAbsent(source, s -> new SourceState(burst, now));
+        state.lastSeen = now;
+
+        boolean trusted = trustedSources.contains(source.getAddress());
+        state.throttled = !(trusted || state.tryAcquire(now, ratePerSource, burst)) || !queue.offer(new Ingest(data, source));
+        if (state.throttled) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public boolean shouldHint(InetSocketAddress source) {
+        SourceState state = sources.get(source);
+        if (state == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if ((state.throttled || getFill() >= HIGH_WATERMARK) && now - state.lastHint >= HINT_INTERVAL_MS) {
+            state.lastHint = now;
+            return true;
+        }
+        return false;
+    }
+
+    // At most one full-state reply per source per SNAPSHOT_INTERVAL_MS; the request is tiny and
+    // the reply is not, so this keeps a spoofed or looping requester from turning the server into an amplifier
+    public boolean allowSnapshot(InetSocketAddress source) {
+        SourceState state = sources.get(source);
+        long now = System.currentTimeMillis();
+        if (state == null || now - state.lastSnapshot < SNAPSHOT_INTERVAL_MS) {
+            return false;
+        }
+        state.lastSnapshot = now;
+        return true;
+    }
+
+    public long suggestedBackoffMillis() {
+        return (long) (baseBackoffMillis * (1 + 4 * getFill()));
+    }
+
+    public Ingest take() throws InterruptedException {
+        return queue.take();
+    }
+
+    public boolean isBacklogEmpty() {
+        return queue.isEmpty();
+    }
+
+    public double getFill() {
+        return (double) queue.size() / queueCapacity;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // Drops since the previous call, for a periodic summary instead of a line per packet
+    public synchronized long takeDroppedSinceLastReport() {
+        long total = dropped.get();
+        long sinceLast = total - reportedDropped;
+        reportedDropped = total;
+        return sinceLast;
+    }
+
+    public void evictIdleSources(long idleMillis) {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        sources.values().removeIf(state -> state.lastSeen < cutoff);
+    }
+
+    public static class Ingest {
+        final byte[] data;
+        final InetSocketAddress source;
+
+        Ingest(byte[] data, InetSocketAddress source) {
+            this.data = data;
+            this.source = source;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public InetSocketAddress getSource() {
+            return source;
+        }
+    }
+
+    private static class SourceState {
+        double tokens;
+        long lastRefill;
+        volatile long lastSeen;
+        volatile long lastHint;
+        volatile long lastSnapshot;
+        volatile boolean throttled;
+
+        SourceState(int burst, long now) {
+            this.tokens = burst;
+            this.lastRefill = now;
+            this.lastSeen = now;
+        }
+
+        boolean tryAcquire(long now, double ratePerSecond, int burst) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerSecond / 1000.0);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
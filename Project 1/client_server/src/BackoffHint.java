@@ -0,0 +1,22 @@
+package client_server.src;
+
+import java.io.Serializable;
+
+public class BackoffHint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long backoffMillis;
+
+    public BackoffHint(long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SLOW_DOWN " + backoffMillis + "ms";
+    }
+}
@@ -0,0 +1,104 @@
+package client_server.src;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Server-side versioned cluster view. Every membership or listing change bumps the version and is
+// kept in a bounded change log, so a client that reports the version it holds gets back only the
+// changes it missed; clients too far behind (or on another epoch) get a chunked snapshot instead.
+public class ClusterViewLog {
+    private static final int MAX_UPDATE_BYTES = 48 * 1024;
+
+    private final long epoch = System.currentTimeMillis();
+    private final int capacity;
+    private final Map<Integer, NodeView> current = new HashMap<>();
+    private final ArrayDeque<ClusterViewUpdate.Change> changes = new ArrayDeque<>();
+    private long version;
+
+    public ClusterViewLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void put(NodeView view) {
+        current.put(view.getNodeId(), view);
+        append(new ClusterViewUpdate.Change(view.getNodeId(), view));
+    }
+
+    public synchronized void remove(int nodeId) {
+        if (current.remove(nodeId) != null) {
+            append(new ClusterViewUpdate.Change(nodeId, null));
+        }
+    }
+
+    private void append(ClusterViewUpdate.Change change) {
+        version++;
+        changes.addLast(change);
+        if (changes.size() > capacity) {
+            changes.removeFirst();
+        }
+    }
+
+    // knownVersion is null when the client holds nothing from this epoch.
+    public synchronized List<ClusterViewUpdate> updatesSince(Long knownVersion) {
+        long oldestBase = version - changes.size();
+        if (knownVersion == null || knownVersion < oldestBase || knownVersion > version) {
+            return snapshot();
+        }
+
+        // Collapse repeated changes to the same node, keeping only the latest.
+        Map<Integer, ClusterViewUpdate.Change> latest = new LinkedHashMap<>();
+        Iterator<ClusterViewUpdate.Change> it = changes.descendingIterator();
+        for (long v = version; v > knownVersion; v--) {
+            ClusterViewUpdate.Change change = it.next();
+            latest.putIfAbsent(change.getNodeId(), change);
+        }
+        List<ClusterViewUpdate.Change> delta = new ArrayList<>(latest.values());
+        Collections.reverse(delta);
+
+        int size = 0;
+        for (ClusterViewUpdate.Change change : delta) {
+            size += change.getView() != null ? change.getView().estimatedSize() : 16;
+        }
+        if (size > MAX_UPDATE_BYTES) {
+            return snapshot();
+        }
+        return Collections.singletonList(new ClusterViewUpdate(epoch, knownVersion, version, false, 0, 1, delta));
+    }
+
+    public synchronized List<ClusterViewUpdate> snapshot() {
+        List<List<ClusterViewUpdate.Change>> parts = new ArrayList<>();
+        List<ClusterViewUpdate.Change> part = new ArrayList<>();
+        int partSize = 0;
+        for (NodeView view : current.values()) {
+            int size = view.estimatedSize();
+            if (!part.isEmpty() && partSize + size > MAX_UPDATE_BYTES) {
+                parts.add(part);
+                part = new ArrayList<>();
+                partSize = 0;
+            }
+            part.add(new ClusterViewUpdate.Change(view.getNodeId(), view));
+            partSize += size;
+        }
+        parts.add(part);
+
+        List<ClusterViewUpdate> updates = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            updates.add(new ClusterViewUpdate(epoch, version, version, true, i, parts.size(), parts.get(i)));
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,108 @@
+package client_server.src;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Client-side copy of one server's cluster view, kept current by applying ClusterViewUpdates in
+// version order. A delta that does not start at the version we hold is reported as a gap so the
+// caller can ask for a snapshot.
+public class ClusterViewReplica {
+    public enum Result { APPLIED, UNCHANGED, PARTIAL, GAP, INVALID }
+
+    // Far above what the server's 256-entry view log can split into; anything larger is garbage
+    private static final int MAX_SNAPSHOT_CHUNKS = 4096;
+
+    private final Map<Integer, NodeView> nodes = new HashMap<>();
+    private long epoch;
+    private long version = -1;
+    private volatile long lastHeard;
+    private volatile boolean down;
+
+    private ClusterViewUpdate[] pendingChunks;
+    private long pendingEpoch;
+    private long pendingVersion;
+
+    public synchronized Result apply(ClusterViewUpdate update) {
+        if (update.getChanges() == null || update.getChunks() < 1 || update.getChunks() > MAX_SNAPSHOT_CHUNKS
+                || update.getChunk() < 0 || update.getChunk() >= update.getChunks()) {
+            return Result.INVALID;
+        }
+        lastHeard = System.currentTimeMillis();
+        boolean sameEpoch = version >= 0 && update.getServerEpoch() == epoch;
+
+        if (update.isSnapshot()) {
+            if (sameEpoch && update.getToVersion() <= version) {
+                return Result.UNCHANGED;
+            }
+            if (pendingChunks == null || pendingEpoch != update.getServerEpoch() || pendingVersion != update.getToVersion()
+                    || pendingChunks.length != update.getChunks()) {
+                pendingChunks = new ClusterViewUpdate[update.getChunks()];
+                pendingEpoch = update.getServerEpoch();
+                pendingVersion = update.getToVersion();
+            }
+            pendingChunks[update.getChunk()] = update;
+            for (ClusterViewUpdate chunk : pendingChunks) {
+                if (chunk == null) {
+                    return Result.PARTIAL;
+                }
+            }
+            nodes.clear();
+            for (ClusterViewUpdate chunk : pendingChunks) {
+                chunk.getChanges().forEach(change -> nodes.put(change.getNodeId(), change.getView()));
+            }
+            epoch = pendingEpoch;
+            version = pendingVersion;
+            pendingChunks = null;
+            return Result.APPLIED;
+        }
+
+        if (sameEpoch && update.getFromVersion() == version) {
+            if (update.getChanges().isEmpty()) {
+                return Result.UNCHANGED;
+            }
+            for (ClusterViewUpdate.Change change : update.getChanges()) {
+                if (change.getView() == null) {
+                    nodes.remove(change.getNodeId());
+                } else {
+                    nodes.put(change.getNodeId(), change.getView());
+                }
+            }
+            version = update.getToVersion();
+            return Result.APPLIED;
+        }
+        if (sameEpoch && update.getToVersion() <= version) {
+            return Result.UNCHANGED;
+        }
+        return Result.GAP;
+    }
+
+    public synchronized boolean hasView() {
+        return version >= 0;
+    }
+
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized Map<Integer, NodeView> getNodes() {
+        return Collections.unmodifiableMap(new TreeMap<>(nodes));
+    }
+
+    public long getLastHeard() {
+        return lastHeard;
+    }
+
+    public boolean isDown() {
+        return down;
+    }
+
+    public void setDown(boolean down) {
+        this.down = down;
+    }
+}
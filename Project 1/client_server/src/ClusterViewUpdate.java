@@ -0,0 +1,83 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.util.List;
+
+// One datagram of cluster-view state from an HBServer. Deltas carry the changes between two view
+// versions; snapshots carry the whole view and may be split into several chunks.
+public class ClusterViewUpdate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long serverEpoch;
+    private final long fromVersion;
+    private final long toVersion;
+    private final boolean snapshot;
+    private final int chunk;
+    private final int chunks;
+    private final List<Change> changes;
+
+    public ClusterViewUpdate(long serverEpoch, long fromVersion, long toVersion, boolean snapshot, int chunk, int chunks, List<Change> changes) {
+        this.serverEpoch = serverEpoch;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.snapshot = snapshot;
+        this.chunk = chunk;
+        this.chunks = chunks;
+        this.changes = changes;
+    }
+
+    public long getServerEpoch() {
+        return serverEpoch;
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public int getChunk() {
+        return chunk;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return (snapshot ? "VIEW_SNAPSHOT " + (chunk + 1) + "/" + chunks : "VIEW_DELTA v" + fromVersion)
+                + " -> v" + toVersion + " (" + changes.size() + " changes)";
+    }
+
+    // A null view means the node was removed from the cluster.
+    public static class Change implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int nodeId;
+        private final NodeView view;
+
+        public Change(int nodeId, NodeView view) {
+            this.nodeId = nodeId;
+            this.view = view;
+        }
+
+        public int getNodeId() {
+            return nodeId;
+        }
+
+        public NodeView getView() {
+            return view;
+        }
+    }
+}
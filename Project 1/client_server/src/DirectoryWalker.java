@@ -0,0 +1,286 @@
+package client_server.src;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+public class DirectoryWalker {
+    private static final int SUMMARY_DEPTH = 2;
+
+    private final Path root;
+    private final int maxDepth;
+    private final int maxFiles;
+    private final ForkJoinPool pool;
+    private DirNode tree;
+
+    public DirectoryWalker(Path root, int maxDepth, int maxFiles) {
+        this.root = root;
+        this.maxDepth = maxDepth;
+        this.maxFiles = maxFiles;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    // Re-walks the whole tree. Directories whose mtime has not changed reuse their previous listing,
+    // so only the entries themselves are re-stat'ed.
+    // Listing runs in parallel, but the max_files cut is made afterwards in one sequential pass
+    // over the sorted tree, so the same directory contents always give the same listing no matter which task
+    // finished first. Only the files that survive the cut are stat'ed.
+    public synchronized void walk() {
+        DirNode fresh = pool.invoke(new WalkTask(root, "", 0, tree));
+        allot(fresh, maxFiles);
+        pool.invoke(new StatTask(root, fresh));
+        tree = fresh;
+    }
+
+    // Re-walks only the subtree at relativePath ('/' separators) and splices it into the cached tree. Directories
+    // outside it keep their listings and file stats; they are only re-stat'ed if the max_files cut moved across
+    // them. A path that is not in the tree yet re-walks its deepest known ancestor. Since a file's contents can
+    // change without touching its directory's mtime, callers use this when they know where the change happened.
+    public synchronized void refresh(String relativePath) {
+        if (tree == null) {
+            walk();
+            return;
+        }
+        DirNode parent = null;
+        DirNode node = tree;
+        for (String part : relativePath.split("/")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            DirNode child = node.children.get(part);
+            if (child == null) {
+                break;
+            }
+            parent = node;
+            node = child;
+        }
+        DirNode fresh = pool.invoke(new WalkTask(root.resolve(node.relativePath), node.relativePath, node.depth, node));
+        if (parent == null) {
+            tree = fresh;
+        } else {
+            parent.children.put(fresh.name, fresh);
+        }
+        allot(tree, maxFiles);
+        pool.invoke(new StatTask(root, tree));
+    }
+
+    // Pre-order, name-sorted: a directory's own files come before its subdirectories
+    private static int allot(DirNode node, int remaining) {
+        node.keptFiles = Math.min(node.fileNames.size(), remaining);
+        node.selfTruncated = node.listingTruncated || node.keptFiles < node.fileNames.size();
+        remaining -= node.keptFiles;
+        for (DirNode child : node.children.values()) {
+            remaining = allot(child, remaining);
+        }
+        return remaining;
+    }
+
+    public synchronized List<String> getFileList() {
+        List<String> fileList = new ArrayList<>();
+        if (tree != null) {
+            collectFiles(tree, fileList);
+        }
+        return fileList;
+    }
+
+    public synchronized TreeSummary getSummary() {
+        List<TreeSummary.DirSummary> directories = new ArrayList<>();
+        if (tree == null) {
+            return new TreeSummary(directories, false);
+        }
+        collectSummary(tree, directories);
+        return new TreeSummary(directories, tree.truncated);
+    }
+
+    private static void collectFiles(DirNode node, List<String> fileList) {
+        String prefix = node.relativePath.isEmpty() ? "" : node.relativePath + "/";
+        for (FileEntry file : node.files) {
+            fileList.add(prefix + file.name);
+        }
+        for (DirNode child : node.children.values()) {
+            collectFiles(child, fileList);
+        }
+    }
+
+    private static void collectSummary(DirNode node, List<TreeSummary.DirSummary> directories) {
+        directories.add(new TreeSummary.DirSummary(node.relativePath, node.totalFiles, node.totalBytes, node.newestModified));
+        if (node.depth < SUMMARY_DEPTH) {
+            for (DirNode child : node.children.values()) {
+                collectSummary(child, directories);
+            }
+        }
+    }
+
+    private class WalkTask extends RecursiveTask<DirNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final String relativePath;
+        private final int depth;
+        private final DirNode previous;
+
+        WalkTask(Path dir, String relativePath, int depth, DirNode previous) {
+            this.dir = dir;
+            this.relativePath = relativePath;
+            this.depth = depth;
+            this.previous = previous;
+        }
+
+        @Override
+        protected DirNode compute() {
+            Path fileName = dir.getFileName();
+            DirNode node = new DirNode(depth == 0 || fileName == null ? "" : fileName.toString(), relativePath, depth);
+            try {
+                node.dirModified = Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).toMillis();
+                if (previous != null && previous.dirModified == node.dirModified) {
+                    node.fileNames = previous.fileNames;
+                    node.subdirNames = previous.subdirNames;
+                } else {
+                    listDirectory(node);
+                }
+            } catch (IOException | SecurityException e) {
+                System.err.println("Error reading directory " + dir + ": " + e.getMessage());
+                node.listingTruncated = true;
+                return node;
+            }
+
+            if (depth >= maxDepth) {
+                node.listingTruncated = !node.subdirNames.isEmpty();
+            } else {
+                List<WalkTask> tasks = new ArrayList<>();
+                for (String name : node.subdirNames) {
+                    String childPath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+                    DirNode previousChild = previous != null ? previous.children.get(name) : null;
+                    tasks.add(new WalkTask(dir.resolve(name), childPath, depth + 1, previousChild));
+                }
+                for (WalkTask task : invokeAll(tasks)) {
+                    DirNode child = task.join();
+                    node.children.put(child.name, child);
+                }
+            }
+            return node;
+        }
+
+        private void listDirectory(DirNode node) throws IOException {
+            List<String> fileNames = new ArrayList<>();
+            List<String> subdirNames = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    // Symlinks are skipped so that link cycles cannot make the walk unbounded.
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subdirNames.add(entry.getFileName().toString());
+                    } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        fileNames.add(entry.getFileName().toString());
+                    }
+                }
+            }
+            Collections.sort(fileNames);
+            node.fileNames = fileNames;
+            node.subdirNames = subdirNames;
+        }
+    }
+
+    // Stats the files allotted to each directory and aggregates the totals bottom-up
+    private static class StatTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final DirNode node;
+
+        StatTask(Path dir, DirNode node) {
+            this.dir = dir;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            List<StatTask> tasks = new ArrayList<>();
+            for (DirNode child : node.children.values()) {
+                tasks.add(new StatTask(dir.resolve(child.name), child));
+            }
+            invokeAll(tasks);
+
+            // A node kept from an earlier walk still holds the stats for the same files
+            if (node.statedFiles == node.keptFiles) {
+                node.aggregate();
+                return;
+            }
+            node.files.clear();
+            node.statedFiles = node.keptFiles;
+            for (String name : node.fileNames.subList(0, node.keptFiles)) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(dir.resolve(name), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    node.files.add(new FileEntry(name, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                } catch (IOException | SecurityException e) {
+                    // Removed since it was listed; the next walk will not see it either
+                }
+            }
+            node.aggregate();
+        }
+    }
+
+    private static class DirNode {
+        final String name;
+        final String relativePath;
+        final int depth;
+        long dirModified;
+        List<String> fileNames = Collections.emptyList();
+        List<String> subdirNames = Collections.emptyList();
+        int keptFiles;
+        int statedFiles = -1;
+        final List<FileEntry> files = new ArrayList<>();
+        final Map<String, DirNode> children = new TreeMap<>();
+        int totalFiles;
+        long totalBytes;
+        long newestModified;
+        boolean listingTruncated;
+        boolean selfTruncated;
+        boolean truncated;
+
+        DirNode(String name, String relativePath, int depth) {
+            this.name = name;
+            this.relativePath = relativePath;
+            this.depth = depth;
+        }
+
+        void aggregate() {
+            totalFiles = files.size();
+            totalBytes = 0;
+            newestModified = 0;
+            truncated = selfTruncated;
+            for (FileEntry file : files) {
+                totalBytes += file.size;
+                newestModified = Math.max(newestModified, file.modified);
+            }
+            for (DirNode child : children.values()) {
+                totalFiles += child.totalFiles;
+                totalBytes += child.totalBytes;
+                newestModified = Math.max(newestModified, child.newestModified);
+                truncated |= child.truncated;
+            }
+        }
+    }
+
+    private static class FileEntry {
+        final String name;
+        final long size;
+        final long modified;
+
+        FileEntry(String name, long size, long modified) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+public class FileBloomFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_BITS = 64;
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+
+    private FileBloomFilter(int numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = new long[(numBits + 63) / 64];
+    }
+
+    // Sized for the given false-positive rate: m = -n ln p / (ln 2)^2, k = (m / n) ln 2.
+    public static FileBloomFilter build(Collection<String> fileNames, double falsePositiveRate) {
+        int n = Math.max(1, fileNames.size());
+        int m = (int) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(MIN_BITS, (m + 63) / 64 * 64);
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+
+        FileBloomFilter filter = new FileBloomFilter(m, k);
+        for (String name : fileNames) {
+            filter.add(name);
+        }
+        return filter;
+    }
+
+    private void add(String name) {
+        long hash = hash64(name);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String name) {
+        long hash = hash64(name);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    // FNV-1a over the UTF-8 bytes followed by a murmur3 finalizer to spread the high bits.
+    private static long hash64(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter{" + numBits + " bits, k=" + numHashes + "}";
+    }
+}
@@ -0,0 +1,186 @@
+package client_server.src;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class FileListCodec {
+    private static final int FLAG_DEFLATED = 0x01;
+    // Upper bound on an inflated listing, so a small crafted packet cannot expand without limit.
+    // Listings larger than this are sent front-coded only, which the decoder never inflates.
+    private static final int MAX_INFLATED = 1 << 20;
+
+    // Preset dictionary for the Deflater pass, built from fragments that show up in most home directories.
+    // Both ends must use the same bytes, so changing it means bumping the HACPacket serialVersionUID.
+    private static final byte[] DICTIONARY = (
+            "README.md.gitignore.DS_Store.bashrc.profile.config.cache.local/share/"
+            + "Documents/Downloads/Desktop/Pictures/Music/Videos/Projects/src/main/java/test/"
+            + "build.gradlepom.xmlMakefile.json.xml.yaml.yml.properties.log.tmp.bak.old"
+            + ".class.java.py.js.ts.html.css.c.h.cpp.go.rs.sh.txt.csv.pdf.doc.docx.xls.xlsx"
+            + ".zip.tar.gz.jar.png.jpg.jpeg.gif.svg.mp3.mp4.mov.avi.mkv"
+            + "file1file2file3file4file5file6file7file8file9file0_copy-backup-final-draft-"
+            + "image_IMG_DSC_Screenshot 2024-2025-01-02-03-04-05-06-07-08-09-10-11-12-"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private FileListCodec() {
+    }
+
+    public static byte[] encode(List<String> fileList) {
+        byte[] frontCoded = frontCode(fileList);
+        byte[] deflated = frontCoded.length <= MAX_INFLATED ? deflate(frontCoded) : null;
+
+        byte[] out;
+        if (deflated != null && deflated.length < frontCoded.length) {
+            out = new byte[deflated.length + 1];
+            out[0] = FLAG_DEFLATED;
+            System.arraycopy(deflated, 0, out, 1, deflated.length);
+        } else {
+            out = new byte[frontCoded.length + 1];
+            System.arraycopy(frontCoded, 0, out, 1, frontCoded.length);
+        }
+        return out;
+    }
+
+    public static List<String> decode(byte[] encoded) {
+        if (encoded == null || encoded.length == 0) {
+            return Collections.emptyList();
+        }
+        byte[] body = Arrays.copyOfRange(encoded, 1, encoded.length);
+        if ((encoded[0] & FLAG_DEFLATED) != 0) {
+            body = inflate(body);
+        }
+        return unFrontCode(body);
+    }
+
+    private static byte[] frontCode(List<String> fileList) {
+        List<String> sorted = new ArrayList<>(fileList);
+        Collections.sort(sorted);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, sorted.size());
+        byte[] previous = new byte[0];
+        for (String name : sorted) {
+            byte[] current = name.getBytes(StandardCharsets.UTF_8);
+            int shared = sharedPrefix(previous, current);
+            writeVarInt(out, shared);
+            writeVarInt(out, current.length - shared);
+            out.write(current, shared, current.length - shared);
+            previous = current;
+        }
+        return out.toByteArray();
+    }
+
+    private static List<String> unFrontCode(byte[] data) {
+        int[] pos = {0};
+        int count = readVarInt(data, pos);
+        // Every entry takes at least two bytes (shared and suffix lengths), which bounds an honest count
+        if (count > (data.length - pos[0]) / 2) {
+            throw new IllegalArgumentException("Corrupted file listing: " + count + " entries in " + data.length + " bytes");
+        }
+        List<String> fileList = new ArrayList<>(count);
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            int shared = readVarInt(data, pos);
+            int suffixLength = readVarInt(data, pos);
+            if (shared > previous.length || pos[0] + suffixLength > data.length) {
+                throw new IllegalArgumentException("Corrupted file listing at entry " + i);
+            }
+            byte[] current = new byte[shared + suffixLength];
+            System.arraycopy(previous, 0, current, 0, shared);
+            System.arraycopy(data, pos[0], current, shared, suffixLength);
+            pos[0] += suffixLength;
+            fileList.add(new String(current, StandardCharsets.UTF_8));
+            previous = current;
+        }
+        return fileList;
+    }
+
+    // Only shares whole UTF-8 sequences so that suffixes never start on a continuation byte.
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int limit = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < limit && a[i] == b[i]) {
+            i++;
+        }
+        while (i > 0 && i < b.length && (b[i] & 0xC0) == 0x80) {
+            i--;
+        }
+        return i;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(data.length * 4, MAX_INFLATED));
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalArgumentException("Truncated file listing");
+                    }
+                }
+                if (out.size() + n > MAX_INFLATED) {
+                    throw new IllegalArgumentException("File listing inflates past " + MAX_INFLATED + " bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted file listing: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= data.length || shift > 28) {
+                throw new IllegalArgumentException("Corrupted file listing: bad length");
+            }
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class HACDigest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int aggregatorId;
+    private final long epoch;
+    private final long sequence;
+    private final List<Entry> entries;
+
+    public HACDigest(int aggregatorId, long epoch, long sequence, List<Entry> entries) {
+        this.aggregatorId = aggregatorId;
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.entries = entries;
+    }
+
+    public int getAggregatorId() {
+        return aggregatorId;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return "Digest from aggregator " + aggregatorId + " | Seq: " + sequence + " | Nodes: " + entries.size();
+    }
+
+    // Liveness for one node. The full packet is only included when its file listing changed since the
+    // last digest, or on a periodic keyframe, so unchanged nodes cost a few bytes each.
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int nodeId;
+        private final long epoch;
+        private final long sequence;
+        private final long lastSeenAge;
+        private final String nodeIp;
+        private final Telemetry telemetry;
+        private final HACPacket packet;
+
+        public Entry(int nodeId, long epoch, long sequence, long lastSeenAge, String nodeIp, Telemetry telemetry, HACPacket packet) {
+            this.nodeId = nodeId;
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.lastSeenAge = lastSeenAge;
+            this.nodeIp = nodeIp;
+            this.telemetry = telemetry;
+            this.packet = packet;
+        }
+
+        public int getNodeId() {
+            return nodeId;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getLastSeenAge() {
+            return lastSeenAge;
+        }
+
+        public String getNodeIp() {
+            return nodeIp;
+        }
+
+        public Telemetry getTelemetry() {
+            return telemetry;
+        }
+
+        public HACPacket getPacket() {
+            return packet;
+        }
+    }
+}
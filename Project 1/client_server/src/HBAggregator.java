@@ -0,0 +1,220 @@
+package client_server.src;
+
+import java.io.*;
+import java.net.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class HBAggregator {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int MAX_DIGEST_SIZE = 60000;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final int AGGREGATOR_ID = secureRandom.nextInt(1000);
+    private static final long EPOCH = System.currentTimeMillis();
+    private static long sequenceCounter = 1;
+    private static long digestCounter = 0;
+
+    private static int PORT;
+    private static List<String> SERVER_IPS;
+    private static int SERVER_PORT;
+    private static long DIGEST_INTERVAL_MS;
+    private static int KEYFRAME_EVERY;
+
+    private static final Map<Integer, NodeState> nodes = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) {
+        loadAggregatorConfig("client_server/config/aggregator.txt");
+
+        // Digests go out from the heartbeat socket, so a server's keyframe request comes back to this loop
+        try (DatagramSocket socket = new DatagramSocket(PORT)) {
+            socket.setSoTimeout(5000);
+            socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+            System.out.println("Aggregator " + AGGREGATOR_ID + " listening for heartbeats on port " + PORT);
+
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+            // An exception escaping a fixed-rate task silently cancels every later run, so it is caught here
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    sendDigest(socket);
+                } catch (RuntimeException e) {
+                    System.err.println("Error sending digest: " + e);
+                }
+            }, DIGEST_INTERVAL_MS, DIGEST_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+            byte[] receiveData = new byte[MAX_DATAGRAM_SIZE];
+            while (true) {
+                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+                try {
+                    socket.receive(receivePacket);
+                    try (ObjectInputStream ois = new ObjectInputStream(
+                            new ByteArrayInputStream(receivePacket.getData(), 0, receivePacket.getLength()))) {
+                        Object message = ois.readObject();
+                        if (message instanceof KeyframeRequest) {
+                            handleKeyframeRequest((KeyframeRequest) message, receivePacket.getAddress());
+                            continue;
+                        }
+                        HACPacket packet = (HACPacket) message;
+                        recordHeartbeat(packet, receivePacket.getAddress().getHostAddress());
+                    } catch (ClassNotFoundException | ClassCastException e) {
+                        System.err.println("Invalid packet received: " + e.getMessage());
+                    } catch (InvalidClassException e) {
+                        System.err.println("Corrupted packet received: " + e.getMessage());
+                    }
+                } catch (SocketTimeoutException e) {
+                    System.err.println("Socket timeout: No packets received in the last 5 seconds.");
+                } catch (IOException e) {
+                    System.err.println("Error receiving packet: " + e.getMessage());
+                }
+            }
+        } catch (SocketException e) {
+            System.err.println("Error creating or configuring socket: " + e.getMessage());
+        }
+    }
+
+    private static void loadAggregatorConfig(String filePath) {
+        try {
+            Properties props = new Properties();
+            props.load(new FileInputStream(filePath));
+            PORT = Integer.parseInt(props.getProperty("port"));
+            SERVER_IPS = Arrays.asList(props.getProperty("server_ips").split(","));
+            SERVER_PORT = Integer.parseInt(props.getProperty("server_port"));
+            DIGEST_INTERVAL_MS = Long.parseLong(props.getProperty("digest_interval_ms", "5000"));
+            KEYFRAME_EVERY = Integer.parseInt(props.getProperty("keyframe_every", "10"));
+            if (DIGEST_INTERVAL_MS <= 0 || KEYFRAME_EVERY <= 0) {
+                System.err.println("digest_interval_ms and keyframe_every must be positive");
+                System.exit(1);
+            }
+            System.out.println("Loaded aggregator configuration: PORT=" + PORT + ", SERVER_IPS=" + SERVER_IPS
+                    + ", SERVER_PORT=" + SERVER_PORT + ", DIGEST_INTERVAL_MS=" + DIGEST_INTERVAL_MS + ", KEYFRAME_EVERY=" + KEYFRAME_EVERY);
+        } catch (IOException e) {
+            System.err.println("Error reading aggregator config file: " + e.getMessage());
+            System.exit(1);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number in config file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void recordHeartbeat(HACPacket packet, String nodeIp) {
+        NodeState state = nodes.computeIfAbsent(packet.getNodeId(), id -> new NodeState());
+        synchronized (state) {
+            SequenceTracker.Result result = state.tracker.accept(packet.getEpoch(), packet.getSequence());
+            if (result != SequenceTracker.Result.ACCEPTED && result != SequenceTracker.Result.RESTARTED) {
+                System.out.println("Discarded " + result.name().toLowerCase() + " heartbeat from Node " + packet.getNodeId());
+                return;
+            }
+            state.latest = packet;
+            state.nodeIp = nodeIp;
+            state.lastSeen = System.currentTimeMillis();
+        }
+        System.out.println("Received heartbeat from Node " + packet.getNodeId());
+    }
+
+    // Only the servers this aggregator reports to may ask for listings, since they expose each node's files.
+    private static void handleKeyframeRequest(KeyframeRequest request, InetAddress requester) {
+        if (!isConfiguredServer(requester) || request.getNodeIds() == null) {
+            System.err.println("Refused keyframe request from " + requester);
+            return;
+        }
+        for (Integer nodeId : request.getNodeIds()) {
+            NodeState state = nodeId == null ? null : nodes.get(nodeId);
+            if (state != null) {
+                synchronized (state) {
+                    state.forceFull = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isConfiguredServer(InetAddress address) {
+        for (String ip : SERVER_IPS) {
+            try {
+                if (InetAddress.getByName(ip.trim()).equals(address)) {
+                    return true;
+                }
+            } catch (UnknownHostException e) {
+                // An unresolvable entry matches nothing
+            }
+        }
+        return false;
+    }
+
+    private static void sendDigest(DatagramSocket socket) {
+        long now = System.currentTimeMillis();
+        boolean keyframe = digestCounter++ % KEYFRAME_EVERY == 0;
+        List<HACDigest.Entry> entries = new ArrayList<>();
+
+        nodes.entrySet().removeIf(e -> now - e.getValue().lastSeen > 30000);
+        nodes.forEach((nodeId, state) -> {
+            synchronized (state) {
+                if (state.latest == null) {
+                    return;
+                }
+                HACPacket latest = state.latest;
+                // A restarted node (new epoch) always goes out in full, so servers never pair its new epoch with
+                // the listing from before the restart
+                boolean changed = latest.getEpoch() != state.lastForwardedEpoch
+                        || latest.getListingVersion() != state.lastForwardedListingVersion
+                        || !Arrays.equals(latest.getEncodedFileList(), state.lastForwardedFiles);
+                HACPacket packet = keyframe || changed || state.forceFull ? latest : null;
+                if (packet != null) {
+                    state.lastForwardedFiles = latest.getEncodedFileList();
+                    state.lastForwardedListingVersion = latest.getListingVersion();
+                    state.lastForwardedEpoch = latest.getEpoch();
+                    state.forceFull = false;
+                }
+                entries.add(new HACDigest.Entry(nodeId, latest.getEpoch(), latest.getSequence(), now - state.lastSeen,
+                        state.nodeIp, latest.getTelemetry(), packet));
+            }
+        });
+
+        if (entries.isEmpty()) {
+            return;
+        }
+        int datagrams = sendEntries(socket, entries);
+        System.out.println("Forwarded " + (keyframe ? "keyframe " : "") + "digest of " + entries.size() + " nodes in " + datagrams + " datagram(s)");
+    }
+
+    // Splits the entry list in half until each digest fits in one datagram.
+    private static int sendEntries(DatagramSocket socket, List<HACDigest.Entry> entries) {
+        HACDigest digest = new HACDigest(AGGREGATOR_ID, EPOCH, sequenceCounter, entries);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(digest);
+        } catch (IOException e) {
+            System.err.println("Error serializing digest: " + e.getMessage());
+            return 0;
+        }
+
+        if (bos.size() > MAX_DIGEST_SIZE && entries.size() > 1) {
+            int mid = entries.size() / 2;
+            return sendEntries(socket, new ArrayList<>(entries.subList(0, mid)))
+                    + sendEntries(socket, new ArrayList<>(entries.subList(mid, entries.size())));
+        }
+
+        sequenceCounter++;
+        byte[] sendData = bos.toByteArray();
+        for (String serverIP : SERVER_IPS) {
+            try {
+                InetAddress serverAddress = InetAddress.getByName(serverIP.trim());
+                socket.send(new DatagramPacket(sendData, sendData.length, serverAddress, SERVER_PORT));
+            } catch (IOException e) {
+                System.err.println("Failed to send digest to " + serverIP + ": " + e.getMessage());
+            }
+        }
+        return 1;
+    }
+
+    private static class NodeState {
+        final SequenceTracker tracker = new SequenceTracker();
+        HACPacket latest;
+        String nodeIp;
+        long lastSeen;
+        byte[] lastForwardedFiles;
+        long lastForwardedListingVersion = -1;
+        long lastForwardedEpoch = -1;
+        boolean forceFull;
+    }
+}
@@ -4,15 +4,34 @@ import java.io.*;
 import java.net.*;
 import java.nio.file.*;
 import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class HBClient {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final long SERVER_TIMEOUT_MS = 30000;
     private static final SecureRandom secureRandom = new SecureRandom();
     private static final int NODE_ID = secureRandom.nextInt(1000);
     private static List<String> SERVER_IPS;
     private static int SERVER_PORT;
     private static String DIRECTORY_PATH;
-    private static int versionCounter = 1;
+    private static DirectoryWalker directoryWalker;
+    private static int STARTUP_JITTER_MS = 5000;
+    private static boolean BLOOM_MODE;
+    private static double BLOOM_FPP;
+    private static List<String> currentFileList;
+    private static TreeSummary currentTreeSummary;
+    private static FileBloomFilter currentFilter;
+    private static long listingVersion = 0;
+    private static final Map<SocketAddress, ClusterViewReplica> viewReplicas = new ConcurrentHashMap<>();
+    private static final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "file-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final long EPOCH = System.currentTimeMillis();
+    private static long sequenceCounter = 1;
 
     public static void main(String[] args) {
         loadClientConfig("client_server/config/client.txt");
@@ -20,21 +39,19 @@ public class HBClient {
         try (DatagramSocket socket = new DatagramSocket()) {
             socket.setSoTimeout(5000);
 
-            while (true) {
-                String version = "v" + versionCounter++;
-                List<String> fileList = getFileListing(DIRECTORY_PATH);
-                HACPacket packet = new HACPacket(NODE_ID, "HEARTBEAT", fileList, version);
+            // Spread the first beats out so that a cluster-wide cold start does not arrive as one burst.
+            if (!waitForNextBeat(socket, secureRandom.nextInt(STARTUP_JITTER_MS + 1))) {
+                return;
+            }
 
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-                    oos.writeObject(packet);
-                } catch (IOException e) {
-                    System.err.println("Error serializing packet: " + e.getMessage());
+            while (true) {
+                refreshListing();
+                HACPacket packet = buildPacket("HEARTBEAT", !BLOOM_MODE);
+                byte[] sendData = serialize(packet);
+                if (sendData == null) {
                     continue;
                 }
 
-                byte[] sendData = bos.toByteArray();
-
                 boolean sent = false;
                 for (String serverIP : SERVER_IPS) {
                     try {
@@ -51,13 +68,10 @@ public class HBClient {
                 if (!sent) {
                     System.out.println("Failed to send heartbeat to all servers.");
                 }
+                checkServerHealth();
 
-                try {
-                    int sleepTime = secureRandom.nextInt(30) + 1;
-                    Thread.sleep(sleepTime * 1000L);
-                } catch (InterruptedException e) {
-                    System.err.println("Thread interrupted: " + e.getMessage());
-                    Thread.currentThread().interrupt();
+                int sleepTime = secureRandom.nextInt(30) + 1;
+                if (!waitForNextBeat(socket, sleepTime * 1000L)) {
                     break;
                 }
             }
@@ -68,6 +82,214 @@ public class HBClient {
         }
     }
 
+    private static void refreshListing() {
+        List<String> fileList;
+        if (directoryWalker != null) {
+            directoryWalker.walk();
+            fileList = directoryWalker.getFileList();
+            currentTreeSummary = directoryWalker.getSummary();
+        } else {
+            fileList = getFileListing(DIRECTORY_PATH);
+        }
+        if (!fileList.equals(currentFileList)) {
+            currentFileList = fileList;
+            listingVersion++;
+            currentFilter = BLOOM_MODE ? FileBloomFilter.build(fileList, BLOOM_FPP) : null;
+        }
+    }
+
+    // In bloom mode routine heartbeats carry only the filter and listing version; receivers ask for
+    // the exact listing with a ListingRequest when they need it.
+    private static HACPacket buildPacket(String message, boolean includeFileList) {
+        return buildPacket(message, includeFileList, sequenceCounter++);
+    }
+
+    private static HACPacket buildPacket(String message, boolean includeFileList, long sequence) {
+        Map<Long, Long> knownViews = new HashMap<>();
+        viewReplicas.values().forEach(replica -> {
+            if (replica.hasView()) {
+                knownViews.put(replica.getEpoch(), replica.getVersion());
+            }
+        });
+        return new HACPacket(NODE_ID, message, includeFileList ? currentFileList : null, EPOCH, sequence,
+                currentTreeSummary, Telemetry.sample(DIRECTORY_PATH), listingVersion, currentFilter, knownViews);
+    }
+
+    private static void applyViewUpdate(DatagramSocket socket, ClusterViewUpdate update, SocketAddress server) {
+        ClusterViewReplica replica = viewReplicas.computeIfAbsent(server, s -> new ClusterViewReplica());
+        if (replica.isDown()) {
+            replica.setDown(false);
+            System.out.println("Server " + server + " is back up.");
+        }
+        switch (replica.apply(update)) {
+            case APPLIED:
+                System.out.println("Applied " + update + " from " + server);
+                printClusterView(server, replica);
+                break;
+            case GAP:
+                System.out.println("View gap from " + server + " (holding v" + replica.getVersion() + ", got " + update
+                        + "); requesting snapshot");
+                byte[] sendData = serialize(new ViewSnapshotRequest());
+                if (sendData == null) {
+                    return;
+                }
+                try {
+                    socket.send(new DatagramPacket(sendData, sendData.length, server));
+                } catch (IOException e) {
+                    System.err.println("Failed to request view snapshot from " + server + ": " + e.getMessage());
+                }
+                break;
+            case INVALID:
+                System.err.println("Ignored malformed " + update + " from " + server);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void checkServerHealth() {
+        long now = System.currentTimeMillis();
+        viewReplicas.forEach((server, replica) -> {
+            if (!replica.isDown() && now - replica.getLastHeard() > SERVER_TIMEOUT_MS) {
+                replica.setDown(true);
+                System.out.println("Server " + server + " is down.");
+            }
+        });
+    }
+
+    private static void printClusterView(SocketAddress server, ClusterViewReplica replica) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        System.out.println("\nCluster View from " + server + " (v" + replica.getVersion() + "):");
+        System.out.println("-------------------------------------------------------------------");
+        System.out.printf("%-12s %-16s %-25s %-18s\n", "Node ID", "Listing", "Last Changed", "Node IP");
+        System.out.println("-------------------------------------------------------------------");
+        replica.getNodes().forEach((nodeId, view) -> {
+            System.out.printf("%-12d %-16s %-25s %-18s\n", nodeId, "v" + view.getListingVersion(),
+                    sdf.format(new Date(view.getTimestamp())), view.getNodeIp());
+            System.out.println("Files: " + (view.getEncodedFileList() != null ? view.getFileList() : view.getFileFilter()));
+        });
+        System.out.println("-------------------------------------------------------------------\n");
+    }
+
+    private static byte[] serialize(Object message) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(message);
+        } catch (IOException e) {
+            System.err.println("Error serializing packet: " + e.getMessage());
+            return null;
+        }
+        return bos.toByteArray();
+    }
+
+    // Runs off the heartbeat thread so a large search never delays the next beat.
+    private static void runSearch(DatagramSocket socket, SearchRequest request, SocketAddress requester) {
+        System.out.println("Running " + request + " for " + requester);
+        int[] sequence = { 0 };
+        int count = FileSearch.run(Paths.get(DIRECTORY_PATH), request,
+                batch -> sendSearchResult(socket, requester, new SearchResult(request.getQueryId(), NODE_ID, sequence[0]++, batch, false)));
+        sendSearchResult(socket, requester, new SearchResult(request.getQueryId(), NODE_ID, sequence[0], Collections.emptyList(), true));
+        System.out.println("Search #" + request.getQueryId() + " finished with " + count + " matches");
+    }
+
+    private static void sendSearchResult(DatagramSocket socket, SocketAddress requester, SearchResult result) {
+        byte[] sendData = serialize(result);
+        if (sendData == null) {
+            return;
+        }
+        try {
+            socket.send(new DatagramPacket(sendData, sendData.length, requester));
+        } catch (IOException e) {
+            System.err.println("Failed to send search results to " + requester + ": " + e.getMessage());
+        }
+    }
+
+    // Listings and searches expose the directory, so only the configured servers may ask for them
+    private static boolean isConfiguredServer(InetAddress address) {
+        for (String ip : SERVER_IPS) {
+            try {
+                if (InetAddress.getByName(ip.trim()).equals(address)) {
+                    return true;
+                }
+            } catch (UnknownHostException e) {
+                // An unresolvable entry matches nothing
+            }
+        }
+        return false;
+    }
+
+    // A listing reply repeats the latest heartbeat's sequence number. Taking a new one would
+    // open a gap in the heartbeat stream whenever the reply is lost, and receivers would count that as link loss.
+    private static void sendListing(DatagramSocket socket, SocketAddress requester) {
+        byte[] sendData = serialize(buildPacket("LISTING", true, sequenceCounter - 1));
+        if (sendData == null) {
+            return;
+        }
+        try {
+            socket.send(new DatagramPacket(sendData, sendData.length, requester));
+            System.out.println("Sent listing v" + listingVersion + " to " + requester);
+        } catch (IOException e) {
+            System.err.println("Failed to send listing to " + requester + ": " + e.getMessage());
+        }
+    }
+
+    // Sleeps until the next heartbeat is due while listening on the sending socket for BackoffHints,
+    // cluster-view updates and listing/search requests.
+    // Each hint pushes the deadline out by a randomized 0.5x-1.5x of the requested backoff.
+    private static boolean waitForNextBeat(DatagramSocket socket, long waitMillis) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        byte[] receiveData = new byte[MAX_DATAGRAM_SIZE];
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return true;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                System.err.println("Thread interrupted while waiting for next heartbeat.");
+                return false;
+            }
+            try {
+                socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+                socket.receive(receivePacket);
+                try (ObjectInputStream ois = new ObjectInputStream(
+                        new ByteArrayInputStream(receivePacket.getData(), 0, receivePacket.getLength()))) {
+                    Object message = ois.readObject();
+                    if (message instanceof ClusterViewUpdate) {
+                        try {
+                            applyViewUpdate(socket, (ClusterViewUpdate) message, receivePacket.getSocketAddress());
+                        } catch (RuntimeException e) {
+                            // A bad update (e.g. an undecodable listing) must not end the heartbeat loop
+                            System.err.println("Error applying view update from " + receivePacket.getSocketAddress() + ": " + e);
+                        }
+                    } else if ((message instanceof ListingRequest || message instanceof SearchRequest)
+                            && !isConfiguredServer(receivePacket.getAddress())) {
+                        System.err.println("Ignored " + message.getClass().getSimpleName() + " from unknown host "
+                                + receivePacket.getAddress().getHostAddress());
+                    } else if (message instanceof ListingRequest) {
+                        sendListing(socket, receivePacket.getSocketAddress());
+                    } else if (message instanceof SearchRequest) {
+                        SearchRequest request = (SearchRequest) message;
+                        SocketAddress requester = receivePacket.getSocketAddress();
+                        searchExecutor.submit(() -> runSearch(socket, request, requester));
+                    } else if (message instanceof BackoffHint) {
+                        long backoff = (long) (((BackoffHint) message).getBackoffMillis() * (0.5 + secureRandom.nextDouble()));
+                        deadline = Math.max(deadline, System.currentTimeMillis() + backoff);
+                        System.out.println("Received " + message + " from " + receivePacket.getAddress().getHostAddress()
+                                + ", next heartbeat in " + (deadline - System.currentTimeMillis()) + "ms");
+                    }
+                } catch (ClassNotFoundException e) {
+                    System.err.println("Invalid control packet received: " + e.getMessage());
+                }
+            } catch (SocketTimeoutException e) {
+                // Deadline reached; loop re-checks and returns.
+            } catch (IOException e) {
+                System.err.println("Error receiving control packet: " + e.getMessage());
+            }
+        }
+    }
+
     private static void loadClientConfig(String filePath) {
         try {
             Properties props = new Properties();
@@ -75,12 +297,21 @@ public class HBClient {
             SERVER_IPS = Arrays.asList(props.getProperty("server_ips").split(","));
             SERVER_PORT = Integer.parseInt(props.getProperty("port"));
             DIRECTORY_PATH = props.getProperty("directory_path");
+            STARTUP_JITTER_MS = Integer.parseInt(props.getProperty("startup_jitter_ms", "5000"));
+            BLOOM_MODE = "bloom".equalsIgnoreCase(props.getProperty("summary_mode", "full"));
+            BLOOM_FPP = Double.parseDouble(props.getProperty("bloom_fpp", "0.01"));
+            if (Boolean.parseBoolean(props.getProperty("recursive", "false"))) {
+                int maxDepth = Integer.parseInt(props.getProperty("max_depth", "8"));
+                int maxFiles = Integer.parseInt(props.getProperty("max_files", "10000"));
+                directoryWalker = new DirectoryWalker(Paths.get(DIRECTORY_PATH), maxDepth, maxFiles);
+                System.out.println("Recursive listing enabled: MAX_DEPTH=" + maxDepth + ", MAX_FILES=" + maxFiles);
+            }
             System.out.println("Loaded client configuration: SERVER_IPS=" + SERVER_IPS + ", PORT=" + SERVER_PORT + ", DIRECTORY_PATH=" + DIRECTORY_PATH);
         } catch (IOException e) {
             System.err.println("Error reading client config file: " + e.getMessage());
             System.exit(1);
         } catch (NumberFormatException e) {
-            System.err.println("Invalid port number in config file: " + e.getMessage());
+            System.err.println("Invalid number in config file: " + e.getMessage());
             System.exit(1);
         }
     }
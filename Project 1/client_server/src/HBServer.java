@@ -7,40 +7,61 @@ import java.util.*;
 import java.util.concurrent.*;
 
 public class HBServer {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
     private static int PORT;
+    private static List<String> SEED_IPS;
+    private static AdmissionControl admissionControl;
     private static final Map<Integer, NodeInfo> nodeFileMap = new ConcurrentHashMap<>();
     private static final Map<Integer, Long> activeNodes = new ConcurrentHashMap<>();
     private static final Set<Integer> previouslyDeadNodes = ConcurrentHashMap.newKeySet();
+    private static final Map<Integer, SequenceTracker> sequenceTrackers = new ConcurrentHashMap<>();
+    // Held while a node's sequence is checked and its entry stored, so a state-transfer merge
+    // and the ingest thread cannot interleave and leave an older listing behind a newer sequence number
+    private static final Object mergeLock = new Object();
+    private static final Map<Integer, SequenceTracker> aggregatorTrackers = new ConcurrentHashMap<>();
+    private static final LoadScores loadScores = new LoadScores();
+    private static final ClusterViewLog viewLog = new ClusterViewLog(256);
+    private static volatile DatagramSocket heartbeatSocket;
+    private static SearchCoordinator searchCoordinator;
+    private static final int SEARCH_MAX_RESULTS = 1000;
+    private static final long SEARCH_TIMEOUT_MS = 2000;
 
     public static void main(String[] args) {
         loadServerConfig("client_server/config/server.txt");
 
+        StateTransfer.serve(PORT, HBServer::snapshotState, HBServer::isSeedServer);
+        Thread commandThread = new Thread(HBServer::readCommands, "commands");
+        commandThread.setDaemon(true);
+        commandThread.start();
+        if (!SEED_IPS.isEmpty()) {
+            new Thread(() -> joinCluster(SEED_IPS), "state-join").start();
+        }
+
         try (DatagramSocket serverSocket = new DatagramSocket(PORT)) {
+            heartbeatSocket = serverSocket;
             serverSocket.setSoTimeout(5000);
+            serverSocket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
             System.out.println("Server listening for heartbeats on port " + PORT);
 
             ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
             scheduler.scheduleAtFixedRate(HBServer::checkNodeHealth, 5, 5, TimeUnit.SECONDS);
 
-            byte[] receiveData = new byte[4096];
+            Thread ingestThread = new Thread(HBServer::processIngestQueue, "heartbeat-ingest");
+            ingestThread.setDaemon(true);
+            ingestThread.start();
+
+            byte[] receiveData = new byte[MAX_DATAGRAM_SIZE];
             while (true) {
                 DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
                 try {
                     serverSocket.receive(receivePacket);
-                    InetAddress nodeIp = receivePacket.getAddress();
-                    ByteArrayInputStream bis = new ByteArrayInputStream(receivePacket.getData());
-                    try (ObjectInputStream ois = new ObjectInputStream(bis)) {
-                        HACPacket packet = (HACPacket) ois.readObject();
-                        activeNodes.put(packet.getNodeId(), System.currentTimeMillis());
-                        NodeInfo nodeInfo = new NodeInfo(packet.getVersion(), packet.getTimestamp(), packet.getFileList(), nodeIp.getHostAddress());
-                        handleReconnection(nodeInfo, packet.getNodeId());
-                        System.out.println("Received heartbeat from Node " + packet.getNodeId());
-
-                        printGlobalFileMap();
-                    } catch (ClassNotFoundException e) {
-                        System.err.println("Invalid packet received: " + e.getMessage());
-                    } catch (InvalidClassException e) {
-                        System.err.println("Corrupted packet received: " + e.getMessage());
+                    InetSocketAddress source = (InetSocketAddress) receivePacket.getSocketAddress();
+                    byte[] data = Arrays.copyOf(receivePacket.getData(), receivePacket.getLength());
+                    // Drops are counted and summarized by the health check, not logged one by one
+                    admissionControl.offer(data, source);
+                    if (admissionControl.shouldHint(source)) {
+                        sendBackoffHint(serverSocket, source);
                     }
                 } catch (SocketTimeoutException e) {
                     System.err.println("Socket timeout: No packets received in the last 5 seconds.");
@@ -55,33 +76,289 @@ public class HBServer {
         }
     }
 
+    private static void processIngestQueue() {
+        while (true) {
+            AdmissionControl.Ingest ingest;
+            try {
+                ingest = admissionControl.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(ingest.getData()))) {
+                Object message = ois.readObject();
+                if (message instanceof HACDigest) {
+                    synchronized (mergeLock) {
+                        processDigest((HACDigest) message, ingest.getSource());
+                    }
+                    if (admissionControl.isBacklogEmpty()) {
+                        printGlobalFileMap();
+                    }
+                    continue;
+                }
+                if (message instanceof ViewSnapshotRequest) {
+                    // A snapshot is many datagrams for one small request, so only nodes we have
+                    // heard from get one, and each at most once per interval
+                    if (isKnownNode(ingest.getSource()) && admissionControl.allowSnapshot(ingest.getSource())) {
+                        sendViewUpdates(ingest.getSource(), null);
+                    } else {
+                        System.err.println("Refused view snapshot request from " + ingest.getSource());
+                    }
+                    continue;
+                }
+                HACPacket packet = (HACPacket) message;
+                if ("LISTING".equals(packet.getMessage())) {
+                    synchronized (mergeLock) {
+                        applyListing(packet);
+                    }
+                    continue;
+                }
+                synchronized (mergeLock) {
+                    if (!checkSequence(packet)) {
+                        continue;
+                    }
+                    activeNodes.put(packet.getNodeId(), System.currentTimeMillis());
+                    NodeInfo nodeInfo = new NodeInfo(packet, ingest.getSource().getAddress().getHostAddress());
+                    nodeInfo.source = ingest.getSource();
+                    nodeInfo.inheritListing(nodeFileMap.get(packet.getNodeId()));
+                    handleReconnection(nodeInfo, packet.getNodeId());
+                }
+                loadScores.update(packet.getNodeId(), packet.getTelemetry());
+                System.out.println("Received heartbeat from Node " + packet.getNodeId());
+                if ("HEARTBEAT".equals(packet.getMessage())) {
+                    sendViewUpdates(ingest.getSource(), packet.getKnownView(viewLog.getEpoch()));
+                }
+
+                // During a restart storm, print once the backlog has drained rather than per packet.
+                if (admissionControl.isBacklogEmpty()) {
+                    printGlobalFileMap();
+                }
+            } catch (ClassNotFoundException | ClassCastException e) {
+                System.err.println("Invalid packet received: " + e.getMessage());
+            } catch (InvalidClassException e) {
+                System.err.println("Corrupted packet received: " + e.getMessage());
+            } catch (IOException e) {
+                System.err.println("Error reading packet: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // One bad packet must not kill the only thread that drains the queue
+                System.err.println("Error handling packet from " + ingest.getSource() + ": " + e);
+            }
+        }
+    }
+
+    // Cluster state includes every listing, so only the servers named in seed_ips may fetch it; a server that
+    // joins through this one must appear in this server's seed_ips as well.
+    private static boolean isSeedServer(InetAddress address) {
+        for (String ip : SEED_IPS) {
+            try {
+                if (InetAddress.getByName(ip.trim()).equals(address)) {
+                    return true;
+                }
+            } catch (UnknownHostException e) {
+                // An unresolvable entry matches nothing
+            }
+        }
+        return false;
+    }
+
+    private static boolean isKnownNode(InetSocketAddress source) {
+        for (NodeInfo info : nodeFileMap.values()) {
+            if (source.equals(info.source)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendBackoffHint(DatagramSocket socket, InetSocketAddress target) {
+        BackoffHint hint = new BackoffHint(admissionControl.suggestedBackoffMillis());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(hint);
+        } catch (IOException e) {
+            System.err.println("Error serializing backoff hint: " + e.getMessage());
+            return;
+        }
+        byte[] sendData = bos.toByteArray();
+        try {
+            socket.send(new DatagramPacket(sendData, sendData.length, target));
+            System.out.println("Sent " + hint + " to " + target);
+        } catch (IOException e) {
+            System.err.println("Failed to send backoff hint to " + target + ": " + e.getMessage());
+        }
+    }
+
+    // Replies to a client heartbeat with the view changes it has not seen yet. An empty delta still
+    // goes out so clients can tell a live server from a dead one.
+    private static void sendViewUpdates(InetSocketAddress target, Long knownVersion) {
+        for (ClusterViewUpdate update : viewLog.updatesSince(knownVersion)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(update);
+            } catch (IOException e) {
+                System.err.println("Error serializing view update: " + e.getMessage());
+                return;
+            }
+            byte[] sendData = bos.toByteArray();
+            try {
+                heartbeatSocket.send(new DatagramPacket(sendData, sendData.length, target));
+                if (!update.getChanges().isEmpty() || update.isSnapshot()) {
+                    System.out.println("Sent " + update + " to " + target);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to send view update to " + target + ": " + e.getMessage());
+            }
+        }
+    }
+
     private static void loadServerConfig(String filePath) {
         try {
             Properties props = new Properties();
             props.load(new FileInputStream(filePath));
             PORT = Integer.parseInt(props.getProperty("port"));
-            System.out.println("Loaded server configuration: PORT=" + PORT);
+            String seedIps = props.getProperty("seed_ips", "").trim();
+            SEED_IPS = seedIps.isEmpty() ? Collections.emptyList() : Arrays.asList(seedIps.split(","));
+            int queueCapacity = Integer.parseInt(props.getProperty("ingest_queue", "1024"));
+            double ratePerSource = Double.parseDouble(props.getProperty("rate_per_source", "1.0"));
+            int burst = Integer.parseInt(props.getProperty("burst", "3"));
+            long backoffMillis = Long.parseLong(props.getProperty("backoff_ms", "5000"));
+            admissionControl = new AdmissionControl(queueCapacity, ratePerSource, burst, backoffMillis);
+            for (String trusted : props.getProperty("trusted_sources", "").split(",")) {
+                if (!trusted.trim().isEmpty()) {
+                    admissionControl.trust(InetAddress.getByName(trusted.trim()));
+                }
+            }
+            System.out.println("Loaded server configuration: PORT=" + PORT + ", SEED_IPS=" + SEED_IPS + ", INGEST_QUEUE=" + queueCapacity
+                    + ", RATE_PER_SOURCE=" + ratePerSource + ", BURST=" + burst + ", BACKOFF_MS=" + backoffMillis);
         } catch (IOException e) {
             System.err.println("Error reading server config file: " + e.getMessage());
             System.exit(1);
         } catch (NumberFormatException e) {
-            System.err.println("Invalid port number in config file: " + e.getMessage());
+            System.err.println("Invalid number in config file: " + e.getMessage());
             System.exit(1);
         }
     }
 
     private static void checkNodeHealth() {
         long currentTime = System.currentTimeMillis();
+        long dropped = admissionControl.takeDroppedSinceLastReport();
+        if (dropped > 0) {
+            System.err.println("Dropped " + dropped + " throttled heartbeats since the last check (" + admissionControl.getDropped() + " total)");
+        }
+        admissionControl.evictIdleSources(60000);
         activeNodes.forEach((nodeId, lastSeen) -> {
             if (currentTime - lastSeen > 30000) {
-                System.out.println("Node " + nodeId + " is down.");
+                SequenceTracker tracker = sequenceTrackers.get(nodeId);
+                System.out.println("Node " + nodeId + " is down." + (tracker != null ? " Last link stats: " + tracker : ""));
                 activeNodes.remove(nodeId);
                 nodeFileMap.remove(nodeId);
+                viewLog.remove(nodeId);
+                loadScores.remove(nodeId);
                 previouslyDeadNodes.add(nodeId);
             }
         });
     }
 
+    // A digest only samples each node's latest sequence once per interval, so the gaps between
+    // samples are not loss and must not reach the per-node trackers. Loss is tracked per aggregator instead, whose
+    // digest sequence numbers are consecutive, and each entry only has to be no older than what we already hold.
+    private static void processDigest(HACDigest digest, InetSocketAddress aggregator) {
+        String aggregatorIp = aggregator.getAddress().getHostAddress();
+        SequenceTracker digestTracker = aggregatorTrackers.computeIfAbsent(digest.getAggregatorId(), id -> new SequenceTracker());
+        SequenceTracker.Result digestResult = digestTracker.accept(digest.getEpoch(), digest.getSequence());
+        if (digestResult != SequenceTracker.Result.ACCEPTED && digestResult != SequenceTracker.Result.RESTARTED) {
+            System.out.println("Discarded " + digestResult.name().toLowerCase() + " " + digest + " via " + aggregatorIp);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Set<Integer> missingListings = new HashSet<>();
+        for (HACDigest.Entry entry : digest.getEntries()) {
+            int nodeId = entry.getNodeId();
+            NodeInfo known = nodeFileMap.get(nodeId);
+            if (known != null && known.epoch == entry.getEpoch() && entry.getSequence() < known.sequence) {
+                continue;
+            }
+
+            HACPacket packet = entry.getPacket();
+            if (packet != null) {
+                NodeInfo nodeInfo = new NodeInfo(packet, entry.getNodeIp());
+                nodeInfo.inheritListing(nodeFileMap.get(nodeId));
+                handleReconnection(nodeInfo, nodeId);
+            } else {
+                // Liveness-only entry: the listing is unchanged, so only the version moves forward. A node we
+                // hold no listing for (or only one from before it restarted) is still alive; its listing is
+                // requested from the aggregator rather than waiting for the next keyframe.
+                NodeInfo info = nodeFileMap.get(nodeId);
+                if (info == null || info.epoch != entry.getEpoch()) {
+                    missingListings.add(nodeId);
+                } else {
+                    info.sequence = entry.getSequence();
+                    info.version = "v" + entry.getSequence();
+                }
+            }
+            activeNodes.put(nodeId, now - entry.getLastSeenAge());
+            loadScores.update(nodeId, entry.getTelemetry());
+        }
+        System.out.println("Received " + digest + " via " + aggregatorIp + " (" + digestTracker + ")");
+        if (!missingListings.isEmpty()) {
+            requestKeyframe(aggregator, missingListings);
+        }
+    }
+
+    private static void requestKeyframe(InetSocketAddress aggregator, Set<Integer> nodeIds) {
+        if (heartbeatSocket == null) {
+            return;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(new KeyframeRequest(nodeIds));
+        } catch (IOException e) {
+            System.err.println("Error serializing keyframe request: " + e.getMessage());
+            return;
+        }
+        byte[] sendData = bos.toByteArray();
+        try {
+            heartbeatSocket.send(new DatagramPacket(sendData, sendData.length, aggregator));
+            System.out.println("Requested listings of Nodes " + nodeIds + " from aggregator " + aggregator);
+        } catch (IOException e) {
+            System.err.println("Failed to request listings from aggregator " + aggregator + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean checkSequence(HACPacket packet) {
+        SequenceTracker tracker = sequenceTrackers.computeIfAbsent(packet.getNodeId(), id -> new SequenceTracker());
+        SequenceTracker.Result result = tracker.accept(packet.getEpoch(), packet.getSequence());
+        switch (result) {
+            case ACCEPTED:
+                return true;
+            case RESTARTED:
+                System.out.println("Node " + packet.getNodeId() + " restarted with epoch " + packet.getEpoch() + ".");
+                return true;
+            default:
+                System.out.println("Discarded " + result.name().toLowerCase() + " heartbeat from Node " + packet.getNodeId()
+                        + " (seq " + packet.getSequence() + ", latest " + tracker.getHighestSequence() + ")");
+                return false;
+        }
+    }
+
+    // A listing reply carries the sequence of the node's latest heartbeat rather than a new one,
+    // so it skips the sequence tracker and is matched on epoch and listing version instead.
+    private static void applyListing(HACPacket packet) {
+        int nodeId = packet.getNodeId();
+        NodeInfo known = nodeFileMap.get(nodeId);
+        if (known == null || known.epoch != packet.getEpoch() || packet.getListingVersion() < known.listingVersion) {
+            System.out.println("Ignored outdated listing v" + packet.getListingVersion() + " from Node " + nodeId);
+            return;
+        }
+        NodeInfo nodeInfo = new NodeInfo(packet, known.nodeIp);
+        nodeInfo.source = known.source;
+        nodeInfo.sequence = Math.max(known.sequence, packet.getSequence());
+        publishView(nodeId, nodeFileMap.put(nodeId, nodeInfo), nodeInfo);
+        System.out.println("Received listing v" + packet.getListingVersion() + " from Node " + nodeId);
+    }
+
     private static void handleReconnection(NodeInfo nodeInfo, int nodeId) {
         if (previouslyDeadNodes.contains(nodeId)) {
             System.out.println("Node " + nodeId + " has reconnected.");
@@ -89,7 +366,15 @@ public class HBServer {
         } else {
             System.out.println("Node " + nodeId + " is up.");
         }
-        nodeFileMap.put(nodeId, nodeInfo);
+        publishView(nodeId, nodeFileMap.put(nodeId, nodeInfo), nodeInfo);
+    }
+
+    // Only membership and listing changes reach the view log; plain heartbeats do not bump its version.
+    private static void publishView(int nodeId, NodeInfo previous, NodeInfo current) {
+        if (previous == null || previous.epoch != current.epoch || previous.listingVersion != current.listingVersion
+                || !Arrays.equals(previous.encodedFileList, current.encodedFileList)) {
+            viewLog.put(current.toView(nodeId));
+        }
     }
 
     private static void printGlobalFileMap() {
@@ -98,29 +383,261 @@ public class HBServer {
 
         System.out.println("\nCurrent Node Status:");
         System.out.println("-------------------------------------------------------------------");
-        System.out.printf("%-12s %-12s %-25s %-18s\n", "Node ID", "Version", "Timestamp", "Node IP");
+        System.out.printf("%-12s %-12s %-25s %-18s %s\n", "Node ID", "Version", "Timestamp", "Node IP", "Link");
         System.out.println("-------------------------------------------------------------------");
 
         sortedNodes.forEach((nodeId, info) -> {
             String formattedTime = sdf.format(new Date(info.timestamp));
-            System.out.printf("%-12d %-12s %-25s %-18s\n", nodeId, info.version, formattedTime, info.nodeIp);
-            System.out.println("\nFiles: " + info.fileList);
+            SequenceTracker tracker = sequenceTrackers.get(nodeId);
+            String link = tracker != null
+                    ? String.format("loss %.1f%% reorder %.1f%%", tracker.getLossRate() * 100, tracker.getReorderRate() * 100)
+                    : "-";
+            System.out.printf("%-12d %-12s %-25s %-18s %s\n", nodeId, info.version, formattedTime, info.nodeIp, link);
+            if (info.hasCurrentListing()) {
+                System.out.println("\nFiles: " + info.getFileList());
+            } else {
+                System.out.println("\nFiles: " + info.fileFilter + " for listing v" + info.listingVersion
+                        + " (exact listing not fetched; use 'ls " + nodeId + "')");
+            }
+            if (info.telemetry != null) {
+                System.out.printf("Load: %s | score %.3f\n", info.telemetry, loadScores.get(nodeId));
+            }
+            if (info.treeSummary != null) {
+                System.out.print("Tree:\n" + info.treeSummary);
+            }
             System.out.println("-------------------------------------------------------------------\n");
         });
     }
 
+    public static List<Integer> pickBestHolders(String fileName, int n) {
+        List<Integer> holders = new ArrayList<>();
+        nodeFileMap.forEach((nodeId, info) -> {
+            if (activeNodes.containsKey(nodeId) && info.mightHave(fileName)) {
+                holders.add(nodeId);
+            }
+        });
+        return loadScores.pickBest(holders, n, ThreadLocalRandom.current());
+    }
+
+    private static void searchCluster(String glob, String text) {
+        Map<Integer, InetSocketAddress> targets = new HashMap<>();
+        nodeFileMap.forEach((nodeId, info) -> {
+            if (activeNodes.containsKey(nodeId) && info.source != null) {
+                targets.put(nodeId, info.source);
+            }
+        });
+        try {
+            if (searchCoordinator == null) {
+                searchCoordinator = new SearchCoordinator();
+            }
+        } catch (SocketException e) {
+            System.err.println("Error creating search socket: " + e.getMessage());
+            return;
+        }
+        System.out.println("Searching " + targets.size() + " live nodes for " + glob + (text != null ? " containing \"" + text + "\"" : ""));
+        searchCoordinator.search(targets, glob, text, SEARCH_MAX_RESULTS, SEARCH_TIMEOUT_MS, new SearchCoordinator.Listener() {
+            @Override
+            public void onResults(int nodeId, List<String> matches, long elapsedMillis) {
+                matches.forEach(match -> System.out.println("[" + elapsedMillis + "ms] Node " + nodeId + ": " + match));
+            }
+
+            @Override
+            public void onComplete(Set<Integer> completed, Set<Integer> timedOut, int totalMatches, long elapsedMillis) {
+                System.out.println("Search finished in " + elapsedMillis + "ms: " + totalMatches + " matches from "
+                        + completed.size() + " nodes" + (timedOut.isEmpty() ? "" : ", partial (timed out: " + timedOut + ")"));
+            }
+        });
+    }
+
+    private static void requestListing(int nodeId) {
+        NodeInfo info = nodeFileMap.get(nodeId);
+        if (info == null || info.source == null || heartbeatSocket == null) {
+            System.out.println("No direct address known for Node " + nodeId + ".");
+            return;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(new ListingRequest(info.listingVersion));
+        } catch (IOException e) {
+            System.err.println("Error serializing listing request: " + e.getMessage());
+            return;
+        }
+        byte[] sendData = bos.toByteArray();
+        try {
+            heartbeatSocket.send(new DatagramPacket(sendData, sendData.length, info.source));
+            System.out.println("Requested listing v" + info.listingVersion + " from Node " + nodeId);
+        } catch (IOException e) {
+            System.err.println("Failed to request listing from Node " + nodeId + ": " + e.getMessage());
+        }
+    }
+
+    private static void readCommands() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                try {
+                    if (parts[0].equals("best") && parts.length >= 2) {
+                        int n = parts.length >= 3 ? Integer.parseInt(parts[2]) : 1;
+                        System.out.println("Best holders of " + parts[1] + ": " + pickBestHolders(parts[1], n));
+                    } else if (parts[0].equals("has") && parts.length >= 2) {
+                        List<Integer> holders = new ArrayList<>();
+                        new TreeMap<>(nodeFileMap).forEach((nodeId, info) -> {
+                            if (info.mightHave(parts[1])) {
+                                holders.add(nodeId);
+                            }
+                        });
+                        System.out.println("Nodes that may have " + parts[1] + ": " + holders);
+                    } else if (parts[0].equals("ls") && parts.length >= 2) {
+                        requestListing(Integer.parseInt(parts[1]));
+                    } else if (parts[0].equals("search") && parts.length >= 2) {
+                        String text = parts.length >= 3 ? line.trim().split("\\s+", 3)[2] : null;
+                        searchCluster(parts[1], text);
+                    } else if (!parts[0].isEmpty()) {
+                        System.out.println("Commands: best <file> [n] | has <file> | ls <nodeId> | search <glob> [text]");
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid number: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading commands: " + e.getMessage());
+        }
+    }
+
+    private static ClusterState snapshotState() {
+        long now = System.currentTimeMillis();
+        Map<Integer, Long> lastSeenAges = new HashMap<>();
+        activeNodes.forEach((nodeId, lastSeen) -> lastSeenAges.put(nodeId, now - lastSeen));
+        return new ClusterState(new HashMap<>(nodeFileMap), lastSeenAges, new HashSet<>(previouslyDeadNodes));
+    }
+
+    private static void joinCluster(List<String> seeds) {
+        // A seed that has only just started has nothing to give; try the next one instead of joining empty.
+        Object state = StateTransfer.fetch(seeds, PORT, snapshot -> snapshot instanceof ClusterState && !((ClusterState) snapshot).nodes.isEmpty());
+        if (!(state instanceof ClusterState)) {
+            System.out.println("No cluster state available; waiting for heartbeats.");
+            return;
+        }
+        ClusterState clusterState = (ClusterState) state;
+        long now = System.currentTimeMillis();
+        int merged = 0;
+        for (Map.Entry<Integer, NodeInfo> entry : clusterState.nodes.entrySet()) {
+            int nodeId = entry.getKey();
+            NodeInfo info = entry.getValue();
+            Long age = clusterState.lastSeenAges.get(nodeId);
+            if (age == null) {
+                continue;
+            }
+            // Heartbeats that arrived directly while the transfer was in flight are at least as new; keep them.
+            // A different epoch seen directly means the node restarted since the snapshot was taken.
+            synchronized (mergeLock) {
+                SequenceTracker tracker = sequenceTrackers.computeIfAbsent(nodeId, id -> new SequenceTracker());
+                if (tracker.getEpoch() != -1 && tracker.getEpoch() != info.epoch) {
+                    continue;
+                }
+                SequenceTracker.Result result = tracker.accept(info.epoch, info.sequence);
+                if (result != SequenceTracker.Result.ACCEPTED && result != SequenceTracker.Result.RESTARTED) {
+                    continue;
+                }
+                publishView(nodeId, nodeFileMap.put(nodeId, info), info);
+                activeNodes.put(nodeId, now - age);
+            }
+            merged++;
+        }
+        clusterState.deadNodes.forEach(nodeId -> {
+            if (!activeNodes.containsKey(nodeId)) {
+                previouslyDeadNodes.add(nodeId);
+            }
+        });
+        System.out.println("Joined cluster with " + merged + " nodes from state transfer.");
+        printGlobalFileMap();
+    }
+
+    private static class ClusterState implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final Map<Integer, NodeInfo> nodes;
+        final Map<Integer, Long> lastSeenAges;
+        final Set<Integer> deadNodes;
+
+        ClusterState(Map<Integer, NodeInfo> nodes, Map<Integer, Long> lastSeenAges, Set<Integer> deadNodes) {
+            this.nodes = nodes;
+            this.lastSeenAges = lastSeenAges;
+            this.deadNodes = deadNodes;
+        }
+    }
+
     private static class NodeInfo implements Serializable {
         private static final long serialVersionUID = 1L;
         String version;
         long timestamp;
-        List<String> fileList;
+        byte[] encodedFileList;
+        transient List<String> fileList;
+        TreeSummary treeSummary;
+        Telemetry telemetry;
         String nodeIp;
+        long epoch;
+        long sequence;
+        long listingVersion;
+        long exactListingVersion;
+        FileBloomFilter fileFilter;
+        InetSocketAddress source;
 
-        NodeInfo(String version, long timestamp, List<String> fileList, String nodeIp) {
+        NodeInfo(HACPacket packet, String nodeIp) {
+            this(packet.getVersion(), packet.getTimestamp(), packet.getEncodedFileList(), packet.getTreeSummary(), nodeIp);
+            this.epoch = packet.getEpoch();
+            this.sequence = packet.getSequence();
+            this.telemetry = packet.getTelemetry();
+            this.listingVersion = packet.getListingVersion();
+            this.exactListingVersion = packet.hasFileList() ? packet.getListingVersion() : -1;
+            this.fileFilter = packet.getFileFilter();
+        }
+
+        // Filter-only heartbeats keep the last exact listing we fetched; it is marked stale by version.
+        void inheritListing(NodeInfo previous) {
+            if (encodedFileList == null && previous != null && previous.encodedFileList != null && previous.epoch == epoch) {
+                encodedFileList = previous.encodedFileList;
+                fileList = previous.fileList;
+                exactListingVersion = previous.exactListingVersion;
+            }
+            if (source == null && previous != null) {
+                source = previous.source;
+            }
+        }
+
+        boolean hasCurrentListing() {
+            return encodedFileList != null && exactListingVersion == listingVersion;
+        }
+
+        NodeView toView(int nodeId) {
+            return new NodeView(nodeId, nodeIp, timestamp, listingVersion, hasCurrentListing() ? encodedFileList : null, fileFilter);
+        }
+
+        boolean mightHave(String fileName) {
+            if (hasCurrentListing() || fileFilter == null) {
+                return getFileList().contains(fileName);
+            }
+            return fileFilter.mightContain(fileName);
+        }
+
+        NodeInfo(String version, long timestamp, byte[] encodedFileList, TreeSummary treeSummary, String nodeIp) {
             this.version = version;
             this.timestamp = timestamp;
-            this.fileList = fileList;
+            this.encodedFileList = encodedFileList;
+            this.treeSummary = treeSummary;
             this.nodeIp = nodeIp;
         }
+
+        List<String> getFileList() {
+            if (fileList == null) {
+                try {
+                    fileList = FileListCodec.decode(encodedFileList);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid file listing received: " + e.getMessage());
+                    fileList = Collections.emptyList();
+                }
+            }
+            return fileList;
+        }
     }
 }
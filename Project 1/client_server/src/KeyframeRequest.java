@@ -0,0 +1,25 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.util.Set;
+
+// Sent by a server to an aggregator when a digest names nodes it holds no listing for, or holds one from an
+// older epoch. The aggregator includes those nodes' full packets in its next digest.
+public class KeyframeRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Set<Integer> nodeIds;
+
+    public KeyframeRequest(Set<Integer> nodeIds) {
+        this.nodeIds = nodeIds;
+    }
+
+    public Set<Integer> getNodeIds() {
+        return nodeIds;
+    }
+
+    @Override
+    public String toString() {
+        return "KEYFRAME_REQUEST " + nodeIds;
+    }
+}
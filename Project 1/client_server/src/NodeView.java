@@ -0,0 +1,61 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class NodeView implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int nodeId;
+    private final String nodeIp;
+    private final long timestamp;
+    private final long listingVersion;
+    private final byte[] encodedFileList;
+    private final FileBloomFilter fileFilter;
+    private transient List<String> fileList;
+
+    public NodeView(int nodeId, String nodeIp, long timestamp, long listingVersion, byte[] encodedFileList, FileBloomFilter fileFilter) {
+        this.nodeId = nodeId;
+        this.nodeIp = nodeIp;
+        this.timestamp = timestamp;
+        this.listingVersion = listingVersion;
+        this.encodedFileList = encodedFileList;
+        this.fileFilter = fileFilter;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public String getNodeIp() {
+        return nodeIp;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getListingVersion() {
+        return listingVersion;
+    }
+
+    public byte[] getEncodedFileList() {
+        return encodedFileList;
+    }
+
+    public FileBloomFilter getFileFilter() {
+        return fileFilter;
+    }
+
+    public List<String> getFileList() {
+        if (fileList == null) {
+            fileList = FileListCodec.decode(encodedFileList);
+        }
+        return fileList;
+    }
+
+    int estimatedSize() {
+        return 128 + (encodedFileList != null ? encodedFileList.length : 0)
+                + (fileFilter != null ? fileFilter.getNumBits() / 8 : 0);
+    }
+}
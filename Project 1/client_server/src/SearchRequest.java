@@ -0,0 +1,40 @@
+package client_server.src;
+
+import java.io.Serializable;
+
+public class SearchRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long queryId;
+    private final String glob;
+    private final String contentSubstring;
+    private final int maxResults;
+
+    public SearchRequest(long queryId, String glob, String contentSubstring, int maxResults) {
+        this.queryId = queryId;
+        this.glob = glob;
+        this.contentSubstring = contentSubstring;
+        this.maxResults = maxResults;
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    public String getGlob() {
+        return glob;
+    }
+
+    public String getContentSubstring() {
+        return contentSubstring;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    @Override
+    public String toString() {
+        return "SEARCH #" + queryId + " " + glob + (contentSubstring != null ? " containing \"" + contentSubstring + "\"" : "");
+    }
+}
@@ -0,0 +1,44 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.util.List;
+
+// One batch of a node's matches. Batches are numbered from 0 and the done marker takes the next number, so the
+// coordinator knows a node is finished only once every batch before the marker has arrived, in whatever order.
+public class SearchResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long queryId;
+    private final int nodeId;
+    private final int sequence;
+    private final List<String> matches;
+    private final boolean done;
+
+    public SearchResult(long queryId, int nodeId, int sequence, List<String> matches, boolean done) {
+        this.queryId = queryId;
+        this.nodeId = nodeId;
+        this.sequence = sequence;
+        this.matches = matches;
+        this.done = done;
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public List<String> getMatches() {
+        return matches;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
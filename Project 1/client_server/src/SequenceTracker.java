@@ -0,0 +1,106 @@
+package client_server.src;
+
+public class SequenceTracker {
+    private static final int WINDOW_SIZE = 64;
+
+    public enum Result {
+        ACCEPTED,
+        RESTARTED,
+        REORDERED,
+        DUPLICATE,
+        STALE
+    }
+
+    private long epoch = -1;
+    private long previousEpoch = -1;
+    private long firstSequence;
+    private long highestSequence;
+    private long receivedWindow;
+    private long reorderedWindow;
+    private long duplicates;
+
+    // Epochs are wall-clock start times, and a restarted node's clock may have stepped
+    // backwards, so any epoch other than the current one is a restart. Only stragglers from the epoch we just left
+    // are stale; without that, one late packet would flip the tracker back and forth between the two epochs.
+    public synchronized Result accept(long packetEpoch, long sequence) {
+        if (packetEpoch != epoch) {
+            if (packetEpoch == previousEpoch) {
+                return Result.STALE;
+            }
+            boolean restarted = epoch != -1;
+            reset(packetEpoch, sequence);
+            return restarted ? Result.RESTARTED : Result.ACCEPTED;
+        }
+
+        if (sequence > highestSequence) {
+            long gap = sequence - highestSequence;
+            receivedWindow = gap >= WINDOW_SIZE ? 1L : (receivedWindow << gap) | 1L;
+            reorderedWindow = gap >= WINDOW_SIZE ? 0L : reorderedWindow << gap;
+            highestSequence = sequence;
+            return Result.ACCEPTED;
+        }
+
+        long offset = highestSequence - sequence;
+        if (offset >= WINDOW_SIZE || sequence < firstSequence) {
+            return Result.STALE;
+        }
+        long bit = 1L << offset;
+        if ((receivedWindow & bit) != 0) {
+            duplicates++;
+            return Result.DUPLICATE;
+        }
+
+        // A late packet that was counted as lost; it carries older state than we already hold.
+        receivedWindow |= bit;
+        reorderedWindow |= bit;
+        return Result.REORDERED;
+    }
+
+    private void reset(long packetEpoch, long sequence) {
+        previousEpoch = epoch;
+        epoch = packetEpoch;
+        firstSequence = sequence;
+        highestSequence = sequence;
+        receivedWindow = 1L;
+        reorderedWindow = 0L;
+        duplicates = 0;
+    }
+
+    // Bits of the window that cover sequences this epoch has actually reached
+    private long windowMask() {
+        long span = highestSequence - firstSequence + 1;
+        return span >= WINDOW_SIZE ? -1L : (1L << span) - 1;
+    }
+
+    public synchronized long getHighestSequence() {
+        return highestSequence;
+    }
+
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    // Loss and reorder rates cover only the last WINDOW_SIZE sequence numbers, so they
+    // describe the link now rather than averaged over the node's whole life.
+    public synchronized double getLossRate() {
+        long mask = windowMask();
+        int expected = Long.bitCount(mask);
+        return (double) (expected - Long.bitCount(receivedWindow & mask)) / expected;
+    }
+
+    public synchronized double getReorderRate() {
+        long mask = windowMask();
+        int received = Long.bitCount(receivedWindow & mask);
+        return received == 0 ? 0.0 : (double) Long.bitCount(reorderedWindow & mask) / received;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("seq=%d loss=%.1f%% reorder=%.1f%% dup=%d",
+                highestSequence, getLossRate() * 100, getReorderRate() * 100, duplicates);
+    }
+}
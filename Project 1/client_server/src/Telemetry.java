@@ -0,0 +1,79 @@
+package client_server.src;
+
+import java.io.File;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+public class Telemetry implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final OperatingSystemMXBean OS_BEAN = ManagementFactory.getOperatingSystemMXBean();
+
+    private final float systemLoad;
+    private final short processors;
+    private final long freeHeap;
+    private final long freeDisk;
+    private final int openConnections;
+
+    public Telemetry(float systemLoad, short processors, long freeHeap, long freeDisk, int openConnections) {
+        this.systemLoad = systemLoad;
+        this.processors = processors;
+        this.freeHeap = freeHeap;
+        this.freeDisk = freeDisk;
+        this.openConnections = openConnections;
+    }
+
+    // All of these are cheap reads (no process spawning or directory walks), so this runs on every beat.
+    public static Telemetry sample(String directoryPath) {
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long freeDisk = new File(directoryPath).getUsableSpace();
+
+        // Open descriptors stand in for open connections; every socket holds one.
+        int openConnections = -1;
+        if (OS_BEAN instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            openConnections = (int) ((com.sun.management.UnixOperatingSystemMXBean) OS_BEAN).getOpenFileDescriptorCount();
+        }
+        return new Telemetry((float) OS_BEAN.getSystemLoadAverage(), (short) OS_BEAN.getAvailableProcessors(),
+                freeHeap, freeDisk, openConnections);
+    }
+
+    public float getSystemLoad() {
+        return systemLoad;
+    }
+
+    public short getProcessors() {
+        return processors;
+    }
+
+    public long getFreeHeap() {
+        return freeHeap;
+    }
+
+    public long getFreeDisk() {
+        return freeDisk;
+    }
+
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    // Lower is better. Load per CPU dominates; connections and low free disk add smaller penalties.
+    // getSystemLoadAverage() is negative where unsupported, which is treated as idle.
+    public double loadScore() {
+        double score = Math.max(0, systemLoad) / Math.max(1, processors);
+        if (openConnections > 0) {
+            score += 0.25 * Math.min(1.0, openConnections / 1000.0);
+        }
+        if (freeDisk < 1024L * 1024 * 1024) {
+            score += 0.5;
+        }
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("load=%.2f/%d heap=%dMB disk=%dMB conns=%d",
+                systemLoad, processors, freeHeap >> 20, freeDisk >> 20, openConnections);
+    }
+}
@@ -0,0 +1,75 @@
+package client_server.src;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class TreeSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<DirSummary> directories;
+    private final boolean truncated;
+
+    public TreeSummary(List<DirSummary> directories, boolean truncated) {
+        this.directories = new ArrayList<>(directories);
+        this.truncated = truncated;
+    }
+
+    public List<DirSummary> getDirectories() {
+        return Collections.unmodifiableList(directories);
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder sb = new StringBuilder();
+        for (DirSummary dir : directories) {
+            sb.append(String.format("  %-30s %6d files %12d bytes  newest %s\n",
+                    dir.path.isEmpty() ? "." : dir.path, dir.fileCount, dir.totalBytes,
+                    dir.newestModified > 0 ? sdf.format(new Date(dir.newestModified)) : "-"));
+        }
+        if (truncated) {
+            sb.append("  (listing truncated by depth or file cap)\n");
+        }
+        return sb.toString();
+    }
+
+    public static class DirSummary implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final int fileCount;
+        private final long totalBytes;
+        private final long newestModified;
+
+        public DirSummary(String path, int fileCount, long totalBytes, long newestModified) {
+            this.path = path;
+            this.fileCount = fileCount;
+            this.totalBytes = totalBytes;
+            this.newestModified = newestModified;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getNewestModified() {
+            return newestModified;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package client_server.src;
+
+import java.io.Serializable;
+
+public class ViewSnapshotRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String toString() {
+        return "VIEW_SNAPSHOT_REQUEST";
+    }
+}
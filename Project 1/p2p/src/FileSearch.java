@@ -0,0 +1,151 @@
+package p2p.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.PatternSyntaxException;
+
+public final class FileSearch {
+    private static final int MAX_BATCH_BYTES = 8192;
+    private static final long FLUSH_INTERVAL_MS = 20;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private FileSearch() {
+    }
+
+    // Walks root and hands matching relative paths to sink in small batches. The first match is
+    // flushed immediately and later ones every FLUSH_INTERVAL_MS, so callers see hits while the walk
+    // is still running. Globs containing '/' match the relative path, others only the file name.
+    // Unreadable directories are skipped rather than ending the walk, and a malformed glob
+    // returns no matches instead of throwing, so the caller always gets to send its completion.
+    public static int run(Path root, SearchRequest request, Consumer<List<String>> sink) {
+        PathMatcher matcher;
+        try {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + request.getGlob());
+        } catch (PatternSyntaxException e) {
+            System.err.println("Invalid search pattern " + request.getGlob() + ": " + e.getDescription());
+            return 0;
+        }
+        Collector collector = new Collector(root, request, matcher, sink);
+        try {
+            Files.walkFileTree(root, collector);
+        } catch (IOException e) {
+            System.err.println("Search stopped early: " + e.getMessage());
+        }
+        collector.flush();
+        return collector.count;
+    }
+
+    private static class Collector extends SimpleFileVisitor<Path> {
+        private final Path root;
+        private final PathMatcher matcher;
+        private final boolean matchPath;
+        private final byte[] needle;
+        private final int maxResults;
+        private final Consumer<List<String>> sink;
+        private List<String> batch = new ArrayList<>();
+        private int batchBytes;
+        private long lastFlush;
+        int count;
+
+        Collector(Path root, SearchRequest request, PathMatcher matcher, Consumer<List<String>> sink) {
+            this.root = root;
+            this.matcher = matcher;
+            this.matchPath = request.getGlob().contains("/");
+            this.needle = request.getContentSubstring() != null
+                    ? request.getContentSubstring().getBytes(StandardCharsets.UTF_8)
+                    : null;
+            this.maxResults = request.getMaxResults();
+            this.sink = sink;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (count >= maxResults) {
+                return FileVisitResult.TERMINATE;
+            }
+            if (!attrs.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            Path relative = root.relativize(file);
+            if (!matcher.matches(matchPath ? relative : file.getFileName())) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (needle != null && !containsBytes(file, needle)) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            String name = relative.toString().replace(File.separatorChar, '/');
+            batch.add(name);
+            batchBytes += name.length();
+            count++;
+
+            long now = System.currentTimeMillis();
+            if (batchBytes >= MAX_BATCH_BYTES || now - lastFlush >= FLUSH_INTERVAL_MS) {
+                flush();
+                lastFlush = now;
+            }
+            return count >= maxResults ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+    }
+
+    private static boolean containsBytes(Path file, byte[] needle) {
+        if (needle.length == 0) {
+            return true;
+        }
+        byte[] buffer = new byte[READ_BUFFER_SIZE + needle.length - 1];
+        int carried = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer, carried, READ_BUFFER_SIZE)) > 0) {
+                int length = carried + n;
+                if (indexOf(buffer, length, needle) >= 0) {
+                    return true;
+                }
+                // Keep the tail so matches that straddle two reads are still found.
+                carried = Math.min(needle.length - 1, length);
+                System.arraycopy(buffer, length - carried, buffer, 0, carried);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private static int indexOf(byte[] haystack, int length, byte[] needle) {
+        outer:
+        for (int i = 0; i <= length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
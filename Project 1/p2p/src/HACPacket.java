@@ -2,22 +2,49 @@ package p2p.src;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 public class HACPacket implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 7L;
 
     private final int nodeId;
     private final String message;
-    private final List<String> fileList;
+    private final byte[] encodedFileList;
+    private transient List<String> fileList;
     private final long timestamp;
-    private final String version;
+    private final long epoch;
+    private final long sequence;
+    private final TreeSummary treeSummary;
+    private final Telemetry telemetry;
+    private final long listingVersion;
+    private final FileBloomFilter fileFilter;
+    private final Map<Long, Long> knownViews;
 
-    public HACPacket(int nodeId, String message, List<String> fileList, String version) {
+    public HACPacket(int nodeId, String message, List<String> fileList, long epoch, long sequence) {
+        this(nodeId, message, fileList, epoch, sequence, null, null, 0, null, null);
+    }
+
+    public HACPacket(int nodeId, String message, List<String> fileList, long epoch, long sequence,
+                     TreeSummary treeSummary, Telemetry telemetry, long listingVersion, FileBloomFilter fileFilter) {
+        this(nodeId, message, fileList, epoch, sequence, treeSummary, telemetry, listingVersion, fileFilter, null);
+    }
+
+    // fileList may be null when only the Bloom filter is sent; the exact listing is then fetched on demand.
+    // knownViews maps each server epoch to the cluster-view version this node already holds from it.
+    public HACPacket(int nodeId, String message, List<String> fileList, long epoch, long sequence,
+                     TreeSummary treeSummary, Telemetry telemetry, long listingVersion, FileBloomFilter fileFilter,
+                     Map<Long, Long> knownViews) {
         this.nodeId = nodeId;
         this.message = message;
-        this.fileList = fileList;
+        this.encodedFileList = fileList != null ? FileListCodec.encode(fileList) : null;
         this.timestamp = System.currentTimeMillis();
-        this.version = version;
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.treeSummary = treeSummary;
+        this.telemetry = telemetry;
+        this.listingVersion = listingVersion;
+        this.fileFilter = fileFilter;
+        this.knownViews = knownViews;
     }
 
     public int getNodeId() {
@@ -29,19 +56,58 @@ public class HACPacket implements Serializable {
     }
 
     public List<String> getFileList() {
+        if (fileList == null) {
+            fileList = FileListCodec.decode(encodedFileList);
+        }
         return fileList;
     }
 
+    public boolean hasFileList() {
+        return encodedFileList != null;
+    }
+
+    public byte[] getEncodedFileList() {
+        return encodedFileList;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
 
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public TreeSummary getTreeSummary() {
+        return treeSummary;
+    }
+
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    public long getListingVersion() {
+        return listingVersion;
+    }
+
+    public FileBloomFilter getFileFilter() {
+        return fileFilter;
+    }
+
+    public Long getKnownView(long serverEpoch) {
+        return knownViews != null ? knownViews.get(serverEpoch) : null;
+    }
+
     public String getVersion() {
-        return version;
+        return "v" + sequence;
     }
 
     @Override
     public String toString() {
-        return "Node " + nodeId + ": " + message + " | Version: " + version + " | Files: " + fileList;
+        return "Node " + nodeId + ": " + message + " | Epoch: " + epoch + " | Seq: " + sequence + " | Files: " + (hasFileList() ? getFileList() : fileFilter);
     }
 }
@@ -9,20 +9,52 @@ import java.util.*;
 import java.util.concurrent.*;
 
 public class HBP2P {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
     private static final SecureRandom secureRandom = new SecureRandom();
     private static final int NODE_ID = secureRandom.nextInt(1000);
     private static List<String> PEER_IPS;
     private static int PEER_PORT;
     private static String DIRECTORY_PATH;
-    private static int versionCounter = 1;
+    private static DirectoryWalker directoryWalker;
+    private static int STARTUP_JITTER_MS = 5000;
+    private static boolean BLOOM_MODE;
+    private static double BLOOM_FPP;
+    private static List<String> currentFileList;
+    private static TreeSummary currentTreeSummary;
+    private static FileBloomFilter currentFilter;
+    private static long listingVersion = 0;
+    private static final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "file-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private static AdmissionControl admissionControl;
+    private static final long EPOCH = System.currentTimeMillis();
+    private static long sequenceCounter = 1;
 
     private static final Map<Integer, NodeInfo> peerFileMap = new ConcurrentHashMap<>();
     private static final Map<Integer, Long> activePeers = new ConcurrentHashMap<>();
     private static final Set<Integer> previouslyDeadPeers = ConcurrentHashMap.newKeySet();
+    private static final Map<Integer, SequenceTracker> sequenceTrackers = new ConcurrentHashMap<>();
+    // Held while a node's sequence is checked and its entry stored, so a state-transfer merge
+    // and the ingest thread cannot interleave and leave an older listing behind a newer sequence number
+    private static final Object mergeLock = new Object();
+    private static final LoadScores loadScores = new LoadScores();
+    private static volatile DatagramSocket heartbeatSocket;
+    private static SearchCoordinator searchCoordinator;
+    private static final int SEARCH_MAX_RESULTS = 1000;
+    private static final long SEARCH_TIMEOUT_MS = 2000;
 
     public static void main(String[] args) {
         loadPeerConfig("config/peer_config.txt");
 
+        StateTransfer.serve(PEER_PORT, HBP2P::snapshotState, HBP2P::isConfiguredPeer);
+        Thread commandThread = new Thread(HBP2P::readCommands, "commands");
+        commandThread.setDaemon(true);
+        commandThread.start();
+        new Thread(() -> joinCluster(PEER_IPS), "state-join").start();
+
         new Thread(HBP2P::listenForHeartbeats).start();
 
         new Thread(HBP2P::sendHeartbeats).start();
@@ -33,27 +65,25 @@ public class HBP2P {
 
     private static void listenForHeartbeats() {
         try (DatagramSocket socket = new DatagramSocket(PEER_PORT)) {
+            heartbeatSocket = socket;
             socket.setSoTimeout(5000);
+            socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+
+            Thread ingestThread = new Thread(HBP2P::processIngestQueue, "heartbeat-ingest");
+            ingestThread.setDaemon(true);
+            ingestThread.start();
 
-            byte[] receiveData = new byte[4096];
+            byte[] receiveData = new byte[MAX_DATAGRAM_SIZE];
             while (true) {
                 DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
                 try {
                     socket.receive(receivePacket);
-                    InetAddress peerIp = receivePacket.getAddress();
-                    ByteArrayInputStream bis = new ByteArrayInputStream(receivePacket.getData());
-                    try (ObjectInputStream ois = new ObjectInputStream(bis)) {
-                        HACPacket packet = (HACPacket) ois.readObject();
-                        activePeers.put(packet.getNodeId(), System.currentTimeMillis());
-                        NodeInfo nodeInfo = new NodeInfo(packet.getVersion(), packet.getTimestamp(), packet.getFileList(), peerIp.getHostAddress());
-                        handleReconnection(nodeInfo, packet.getNodeId());
-                        System.out.println("Received heartbeat from Node " + packet.getNodeId());
-
-                        printGlobalFileMap();
-                    } catch (ClassNotFoundException e) {
-                        System.err.println("Invalid packet received: " + e.getMessage());
-                    } catch (InvalidClassException e) {
-                        System.err.println("Corrupted packet received: " + e.getMessage());
+                    InetSocketAddress source = (InetSocketAddress) receivePacket.getSocketAddress();
+                    byte[] data = Arrays.copyOf(receivePacket.getData(), receivePacket.getLength());
+                    // Drops are counted and summarized by the health check, not logged one by one
+                    admissionControl.offer(data, source);
+                    if (admissionControl.shouldHint(source)) {
+                        sendBackoffHint(socket, source);
                     }
                 } catch (SocketTimeoutException e) {
                     System.err.println("Socket timeout: No packets received in the last 5 seconds.");
@@ -66,25 +96,89 @@ public class HBP2P {
         }
     }
 
+    private static void processIngestQueue() {
+        while (true) {
+            AdmissionControl.Ingest ingest;
+            try {
+                ingest = admissionControl.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(ingest.getData()))) {
+                HACPacket packet = (HACPacket) ois.readObject();
+                if ("LISTING".equals(packet.getMessage())) {
+                    synchronized (mergeLock) {
+                        applyListing(packet);
+                    }
+                    continue;
+                }
+                synchronized (mergeLock) {
+                    if (!checkSequence(packet)) {
+                        continue;
+                    }
+                    activePeers.put(packet.getNodeId(), System.currentTimeMillis());
+                    NodeInfo nodeInfo = new NodeInfo(packet, ingest.getSource().getAddress().getHostAddress());
+                    nodeInfo.source = ingest.getSource();
+                    nodeInfo.inheritListing(peerFileMap.get(packet.getNodeId()));
+                    handleReconnection(nodeInfo, packet.getNodeId());
+                }
+                loadScores.update(packet.getNodeId(), packet.getTelemetry());
+                System.out.println("Received heartbeat from Node " + packet.getNodeId());
+
+                // During a restart storm, print once the backlog has drained rather than per packet.
+                if (admissionControl.isBacklogEmpty()) {
+                    printGlobalFileMap();
+                }
+            } catch (ClassNotFoundException | ClassCastException e) {
+                System.err.println("Invalid packet received: " + e.getMessage());
+            } catch (InvalidClassException e) {
+                System.err.println("Corrupted packet received: " + e.getMessage());
+            } catch (IOException e) {
+                System.err.println("Error reading packet: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // One bad packet must not kill the only thread that drains the queue
+                System.err.println("Error handling packet from " + ingest.getSource() + ": " + e);
+            }
+        }
+    }
+
+    private static void sendBackoffHint(DatagramSocket socket, InetSocketAddress target) {
+        BackoffHint hint = new BackoffHint(admissionControl.suggestedBackoffMillis());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(hint);
+        } catch (IOException e) {
+            System.err.println("Error serializing backoff hint: " + e.getMessage());
+            return;
+        }
+        byte[] sendData = bos.toByteArray();
+        try {
+            socket.send(new DatagramPacket(sendData, sendData.length, target));
+            System.out.println("Sent " + hint + " to " + target);
+        } catch (IOException e) {
+            System.err.println("Failed to send backoff hint to " + target + ": " + e.getMessage());
+        }
+    }
+
     private static void sendHeartbeats() {
         try (DatagramSocket socket = new DatagramSocket()) {
             socket.setSoTimeout(5000);
 
-            while (true) {
-                String version = "v" + versionCounter++;
-                List<String> fileList = getFileListing(DIRECTORY_PATH);
-                HACPacket packet = new HACPacket(NODE_ID, "HEARTBEAT", fileList, version);
+            // Spread the first beats out so that a cluster-wide cold start does not arrive as one burst.
+            if (!waitForNextBeat(socket, secureRandom.nextInt(STARTUP_JITTER_MS + 1))) {
+                return;
+            }
 
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-                    oos.writeObject(packet);
-                } catch (IOException e) {
-                    System.err.println("Error serializing packet: " + e.getMessage());
+            while (true) {
+                refreshListing();
+                HACPacket packet = buildPacket("HEARTBEAT", !BLOOM_MODE);
+                byte[] sendData = serialize(packet);
+                if (sendData == null) {
                     continue;
                 }
 
-                byte[] sendData = bos.toByteArray();
-
                 boolean sent = false;
                 for (String peerIP : PEER_IPS) {
                     try {
@@ -102,12 +196,8 @@ public class HBP2P {
                     System.out.println("Failed to send heartbeat to all peers.");
                 }
 
-                try {
-                    int sleepTime = secureRandom.nextInt(30) + 1;
-                    Thread.sleep(sleepTime * 1000L);
-                } catch (InterruptedException e) {
-                    System.err.println("Thread interrupted: " + e.getMessage());
-                    Thread.currentThread().interrupt();
+                int sleepTime = secureRandom.nextInt(30) + 1;
+                if (!waitForNextBeat(socket, sleepTime * 1000L)) {
                     break;
                 }
             }
@@ -120,16 +210,55 @@ public class HBP2P {
 
     private static void checkPeerHealth() {
         long currentTime = System.currentTimeMillis();
+        long dropped = admissionControl.takeDroppedSinceLastReport();
+        if (dropped > 0) {
+            System.err.println("Dropped " + dropped + " throttled heartbeats since the last check (" + admissionControl.getDropped() + " total)");
+        }
+        admissionControl.evictIdleSources(60000);
         activePeers.forEach((nodeId, lastSeen) -> {
             if (currentTime - lastSeen > 30000) {
-                System.out.println("Node " + nodeId + " is down.");
+                SequenceTracker tracker = sequenceTrackers.get(nodeId);
+                System.out.println("Node " + nodeId + " is down." + (tracker != null ? " Last link stats: " + tracker : ""));
                 activePeers.remove(nodeId);
                 peerFileMap.remove(nodeId);
+                loadScores.remove(nodeId);
                 previouslyDeadPeers.add(nodeId);
             }
         });
     }
 
+    private static boolean checkSequence(HACPacket packet) {
+        SequenceTracker tracker = sequenceTrackers.computeIfAbsent(packet.getNodeId(), id -> new SequenceTracker());
+        SequenceTracker.Result result = tracker.accept(packet.getEpoch(), packet.getSequence());
+        switch (result) {
+            case ACCEPTED:
+                return true;
+            case RESTARTED:
+                System.out.println("Node " + packet.getNodeId() + " restarted with epoch " + packet.getEpoch() + ".");
+                return true;
+            default:
+                System.out.println("Discarded " + result.name().toLowerCase() + " heartbeat from Node " + packet.getNodeId()
+                        + " (seq " + packet.getSequence() + ", latest " + tracker.getHighestSequence() + ")");
+                return false;
+        }
+    }
+
+    // A listing reply carries the sequence of the node's latest heartbeat rather than a new one,
+    // so it skips the sequence tracker and is matched on epoch and listing version instead.
+    private static void applyListing(HACPacket packet) {
+        int nodeId = packet.getNodeId();
+        NodeInfo known = peerFileMap.get(nodeId);
+        if (known == null || known.epoch != packet.getEpoch() || packet.getListingVersion() < known.listingVersion) {
+            System.out.println("Ignored outdated listing v" + packet.getListingVersion() + " from Node " + nodeId);
+            return;
+        }
+        NodeInfo nodeInfo = new NodeInfo(packet, known.nodeIp);
+        nodeInfo.source = known.source;
+        nodeInfo.sequence = Math.max(known.sequence, packet.getSequence());
+        peerFileMap.put(nodeId, nodeInfo);
+        System.out.println("Received listing v" + packet.getListingVersion() + " from Node " + nodeId);
+    }
+
     private static void handleReconnection(NodeInfo nodeInfo, int nodeId) {
         if (previouslyDeadPeers.contains(nodeId)) {
             System.out.println("Node " + nodeId + " has reconnected.");
@@ -146,13 +275,28 @@ public class HBP2P {
 
         System.out.println("\nCurrent Node Status:");
         System.out.println("-------------------------------------------------------------------");
-        System.out.printf("%-12s %-12s %-25s %-18s\n", "Node ID", "Version", "Timestamp", "Node IP");
+        System.out.printf("%-12s %-12s %-25s %-18s %s\n", "Node ID", "Version", "Timestamp", "Node IP", "Link");
         System.out.println("-------------------------------------------------------------------");
 
         sortedNodes.forEach((nodeId, info) -> {
             String formattedTime = sdf.format(new Date(info.timestamp));
-            System.out.printf("%-12d %-12s %-25s %-18s\n", nodeId, info.version, formattedTime, info.nodeIp);
-            System.out.println("\nFiles: " + info.fileList);
+            SequenceTracker tracker = sequenceTrackers.get(nodeId);
+            String link = tracker != null
+                    ? String.format("loss %.1f%% reorder %.1f%%", tracker.getLossRate() * 100, tracker.getReorderRate() * 100)
+                    : "-";
+            System.out.printf("%-12d %-12s %-25s %-18s %s\n", nodeId, info.version, formattedTime, info.nodeIp, link);
+            if (info.hasCurrentListing()) {
+                System.out.println("\nFiles: " + info.getFileList());
+            } else {
+                System.out.println("\nFiles: " + info.fileFilter + " for listing v" + info.listingVersion
+                        + " (exact listing not fetched; use 'ls " + nodeId + "')");
+            }
+            if (info.telemetry != null) {
+                System.out.printf("Load: %s | score %.3f\n", info.telemetry, loadScores.get(nodeId));
+            }
+            if (info.treeSummary != null) {
+                System.out.print("Tree:\n" + info.treeSummary);
+            }
             System.out.println("-------------------------------------------------------------------\n");
         });
     }
@@ -171,6 +315,144 @@ public class HBP2P {
         return fileList;
     }
 
+    private static void refreshListing() {
+        List<String> fileList;
+        if (directoryWalker != null) {
+            directoryWalker.walk();
+            fileList = directoryWalker.getFileList();
+            currentTreeSummary = directoryWalker.getSummary();
+        } else {
+            fileList = getFileListing(DIRECTORY_PATH);
+        }
+        if (!fileList.equals(currentFileList)) {
+            currentFileList = fileList;
+            listingVersion++;
+            currentFilter = BLOOM_MODE ? FileBloomFilter.build(fileList, BLOOM_FPP) : null;
+        }
+    }
+
+    // In bloom mode routine heartbeats carry only the filter and listing version; receivers ask for
+    // the exact listing with a ListingRequest when they need it.
+    private static HACPacket buildPacket(String message, boolean includeFileList) {
+        return buildPacket(message, includeFileList, sequenceCounter++);
+    }
+
+    private static HACPacket buildPacket(String message, boolean includeFileList, long sequence) {
+        return new HACPacket(NODE_ID, message, includeFileList ? currentFileList : null, EPOCH, sequence,
+                currentTreeSummary, Telemetry.sample(DIRECTORY_PATH), listingVersion, currentFilter);
+    }
+
+    private static byte[] serialize(Object message) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(message);
+        } catch (IOException e) {
+            System.err.println("Error serializing packet: " + e.getMessage());
+            return null;
+        }
+        return bos.toByteArray();
+    }
+
+    // Runs off the heartbeat thread so a large search never delays the next beat.
+    private static void runSearch(DatagramSocket socket, SearchRequest request, SocketAddress requester) {
+        System.out.println("Running " + request + " for " + requester);
+        int[] sequence = { 0 };
+        int count = FileSearch.run(Paths.get(DIRECTORY_PATH), request,
+                batch -> sendSearchResult(socket, requester, new SearchResult(request.getQueryId(), NODE_ID, sequence[0]++, batch, false)));
+        sendSearchResult(socket, requester, new SearchResult(request.getQueryId(), NODE_ID, sequence[0], Collections.emptyList(), true));
+        System.out.println("Search #" + request.getQueryId() + " finished with " + count + " matches");
+    }
+
+    private static void sendSearchResult(DatagramSocket socket, SocketAddress requester, SearchResult result) {
+        byte[] sendData = serialize(result);
+        if (sendData == null) {
+            return;
+        }
+        try {
+            socket.send(new DatagramPacket(sendData, sendData.length, requester));
+        } catch (IOException e) {
+            System.err.println("Failed to send search results to " + requester + ": " + e.getMessage());
+        }
+    }
+
+    // Listings, searches and state transfers expose the directory, so only the configured peers
+    // may ask for them
+    private static boolean isConfiguredPeer(InetAddress address) {
+        for (String ip : PEER_IPS) {
+            try {
+                if (InetAddress.getByName(ip.trim()).equals(address)) {
+                    return true;
+                }
+            } catch (UnknownHostException e) {
+                // An unresolvable entry matches nothing
+            }
+        }
+        return false;
+    }
+
+    // A listing reply repeats the latest heartbeat's sequence number. Taking a new one would
+    // open a gap in the heartbeat stream whenever the reply is lost, and receivers would count that as link loss.
+    private static void sendListing(DatagramSocket socket, SocketAddress requester) {
+        byte[] sendData = serialize(buildPacket("LISTING", true, sequenceCounter - 1));
+        if (sendData == null) {
+            return;
+        }
+        try {
+            socket.send(new DatagramPacket(sendData, sendData.length, requester));
+            System.out.println("Sent listing v" + listingVersion + " to " + requester);
+        } catch (IOException e) {
+            System.err.println("Failed to send listing to " + requester + ": " + e.getMessage());
+        }
+    }
+
+    // Sleeps until the next heartbeat is due while listening for BackoffHints on the sending socket.
+    // Each hint pushes the deadline out by a randomized 0.5x-1.5x of the requested backoff.
+    private static boolean waitForNextBeat(DatagramSocket socket, long waitMillis) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        byte[] receiveData = new byte[512];
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return true;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                System.err.println("Thread interrupted while waiting for next heartbeat.");
+                return false;
+            }
+            try {
+                socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+                socket.receive(receivePacket);
+                try (ObjectInputStream ois = new ObjectInputStream(
+                        new ByteArrayInputStream(receivePacket.getData(), 0, receivePacket.getLength()))) {
+                    Object message = ois.readObject();
+                    if ((message instanceof ListingRequest || message instanceof SearchRequest)
+                            && !isConfiguredPeer(receivePacket.getAddress())) {
+                        System.err.println("Ignored " + message.getClass().getSimpleName() + " from unknown host "
+                                + receivePacket.getAddress().getHostAddress());
+                    } else if (message instanceof ListingRequest) {
+                        sendListing(socket, receivePacket.getSocketAddress());
+                    } else if (message instanceof SearchRequest) {
+                        SearchRequest request = (SearchRequest) message;
+                        SocketAddress requester = receivePacket.getSocketAddress();
+                        searchExecutor.submit(() -> runSearch(socket, request, requester));
+                    } else if (message instanceof BackoffHint) {
+                        long backoff = (long) (((BackoffHint) message).getBackoffMillis() * (0.5 + secureRandom.nextDouble()));
+                        deadline = Math.max(deadline, System.currentTimeMillis() + backoff);
+                        System.out.println("Received " + message + " from " + receivePacket.getAddress().getHostAddress()
+                                + ", next heartbeat in " + (deadline - System.currentTimeMillis()) + "ms");
+                    }
+                } catch (ClassNotFoundException e) {
+                    System.err.println("Invalid control packet received: " + e.getMessage());
+                }
+            } catch (SocketTimeoutException e) {
+                // Deadline reached; loop re-checks and returns.
+            } catch (IOException e) {
+                System.err.println("Error receiving control packet: " + e.getMessage());
+            }
+        }
+    }
+
     private static void loadPeerConfig(String filePath) {
         try {
             Properties props = new Properties();
@@ -178,28 +460,255 @@ public class HBP2P {
             PEER_IPS = Arrays.asList(props.getProperty("peer_ips").split(","));
             PEER_PORT = Integer.parseInt(props.getProperty("port"));
             DIRECTORY_PATH = props.getProperty("directory_path");
+            STARTUP_JITTER_MS = Integer.parseInt(props.getProperty("startup_jitter_ms", "5000"));
+            BLOOM_MODE = "bloom".equalsIgnoreCase(props.getProperty("summary_mode", "full"));
+            BLOOM_FPP = Double.parseDouble(props.getProperty("bloom_fpp", "0.01"));
+            int queueCapacity = Integer.parseInt(props.getProperty("ingest_queue", "1024"));
+            double ratePerSource = Double.parseDouble(props.getProperty("rate_per_source", "1.0"));
+            int burst = Integer.parseInt(props.getProperty("burst", "3"));
+            long backoffMillis = Long.parseLong(props.getProperty("backoff_ms", "5000"));
+            admissionControl = new AdmissionControl(queueCapacity, ratePerSource, burst, backoffMillis);
+            if (Boolean.parseBoolean(props.getProperty("recursive", "false"))) {
+                int maxDepth = Integer.parseInt(props.getProperty("max_depth", "8"));
+                int maxFiles = Integer.parseInt(props.getProperty("max_files", "10000"));
+                directoryWalker = new DirectoryWalker(Paths.get(DIRECTORY_PATH), maxDepth, maxFiles);
+                System.out.println("Recursive listing enabled: MAX_DEPTH=" + maxDepth + ", MAX_FILES=" + maxFiles);
+            }
             System.out.println("Loaded peer configuration: PEER_IPS=" + PEER_IPS + ", PORT=" + PEER_PORT + ", DIRECTORY_PATH=" + DIRECTORY_PATH);
         } catch (IOException e) {
             System.err.println("Error reading peer config file: " + e.getMessage());
             System.exit(1);
         } catch (NumberFormatException e) {
-            System.err.println("Invalid port number in config file: " + e.getMessage());
+            System.err.println("Invalid number in config file: " + e.getMessage());
             System.exit(1);
         }
     }
 
+    public static List<Integer> pickBestHolders(String fileName, int n) {
+        List<Integer> holders = new ArrayList<>();
+        peerFileMap.forEach((nodeId, info) -> {
+            if (activePeers.containsKey(nodeId) && info.mightHave(fileName)) {
+                holders.add(nodeId);
+            }
+        });
+        return loadScores.pickBest(holders, n, ThreadLocalRandom.current());
+    }
+
+    private static void searchCluster(String glob, String text) {
+        Map<Integer, InetSocketAddress> targets = new HashMap<>();
+        peerFileMap.forEach((nodeId, info) -> {
+            if (activePeers.containsKey(nodeId) && info.source != null) {
+                targets.put(nodeId, info.source);
+            }
+        });
+        try {
+            if (searchCoordinator == null) {
+                searchCoordinator = new SearchCoordinator();
+            }
+        } catch (SocketException e) {
+            System.err.println("Error creating search socket: " + e.getMessage());
+            return;
+        }
+        System.out.println("Searching " + targets.size() + " live nodes for " + glob + (text != null ? " containing \"" + text + "\"" : ""));
+        searchCoordinator.search(targets, glob, text, SEARCH_MAX_RESULTS, SEARCH_TIMEOUT_MS, new SearchCoordinator.Listener() {
+            @Override
+            public void onResults(int nodeId, List<String> matches, long elapsedMillis) {
+                matches.forEach(match -> System.out.println("[" + elapsedMillis + "ms] Node " + nodeId + ": " + match));
+            }
+
+            @Override
+            public void onComplete(Set<Integer> completed, Set<Integer> timedOut, int totalMatches, long elapsedMillis) {
+                System.out.println("Search finished in " + elapsedMillis + "ms: " + totalMatches + " matches from "
+                        + completed.size() + " nodes" + (timedOut.isEmpty() ? "" : ", partial (timed out: " + timedOut + ")"));
+            }
+        });
+    }
+
+    private static void requestListing(int nodeId) {
+        NodeInfo info = peerFileMap.get(nodeId);
+        if (info == null || info.source == null || heartbeatSocket == null) {
+            System.out.println("No direct address known for Node " + nodeId + ".");
+            return;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(new ListingRequest(info.listingVersion));
+        } catch (IOException e) {
+            System.err.println("Error serializing listing request: " + e.getMessage());
+            return;
+        }
+        byte[] sendData = bos.toByteArray();
+        try {
+            heartbeatSocket.send(new DatagramPacket(sendData, sendData.length, info.source));
+            System.out.println("Requested listing v" + info.listingVersion + " from Node " + nodeId);
+        } catch (IOException e) {
+            System.err.println("Failed to request listing from Node " + nodeId + ": " + e.getMessage());
+        }
+    }
+
+    private static void readCommands() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                try {
+                    if (parts[0].equals("best") && parts.length >= 2) {
+                        int n = parts.length >= 3 ? Integer.parseInt(parts[2]) : 1;
+                        System.out.println("Best holders of " + parts[1] + ": " + pickBestHolders(parts[1], n));
+                    } else if (parts[0].equals("has") && parts.length >= 2) {
+                        List<Integer> holders = new ArrayList<>();
+                        new TreeMap<>(peerFileMap).forEach((nodeId, info) -> {
+                            if (info.mightHave(parts[1])) {
+                                holders.add(nodeId);
+                            }
+                        });
+                        System.out.println("Nodes that may have " + parts[1] + ": " + holders);
+                    } else if (parts[0].equals("ls") && parts.length >= 2) {
+                        requestListing(Integer.parseInt(parts[1]));
+                    } else if (parts[0].equals("search") && parts.length >= 2) {
+                        String text = parts.length >= 3 ? line.trim().split("\\s+", 3)[2] : null;
+                        searchCluster(parts[1], text);
+                    } else if (!parts[0].isEmpty()) {
+                        System.out.println("Commands: best <file> [n] | has <file> | ls <nodeId> | search <glob> [text]");
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid number: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading commands: " + e.getMessage());
+        }
+    }
+
+    private static ClusterState snapshotState() {
+        long now = System.currentTimeMillis();
+        Map<Integer, Long> lastSeenAges = new HashMap<>();
+        activePeers.forEach((nodeId, lastSeen) -> lastSeenAges.put(nodeId, now - lastSeen));
+        return new ClusterState(new HashMap<>(peerFileMap), lastSeenAges, new HashSet<>(previouslyDeadPeers));
+    }
+
+    private static void joinCluster(List<String> seeds) {
+        // A seed that has only just started has nothing to give; try the next one instead of joining empty.
+        Object state = StateTransfer.fetch(seeds, PEER_PORT, snapshot -> snapshot instanceof ClusterState && !((ClusterState) snapshot).nodes.isEmpty());
+        if (!(state instanceof ClusterState)) {
+            System.out.println("No cluster state available; waiting for heartbeats.");
+            return;
+        }
+        ClusterState clusterState = (ClusterState) state;
+        long now = System.currentTimeMillis();
+        int merged = 0;
+        for (Map.Entry<Integer, NodeInfo> entry : clusterState.nodes.entrySet()) {
+            int nodeId = entry.getKey();
+            NodeInfo info = entry.getValue();
+            Long age = clusterState.lastSeenAges.get(nodeId);
+            if (age == null) {
+                continue;
+            }
+            // Heartbeats that arrived directly while the transfer was in flight are at least as new; keep them.
+            // A different epoch seen directly means the node restarted since the snapshot was taken.
+            synchronized (mergeLock) {
+                SequenceTracker tracker = sequenceTrackers.computeIfAbsent(nodeId, id -> new SequenceTracker());
+                if (tracker.getEpoch() != -1 && tracker.getEpoch() != info.epoch) {
+                    continue;
+                }
+                SequenceTracker.Result result = tracker.accept(info.epoch, info.sequence);
+                if (result != SequenceTracker.Result.ACCEPTED && result != SequenceTracker.Result.RESTARTED) {
+                    continue;
+                }
+                peerFileMap.put(nodeId, info);
+                activePeers.put(nodeId, now - age);
+            }
+            merged++;
+        }
+        clusterState.deadNodes.forEach(nodeId -> {
+            if (!activePeers.containsKey(nodeId)) {
+                previouslyDeadPeers.add(nodeId);
+            }
+        });
+        System.out.println("Joined cluster with " + merged + " nodes from state transfer.");
+        printGlobalFileMap();
+    }
+
+    private static class ClusterState implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final Map<Integer, NodeInfo> nodes;
+        final Map<Integer, Long> lastSeenAges;
+        final Set<Integer> deadNodes;
+
+        ClusterState(Map<Integer, NodeInfo> nodes, Map<Integer, Long> lastSeenAges, Set<Integer> deadNodes) {
+            this.nodes = nodes;
+            this.lastSeenAges = lastSeenAges;
+            this.deadNodes = deadNodes;
+        }
+    }
+
     private static class NodeInfo implements Serializable {
         private static final long serialVersionUID = 1L;
         String version;
         long timestamp;
-        List<String> fileList;
+        byte[] encodedFileList;
+        transient List<String> fileList;
+        TreeSummary treeSummary;
+        Telemetry telemetry;
         String nodeIp;
+        long epoch;
+        long sequence;
+        long listingVersion;
+        long exactListingVersion;
+        FileBloomFilter fileFilter;
+        InetSocketAddress source;
+
+        NodeInfo(HACPacket packet, String nodeIp) {
+            this(packet.getVersion(), packet.getTimestamp(), packet.getEncodedFileList(), packet.getTreeSummary(), nodeIp);
+            this.epoch = packet.getEpoch();
+            this.sequence = packet.getSequence();
+            this.telemetry = packet.getTelemetry();
+            this.listingVersion = packet.getListingVersion();
+            this.exactListingVersion = packet.hasFileList() ? packet.getListingVersion() : -1;
+            this.fileFilter = packet.getFileFilter();
+        }
+
+        // Filter-only heartbeats keep the last exact listing we fetched; it is marked stale by version.
+        void inheritListing(NodeInfo previous) {
+            if (encodedFileList == null && previous != null && previous.encodedFileList != null && previous.epoch == epoch) {
+                encodedFileList = previous.encodedFileList;
+                fileList = previous.fileList;
+                exactListingVersion = previous.exactListingVersion;
+            }
+            if (source == null && previous != null) {
+                source = previous.source;
+            }
+        }
+
+        boolean hasCurrentListing() {
+            return encodedFileList != null && exactListingVersion == listingVersion;
+        }
 
-        NodeInfo(String version, long timestamp, List<String> fileList, String nodeIp) {
+        boolean mightHave(String fileName) {
+            if (hasCurrentListing() || fileFilter == null) {
+                return getFileList().contains(fileName);
+            }
+            return fileFilter.mightContain(fileName);
+        }
+
+        NodeInfo(String version, long timestamp, byte[] encodedFileList, TreeSummary treeSummary, String nodeIp) {
             this.version = version;
             this.timestamp = timestamp;
-            this.fileList = fileList;
+            this.encodedFileList = encodedFileList;
+            this.treeSummary = treeSummary;
             this.nodeIp = nodeIp;
         }
+
+        List<String> getFileList() {
+            if (fileList == null) {
+                try {
+                    fileList = FileListCodec.decode(encodedFileList);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid file listing received: " + e.getMessage());
+                    fileList = Collections.emptyList();
+                }
+            }
+            return fileList;
+        }
     }
 }
@@ -0,0 +1,22 @@
+package p2p.src;
+
+import java.io.Serializable;
+
+public class ListingRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long listingVersion;
+
+    public ListingRequest(long listingVersion) {
+        this.listingVersion = listingVersion;
+    }
+
+    public long getListingVersion() {
+        return listingVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "LISTING_REQUEST v" + listingVersion;
+    }
+}
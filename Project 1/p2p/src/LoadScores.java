@@ -0,0 +1,50 @@
+package p2p.src;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LoadScores {
+    private static final double ALPHA = 0.3;
+    private static final double MIN_SCORE = 0.01;
+
+    private final Map<Integer, Double> smoothed = new ConcurrentHashMap<>();
+
+    public void update(int nodeId, Telemetry telemetry) {
+        if (telemetry == null) {
+            return;
+        }
+        double sample = telemetry.loadScore();
+        smoothed.merge(nodeId, sample, (old, next) -> (1 - ALPHA) * old + ALPHA * next);
+    }
+
+    public void remove(int nodeId) {
+        smoothed.remove(nodeId);
+    }
+
+    public double get(int nodeId) {
+        return smoothed.getOrDefault(nodeId, Double.NaN);
+    }
+
+    // Weighted sampling without replacement (Efraimidis-Spirakis) with weight 1/score, so lightly
+    // loaded nodes are picked most often without every caller herding onto the single best node.
+    public List<Integer> pickBest(Collection<Integer> candidates, int n, Random random) {
+        List<double[]> keyed = new ArrayList<>();
+        for (int nodeId : candidates) {
+            double score = smoothed.getOrDefault(nodeId, 1.0);
+            double weight = 1.0 / Math.max(MIN_SCORE, score);
+            double key = Math.pow(random.nextDouble(), 1.0 / weight);
+            keyed.add(new double[] {key, nodeId});
+        }
+        keyed.sort((a, b) -> Double.compare(b[0], a[0]));
+
+        List<Integer> best = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, keyed.size()); i++) {
+            best.add((int) keyed.get(i)[1]);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,174 @@
+package p2p.src;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fans a SearchRequest out to every target over its own UDP socket, so streamed results never
+// compete with heartbeats for the ingest queue or per-source token buckets.
+public class SearchCoordinator {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    public interface Listener {
+        void onResults(int nodeId, List<String> matches, long elapsedMillis);
+
+        void onComplete(Set<Integer> completed, Set<Integer> timedOut, int totalMatches, long elapsedMillis);
+    }
+
+    private final DatagramSocket socket;
+    private final Map<Long, Query> queries = new ConcurrentHashMap<>();
+    private final AtomicLong nextQueryId = new AtomicLong(ThreadLocalRandom.current().nextInt(1 << 20));
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "search-timeouts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SearchCoordinator() throws SocketException {
+        this.socket = new DatagramSocket();
+        Thread receiveThread = new Thread(this::receiveResults, "search-results");
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+    }
+
+    public long search(Map<Integer, InetSocketAddress> targets, String glob, String contentSubstring,
+                       int maxResults, long timeoutMillis, Listener listener) {
+        long queryId = nextQueryId.incrementAndGet();
+        Query query = new Query(queryId, targets.keySet(), maxResults, listener);
+        queries.put(queryId, query);
+        if (targets.isEmpty()) {
+            finish(query);
+            return queryId;
+        }
+
+        byte[] sendData;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(new SearchRequest(queryId, glob, contentSubstring, maxResults));
+        } catch (IOException e) {
+            System.err.println("Error serializing search request: " + e.getMessage());
+            queries.remove(queryId);
+            return queryId;
+        }
+        sendData = bos.toByteArray();
+
+        query.timeout = timer.schedule(() -> finish(query), timeoutMillis, TimeUnit.MILLISECONDS);
+        targets.forEach((nodeId, address) -> {
+            try {
+                socket.send(new DatagramPacket(sendData, sendData.length, address));
+            } catch (IOException e) {
+                System.err.println("Failed to send search to Node " + nodeId + ": " + e.getMessage());
+            }
+        });
+        return queryId;
+    }
+
+    private void receiveResults() {
+        byte[] receiveData = new byte[MAX_DATAGRAM_SIZE];
+        while (!socket.isClosed()) {
+            DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+            try {
+                socket.receive(receivePacket);
+                try (ObjectInputStream ois = new ObjectInputStream(
+                        new ByteArrayInputStream(receivePacket.getData(), 0, receivePacket.getLength()))) {
+                    Object message = ois.readObject();
+                    if (message instanceof SearchResult) {
+                        handleResult((SearchResult) message);
+                    }
+                } catch (ClassNotFoundException e) {
+                    System.err.println("Invalid search result received: " + e.getMessage());
+                }
+            } catch (IOException e) {
+                System.err.println("Error receiving search result: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handleResult(SearchResult result) {
+        Query query = queries.get(result.getQueryId());
+        if (query == null) {
+            return;
+        }
+        int nodeId = result.getNodeId();
+        int sequence = result.getSequence();
+        boolean complete;
+        synchronized (query) {
+            // Every batch holds at least one match, so a node never numbers past maxResults
+            if (!query.pending.contains(nodeId) || sequence < 0 || sequence > query.maxResults) {
+                return;
+            }
+            BitSet received = query.received.computeIfAbsent(nodeId, id -> new BitSet());
+            if (received.get(sequence)) {
+                return; // Duplicate datagram
+            }
+            received.set(sequence);
+            if (result.isDone()) {
+                query.doneSequence.put(nodeId, sequence);
+            } else if (result.getMatches() != null && !result.getMatches().isEmpty()) {
+                query.totalMatches += result.getMatches().size();
+                query.listener.onResults(nodeId, result.getMatches(), System.currentTimeMillis() - query.startTime);
+            }
+            Integer done = query.doneSequence.get(nodeId);
+            if (done != null && received.nextClearBit(0) > done) {
+                query.pending.remove(nodeId);
+                query.completed.add(nodeId);
+                query.received.remove(nodeId);
+            }
+            complete = query.pending.isEmpty();
+        }
+        if (complete) {
+            finish(query);
+        }
+    }
+
+    private void finish(Query query) {
+        if (queries.remove(query.queryId) == null) {
+            return;
+        }
+        if (query.timeout != null) {
+            query.timeout.cancel(false);
+        }
+        synchronized (query) {
+            query.listener.onComplete(query.completed, query.pending, query.totalMatches, System.currentTimeMillis() - query.startTime);
+        }
+    }
+
+    private static class Query {
+        final long queryId;
+        final Set<Integer> pending;
+        final Set<Integer> completed = new HashSet<>();
+        final Map<Integer, BitSet> received = new HashMap<>();
+        final Map<Integer, Integer> doneSequence = new HashMap<>();
+        final int maxResults;
+        final Listener listener;
+        final long startTime = System.currentTimeMillis();
+        volatile ScheduledFuture<?> timeout;
+        int totalMatches;
+
+        Query(long queryId, Set<Integer> targets, int maxResults, Listener listener) {
+            this.queryId = queryId;
+            this.pending = new HashSet<>(targets);
+            this.maxResults = maxResults;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package p2p.src;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public final class StateTransfer {
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    private StateTransfer() {
+    }
+
+    // Serves one gzip-compressed snapshot per TCP connection on the given port. The snapshot carries every
+    // node's file listing, so connections from addresses the caller does not accept are closed unanswered.
+    public static void serve(int port, Supplier<? extends Serializable> snapshotSupplier, Predicate<InetAddress> allowed) {
+        Thread acceptThread = new Thread(() -> {
+            ExecutorService workers = Executors.newFixedThreadPool(2, r -> {
+                Thread t = new Thread(r, "state-transfer");
+                t.setDaemon(true);
+                return t;
+            });
+            try (ServerSocket serverSocket = new ServerSocket(port)) {
+                System.out.println("Serving state transfers on TCP port " + port);
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    if (!allowed.test(socket.getInetAddress())) {
+                        System.err.println("Refusing state transfer to unconfigured host " + socket.getInetAddress());
+                        closeQuietly(socket);
+                        continue;
+                    }
+                    workers.submit(() -> sendSnapshot(socket, snapshotSupplier.get()));
+                }
+            } catch (IOException e) {
+                System.err.println("State transfer listener stopped: " + e.getMessage());
+            } finally {
+                workers.shutdown();
+            }
+        }, "state-transfer-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    // Tries each seed in order and returns the first snapshot received, or null if none answered.
+    public static Object fetch(List<String> seeds, int port) {
+        return fetch(seeds, port, snapshot -> true);
+    }
+
+    // As above, but a snapshot the caller cannot use moves on to the next seed
+    public static Object fetch(List<String> seeds, int port, Predicate<Object> usable) {
+        for (String seed : seeds) {
+            String host = seed.trim();
+            try {
+                InetAddress address = InetAddress.getByName(host);
+                if (isLocalAddress(address)) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(address, port), CONNECT_TIMEOUT_MS);
+                    socket.setSoTimeout(READ_TIMEOUT_MS);
+                    try (ObjectInputStream ois = new ObjectInputStream(
+                            new GZIPInputStream(new BufferedInputStream(socket.getInputStream())))) {
+                        Object snapshot = ois.readObject();
+                        if (!usable.test(snapshot)) {
+                            System.out.println("Skipping unusable cluster state from " + host);
+                            continue;
+                        }
+                        System.out.println("Fetched cluster state from " + host + " in " + (System.currentTimeMillis() - start) + "ms");
+                        return snapshot;
+                    }
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("State transfer from " + host + " failed: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static void sendSnapshot(Socket socket, Serializable snapshot) {
+        try (Socket s = socket;
+             ObjectOutputStream oos = new ObjectOutputStream(
+                     new GZIPOutputStream(new BufferedOutputStream(s.getOutputStream())))) {
+            s.setSoTimeout(READ_TIMEOUT_MS);
+            oos.writeObject(snapshot);
+        } catch (IOException e) {
+            System.err.println("Error sending state to " + socket.getInetAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing was sent; the connection is gone either way
+        }
+    }
+
+    private static boolean isLocalAddress(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress()) {
+            return true;
+        }
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+}
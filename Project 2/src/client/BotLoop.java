@@ -0,0 +1,146 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Added by Brooks - One selector thread driving many TriviaBots, the client-side mirror of the server's reactors
+// Every bot's sockets and timers live on exactly one loop, so a bot's state is never touched by two threads and
+// a few loops carry thousands of bots without a thread (or a stack) per player.
+public class BotLoop implements Runnable, Closeable {
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private volatile boolean running = true;
+    private long timerSeq;
+
+    public BotLoop(String name) throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Added by Brooks - Runs a task on the loop thread; safe to call from any thread
+    public void execute(Runnable task) {
+        pending.add(task);
+        selector.wakeup();
+    }
+
+    // Added by Brooks - Runs a task on the loop thread after a delay; loop thread only
+    Timer schedule(Runnable task, long delayMillis) {
+        Timer timer = new Timer(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), timerSeq++, task);
+        timers.add(timer);
+        return timer;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    // Added by Brooks - CPU time this loop's thread has used, so a load test can tell its own cost from the server's
+    public long getCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isThreadCpuTimeSupported() ? Math.max(0, threads.getThreadCpuTime(thread.getId())) : 0;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                long wait = 0;
+                Timer next = timers.peek();
+                if (next != null) {
+                    wait = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.due - System.nanoTime()));
+                }
+                selector.select(wait);
+            } catch (IOException e) {
+                System.err.println(thread.getName() + " select failed: " + e.getMessage());
+                return;
+            }
+            Runnable task;
+            while ((task = pending.poll()) != null) {
+                run(task);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid()) {
+                    dispatch((TriviaBot) key.attachment(), key);
+                }
+            }
+            long now = System.nanoTime();
+            Timer timer;
+            while ((timer = timers.peek()) != null && timer.due - now <= 0) {
+                timers.poll();
+                if (!timer.cancelled) {
+                    run(timer.task);
+                }
+            }
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.err.println(thread.getName() + " task failed: " + e);
+        }
+    }
+
+    // Added by Brooks - A bug in one bot closes that bot only, never the loop and every other bot on it
+    private void dispatch(TriviaBot bot, SelectionKey key) {
+        try {
+            bot.onReady(key);
+        } catch (RuntimeException e) {
+            System.err.println(thread.getName() + ": " + bot + " failed: " + e);
+            bot.fail();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector.close();
+    }
+
+    // Added by Brooks - Cancellable timer; cancellation only marks it, the loop skips it when it comes due
+    static final class Timer implements Comparable<Timer> {
+        final long due;
+        final long seq;
+        final Runnable task;
+        boolean cancelled;
+
+        Timer(long due, long seq, Runnable task) {
+            this.due = due;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            int byDue = Long.compare(due - other.due, 0);
+            return byDue != 0 ? byDue : Long.compare(seq, other.seq);
+        }
+    }
+}
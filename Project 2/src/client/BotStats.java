@@ -0,0 +1,125 @@
+package client;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Added by Brooks - Measurements shared by every TriviaBot in a load test
+// Latencies are kept raw (a few thousand samples per run) and sorted once for the report. Broadcast spreads are
+// keyed by something unique to one room's round, so the first and last arrival of the same frame can be matched
+// across the bots of that room.
+public class BotStats {
+    public final AtomicLong connected = new AtomicLong();
+    public final AtomicLong connectFailures = new AtomicLong();
+    public final AtomicLong buzzes = new AtomicLong();
+    public final AtomicLong retransmits = new AtomicLong();
+    public final AtomicLong unacknowledged = new AtomicLong();
+    public final AtomicLong acks = new AtomicLong();
+    public final AtomicLong nacks = new AtomicLong();
+    public final AtomicLong correct = new AtomicLong();
+    public final AtomicLong wrong = new AtomicLong();
+    public final AtomicLong timeouts = new AtomicLong();
+    public final AtomicLong dropped = new AtomicLong();
+    public final AtomicLong left = new AtomicLong();
+    public final AtomicLong gamesOver = new AtomicLong();
+    public final AtomicLong errors = new AtomicLong();
+
+    private final Samples joins = new Samples();
+    private final Samples buzzAcks = new Samples();
+    private final Samples verdicts = new Samples();
+    private final Map<Object, long[]> prefetchArrivals = new HashMap<>();
+    private final Map<Object, long[]> keyArrivals = new HashMap<>();
+    private final Map<Object, long[]> reveals = new HashMap<>();
+
+    // Added by Brooks - Connect started to the room's first leaderboard frame (player seated in a room)
+    public void recordJoin(long micros) {
+        joins.add(micros);
+    }
+
+    // Added by Brooks - UDP buzz sent to its BUZZ_ACK, first transmissions only
+    public void recordBuzzAck(long micros) {
+        buzzAcks.add(micros);
+    }
+
+    // Added by Brooks - UDP buzz sent to the TCP ACK or NACK that settles it
+    public void recordVerdict(long micros) {
+        verdicts.add(micros);
+    }
+
+    public void recordPrefetch(Object round, long arrivedMicros) {
+        widen(prefetchArrivals, round, arrivedMicros);
+    }
+
+    public void recordRevealKey(Object round, long arrivedMicros) {
+        widen(keyArrivals, round, arrivedMicros);
+    }
+
+    // Added by Brooks - When a bot showed the question, converted to server time with its clock estimate
+    public void recordReveal(Object round, long serverMicros) {
+        widen(reveals, round, serverMicros);
+    }
+
+    private synchronized void widen(Map<Object, long[]> ranges, Object round, long value) {
+        long[] range = ranges.computeIfAbsent(round, r -> new long[] { value, value, 0 });
+        range[0] = Math.min(range[0], value);
+        range[1] = Math.max(range[1], value);
+        range[2]++;
+    }
+
+    public long[] joinMicros() {
+        return joins.sorted();
+    }
+
+    public long[] buzzAckMicros() {
+        return buzzAcks.sorted();
+    }
+
+    public long[] verdictMicros() {
+        return verdicts.sorted();
+    }
+
+    public long[] prefetchSpreadMicros() {
+        return spreads(prefetchArrivals);
+    }
+
+    public long[] revealKeySpreadMicros() {
+        return spreads(keyArrivals);
+    }
+
+    public long[] revealSkewMicros() {
+        return spreads(reveals);
+    }
+
+    // Rounds seen by a single bot say nothing about spread and are left out
+    private synchronized long[] spreads(Map<Object, long[]> ranges) {
+        return ranges.values().stream().filter(r -> r[2] > 1).mapToLong(r -> r[1] - r[0]).sorted().toArray();
+    }
+
+    // Added by Brooks - Value at the given percentile of a sorted array (nearest rank), or -1 when empty
+    public static long percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import model.ClockProbe;
+import model.UDPMessage;
+
+// Added by Brooks - Reliable buzz delivery over one persistent, connected DatagramChannel
+// A buzz is sent once and then retransmitted, unchanged, until the server's BUZZ_ACK comes back or the attempts
+// run out. The retransmission timeout follows the measured round trip (RFC 6298 style smoothing, Karn's rule for
+// retransmitted buzzes), so on a LAN a lost packet is repaired within a few milliseconds rather than costing the
+// question. Retransmits carry the original timestamp, so the server still orders the buzz by its first send.
+public class BuzzChannel implements Closeable {
+    private static final long INITIAL_RTO_US = 50_000;
+    private static final long MIN_RTO_US = 2_000;
+    private static final long MAX_RTO_US = 200_000;
+    private static final long CLOCK_GRANULARITY_US = 500;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private final DatagramChannel channel;
+    private final ScheduledExecutorService retransmitter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "buzz-retransmit");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long sessionToken;
+
+    // Guarded by this
+    private Pending pending;
+    private long srtt = -1;
+    private long rttvar;
+
+    public BuzzChannel(String host, int port) throws IOException {
+        channel = DatagramChannel.open();
+        channel.connect(new InetSocketAddress(host, port));
+        Thread receiver = new Thread(this::receiveAcks, "buzz-ack-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public void setSessionToken(long sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+
+    // Added by Brooks - Sends a buzz for the current question. Returns false if one is already in flight or
+    // acknowledged, since only the first buzz of a question counts on the server anyway.
+    // Modified by Brooks - Also false before the server has issued a session token, which it would reject
+    public synchronized boolean buzz() throws IOException {
+        if (pending != null || sessionToken == 0) {
+            return false;
+        }
+        long timestamp = ClockProbe.nowMicros();
+        pending = new Pending(timestamp, new UDPMessage(sessionToken, timestamp).encode());
+        transmit(pending, currentRto());
+        return true;
+    }
+
+    // Added by Brooks - Called when a new question arrives or the game ends; stops any retransmission
+    public synchronized void reset() {
+        if (pending != null && pending.timer != null) {
+            pending.timer.cancel(false);
+        }
+        pending = null;
+    }
+
+    // Added by Brooks - Whether the server has confirmed the current buzz
+    public synchronized boolean isAcknowledged() {
+        return pending != null && pending.acked;
+    }
+
+    // Caller holds this object's lock
+    private void transmit(Pending buzz, long rto) throws IOException {
+        buzz.attempts++;
+        channel.write(ByteBuffer.wrap(buzz.packet));
+        buzz.timer = retransmitter.schedule(() -> retransmit(buzz, rto), rto, TimeUnit.MICROSECONDS);
+    }
+
+    private synchronized void retransmit(Pending buzz, long rto) {
+        if (pending != buzz || buzz.acked) {
+            return;
+        }
+        if (buzz.attempts >= MAX_ATTEMPTS) {
+            System.err.println("Buzz not acknowledged after " + buzz.attempts + " attempts");
+            pending = null; // Lets the player buzz again instead of being stuck until the next question
+            return;
+        }
+        try {
+            // Exponential backoff, so a server that is really gone is not flooded
+            transmit(buzz, Math.min(MAX_RTO_US, rto * 2));
+        } catch (IOException e) {
+            System.err.println("Error retransmitting buzz: " + e.getMessage());
+        }
+    }
+
+    private void receiveAcks() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                channel.receive(buffer);
+                long now = ClockProbe.nowMicros();
+                UDPMessage message = UDPMessage.decode(buffer.array(), 0, buffer.position());
+                if (message != null && message.getType() == UDPMessage.BUZZ_ACK
+                        && message.getSessionToken() == sessionToken) {
+                    onAck(message.getTimestamp(), now);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // ICMP port unreachable and the like; the retransmit timer covers it
+            }
+        }
+    }
+
+    private synchronized void onAck(long timestamp, long now) {
+        Pending buzz = pending;
+        if (buzz == null || buzz.acked || buzz.timestamp != timestamp) {
+            return;
+        }
+        buzz.acked = true;
+        buzz.timer.cancel(false);
+        // Karn's rule: an ack for a retransmitted buzz cannot say which copy it answers
+        if (buzz.attempts == 1) {
+            long sample = now - timestamp;
+            if (srtt < 0) {
+                srtt = sample;
+                rttvar = sample / 2;
+            } else {
+                rttvar = (3 * rttvar + Math.abs(srtt - sample)) / 4;
+                srtt = (7 * srtt + sample) / 8;
+            }
+        }
+        if (buzz.attempts > 1) {
+            System.out.println("Buzz acknowledged after " + buzz.attempts + " attempts, " + (now - timestamp) + "us");
+        }
+    }
+
+    // Caller holds this object's lock
+    private long currentRto() {
+        if (srtt < 0) {
+            return INITIAL_RTO_US;
+        }
+        long rto = srtt + Math.max(CLOCK_GRANULARITY_US, 4 * rttvar);
+        return Math.max(MIN_RTO_US, Math.min(MAX_RTO_US, rto));
+    }
+
+    @Override
+    public void close() throws IOException {
+        retransmitter.shutdownNow();
+        channel.close();
+    }
+
+    private static final class Pending {
+        final long timestamp;
+        final byte[] packet;
+        int attempts;
+        boolean acked;
+        ScheduledFuture<?> timer;
+
+        Pending(long timestamp, byte[] packet) {
+            this.timestamp = timestamp;
+            this.packet = packet;
+        }
+    }
+}
@@ -6,12 +6,18 @@ import java.io.*;
 import java.net.*;
 import javax.swing.*;
 
+import model.ClockProbe;
+import model.LeaderboardUpdate;
+import model.MessageCodec;
 import model.PlayerAnswer;
+import model.PlayerRank;
 import model.Question;
+import model.RevealKey;
+import model.SealedQuestion;
 import model.TCPMessage;
-import model.UDPMessage;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -40,10 +46,21 @@ public class ClientWindow implements ActionListener {
     private String serverIP;
     private int TCPserverPort;
     private int UDPserverPort;
+    // Added by Brooks - Client copy of the room's top rows and this player's standing, patched by deltas
+    private final List<LeaderboardUpdate.Entry> topRows = new ArrayList<>();
+    private PlayerRank myRank;
+    private int totalPlayers;
+    private BuzzChannel buzzChannel; // Added by Brooks - Persistent UDP channel with acknowledged buzzes
+    // Added by Brooks - Prefetched next question and the reveal scheduled for it; listener thread only
+    private SealedQuestion pendingQuestion;
+    private TimerTask pendingReveal;
+    private final Timer revealTimer = new Timer("question-reveal", true);
+    // Added by Brooks - This clock minus the server's, as last reported in a clock probe; null until known
+    private volatile Long serverClockOffset;
     
     // Network Connections
-    private ObjectInputStream tcpIn;
-    private ObjectOutputStream tcpOut;
+    private DataInputStream tcpIn;
+    private DataOutputStream tcpOut;
     private Socket tcpSocket;
 
     // Added by Eric - Client window constructor
@@ -163,19 +180,45 @@ public class ClientWindow implements ActionListener {
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     }
 
-    private void updateLeaderboard(Map<Integer, Integer> scores) {
+    // Modified by Brooks - Applies only the rows the server says changed, instead of re-sorting every score
+    private void applyLeaderboard(LeaderboardUpdate update) {
+        for (LeaderboardUpdate.Entry row : update.getChanges()) {
+            int index = row.getRank() - 1;
+            while (topRows.size() <= index) {
+                topRows.add(null);
+            }
+            topRows.set(index, row);
+        }
+        while (topRows.size() > update.getTopSize()) {
+            topRows.remove(topRows.size() - 1);
+        }
+        totalPlayers = update.getTotalPlayers();
+        renderLeaderboard();
+    }
+
+    // Added by Brooks - Own standing from the server; also the authoritative score
+    private void applyRank(PlayerRank rank) {
+        myRank = rank;
+        totalPlayers = rank.getTotalPlayers();
+        updateScore(rank.getScore());
+        renderLeaderboard();
+    }
+
+    // Added by Brooks - The top list is at most a handful of rows, so redrawing it is cheap
+    private void renderLeaderboard() {
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("%-12s %6s\n", "PLAYER", "SCORE"));
-        sb.append("-------------------\n");
-        
-        scores.entrySet().stream()
-            .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
-            .forEach(entry -> {
-                sb.append(String.format("%-12s %6d\n", 
-                    "Player " + entry.getKey(), 
-                    entry.getValue()));
-            });
-        
+        sb.append(String.format("%-4s %-12s %6s\n", "#", "PLAYER", "SCORE"));
+        sb.append("------------------------\n");
+        for (LeaderboardUpdate.Entry row : topRows) {
+            if (row != null) {
+                sb.append(String.format("%-4d %-12s %6d\n", row.getRank(), "Player " + row.getPlayerId(), row.getScore()));
+            }
+        }
+        if (myRank != null) {
+            sb.append("------------------------\n");
+            sb.append(String.format("You: #%d of %d, %d points\n", myRank.getRank(), totalPlayers, myRank.getScore()));
+        }
+
         leaderboardArea.setText(sb.toString());
         leaderboardArea.setCaretPosition(0); // Scroll to top
     }
@@ -187,8 +230,11 @@ public class ClientWindow implements ActionListener {
             try {
                 tcpSocket = new Socket();
                 tcpSocket.connect(new InetSocketAddress(serverIP, TCPserverPort), 5000);
-                tcpOut = new ObjectOutputStream(tcpSocket.getOutputStream());
-                tcpIn = new ObjectInputStream(tcpSocket.getInputStream());
+                // Modified by Brooks - Binary MessageCodec frames instead of object streams
+                tcpOut = new DataOutputStream(new BufferedOutputStream(tcpSocket.getOutputStream()));
+                tcpIn = new DataInputStream(new BufferedInputStream(tcpSocket.getInputStream()));
+                // Added by Brooks - One UDP channel for the whole session instead of a socket per click
+                buzzChannel = new BuzzChannel(serverIP, UDPserverPort);
                 System.out.println("Connected to server!");
                 break;
             } catch (IOException e) {
@@ -204,16 +250,43 @@ public class ClientWindow implements ActionListener {
         }
     }
 
+    // Added by Brooks - Frames one message onto the TCP stream; the listener and Swing threads both send
+    private void sendTcpMessage(TCPMessage message) throws IOException {
+        synchronized (tcpOut) {
+            MessageCodec.write(message, tcpOut);
+            tcpOut.flush();
+        }
+    }
+
     // Added by Brooks - Listens for incoming TCP messages
     private void listenForTcpMessages() {
         try {
             while (true) {
-                Object message = tcpIn.readObject();
-                if (message instanceof TCPMessage) {
-                    processTcpMessage((TCPMessage) message);
+                TCPMessage message = MessageCodec.read(tcpIn);
+                // Modified by Brooks - Clock probes are answered right here, not via the Swing queue, so the
+                // server's offset estimate is not skewed by UI work
+                if (message.getType() == TCPMessage.MessageType.CLOCK_PROBE) {
+                    long received = ClockProbe.nowMicros();
+                    ClockProbe probe = (ClockProbe) message.getPayload();
+                    sendTcpMessage(new TCPMessage(TCPMessage.MessageType.CLOCK_REPLY,
+                            new ClockProbe(probe.getOriginate(), received, ClockProbe.nowMicros())));
+                    if (probe.getTransmit() >= 0) {
+                        serverClockOffset = probe.getReceive();
+                    }
+                    continue;
+                }
+                // Added by Brooks - Prefetch and reveal are timed here too, independent of the Swing queue
+                if (message.getType() == TCPMessage.MessageType.PREFETCH) {
+                    holdPrefetch((SealedQuestion) message.getPayload());
+                    continue;
+                }
+                if (message.getType() == TCPMessage.MessageType.REVEAL_KEY) {
+                    scheduleReveal((RevealKey) message.getPayload());
+                    continue;
                 }
+                processTcpMessage(message);
             }
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace(); // Log the specific exception
             SwingUtilities.invokeLater(() -> 
                 JOptionPane.showMessageDialog(window, "Connection error: " + e.getMessage()));
@@ -221,6 +294,50 @@ public class ClientWindow implements ActionListener {
         }
     }
 
+    // Added by Brooks - Keeps the sealed next question until its key arrives
+    private void holdPrefetch(SealedQuestion sealed) {
+        if (pendingReveal != null) {
+            pendingReveal.cancel();
+            pendingReveal = null;
+        }
+        pendingQuestion = sealed;
+    }
+
+    // Added by Brooks - Opens the question as soon as the key arrives, then shows it at the server's reveal
+    // instant on this clock; without a clock estimate yet it is shown straight away
+    private void scheduleReveal(RevealKey key) {
+        SealedQuestion sealed = pendingQuestion;
+        if (sealed == null || sealed.getRound() != key.getRound()) {
+            return;
+        }
+        pendingQuestion = null;
+        Question next;
+        try {
+            next = sealed.open(key.getKey());
+        } catch (IOException e) {
+            System.err.println("Cannot open prefetched question: " + e.getMessage());
+            return;
+        }
+        Long offset = serverClockOffset;
+        long delayMillis = offset == null ? 0
+                : Math.max(0, (sealed.getRevealAt() + offset - ClockProbe.nowMicros()) / 1000);
+        pendingReveal = new TimerTask() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(() -> revealQuestion(next));
+            }
+        };
+        revealTimer.schedule(pendingReveal, delayMillis);
+    }
+
+    // Added by Brooks - Same as a QUESTION plus ELIGIBILITY from the server, but triggered locally
+    private void revealQuestion(Question next) {
+        buzzChannel.reset();
+        eligibility = true;
+        poll.setEnabled(true);
+        loadQuestion(next);
+    }
+
     // Added by Brooks - Handles different message types
     // Modified by Eric - Correctly handles the flow of the game using the various methods implemented, Question message serves as the "NEXT"
     private void processTcpMessage(TCPMessage message) {
@@ -228,6 +345,7 @@ public class ClientWindow implements ActionListener {
             System.out.print(message.getType());
             switch (message.getType()) {
                 case QUESTION:
+                    buzzChannel.reset(); // A new question ends retransmission of the last buzz
                     currentQuestion = (Question) message.getPayload();
                     loadQuestion(currentQuestion);
                     break;
@@ -263,13 +381,23 @@ public class ClientWindow implements ActionListener {
                     break;
                     
                 case SCORE_UPDATE:
-                    if (message.getPayload() instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<Integer, Integer> scores = (Map<Integer, Integer>) message.getPayload();
-                        updateLeaderboard(scores);
+                    if (message.getPayload() instanceof Integer) {
+                        updateScore((Integer) message.getPayload());
                     }
                     break;
+
+                case LEADERBOARD:
+                    applyLeaderboard((LeaderboardUpdate) message.getPayload());
+                    break;
+
+                case RANK:
+                    applyRank((PlayerRank) message.getPayload());
+                    break;
                 
+                case SESSION:
+                    buzzChannel.setSessionToken((Long) message.getPayload());
+                    break;
+
                 case KILL_CLIENT:
                     killClient();
                     break;
@@ -343,23 +471,13 @@ public class ClientWindow implements ActionListener {
     }
 
     // Added by Eric - send the buzz to the server using UDP when polling
+    // Modified by Brooks - Sent over the persistent BuzzChannel, which retransmits until the server acknowledges
     private void sendBuzzMessage() {
-        try (DatagramSocket socket = new DatagramSocket()) {
-            UDPMessage message = new UDPMessage(
-                System.currentTimeMillis(), 
-                InetAddress.getLocalHost().getHostAddress()
-            );
-            
-            byte[] data = message.encode();
-            DatagramPacket packet = new DatagramPacket(
-                data, data.length, 
-                InetAddress.getByName(serverIP), 
-                UDPserverPort
-            );
-            
-            socket.send(packet);
-            System.out.println("Buzz message sent");
-        } catch (Exception e) {
+        try {
+            if (buzzChannel.buzz()) {
+                System.out.println("Buzz message sent");
+            }
+        } catch (IOException e) {
             JOptionPane.showMessageDialog(window, "Error sending buzz: " + e.getMessage());
         }
     }
@@ -450,8 +568,7 @@ public class ClientWindow implements ActionListener {
                     currentQuestion.getQuestionNumber(),
                     selectedAnswer
                 );
-                tcpOut.writeObject(answer);
-                tcpOut.flush();
+                sendTcpMessage(new TCPMessage(TCPMessage.MessageType.ANSWER, answer));
                 submit.setEnabled(false);
                 if (clock != null) clock.cancel();
             } catch (IOException ex) {
@@ -0,0 +1,455 @@
+package client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+
+import model.ClockProbe;
+import model.MessageCodec;
+import model.PlayerAnswer;
+import model.Question;
+import model.QuestionBank;
+import model.RevealKey;
+import model.SealedQuestion;
+import model.TCPMessage;
+import model.UDPMessage;
+
+// Added by Brooks - Headless player speaking the same TCP/UDP protocol as ClientWindow, for load testing
+// A bot answers clock probes, reveals prefetched questions on the server's deadline, buzzes after a configurable
+// delay, answers with a configurable accuracy and may drop its connection mid-game. It runs on a BotLoop and
+// reports what it measures to a shared BotStats.
+public class TriviaBot {
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final long BUZZ_RTO_MS = 100;
+    private static final int MAX_BUZZ_ATTEMPTS = 5;
+
+    // Added by Brooks - How a bot plays. Delays are in milliseconds; chances are probabilities from 0 to 1.
+    public static final class Behavior {
+        final long buzzDelayMs;     // Time from seeing a question to buzzing
+        final long buzzJitterMs;    // Uniform extra delay on top, so a room does not buzz in lockstep
+        final double accuracy;      // Chance of answering correctly once holding the ACK
+        final long answerDelayMs;   // Time from ACK to submitting the answer
+        final double dropChance;    // Chance, per question, of dropping the connection without a word
+        final int questions;        // Leave cleanly when this many questions have been shown; 0 plays to the end
+
+        public Behavior(long buzzDelayMs, long buzzJitterMs, double accuracy, long answerDelayMs,
+                double dropChance, int questions) {
+            this.buzzDelayMs = buzzDelayMs;
+            this.buzzJitterMs = buzzJitterMs;
+            this.accuracy = accuracy;
+            this.answerDelayMs = answerDelayMs;
+            this.dropChance = dropChance;
+            this.questions = questions;
+        }
+    }
+
+    private final int botId;
+    private final BotLoop loop;
+    private final InetSocketAddress tcpAddress;
+    private final InetSocketAddress udpAddress;
+    private final Behavior behavior;
+    private final QuestionBank answerKey; // Optional: the server's question file; without it every answer is a guess
+    private final BotStats stats;
+    private final SplittableRandom random;
+
+    private SocketChannel tcp;
+    private DatagramChannel udp;
+    private SelectionKey tcpKey;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ByteBuffer datagram = ByteBuffer.allocate(64);
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private volatile boolean closed; // Read by the harness to see when the run is over
+
+    private long connectStarted;
+    private boolean seated;
+    private long sessionToken;
+    private Long clockOffset; // Client minus server, from the server's probes
+    private SealedQuestion pending;
+    private boolean eligible;
+    private Question question;
+    private int questionsSeen;
+
+    // Current buzz; all times are ClockProbe micros
+    private long buzzSentAt;
+    private byte[] buzzPacket;
+    private int buzzAttempts;
+    private boolean buzzAcked;
+    private boolean verdictSeen;
+    private BotLoop.Timer buzzTimer;
+
+    public TriviaBot(int botId, BotLoop loop, InetSocketAddress tcpAddress, InetSocketAddress udpAddress,
+            Behavior behavior, QuestionBank answerKey, BotStats stats, long seed) {
+        this.botId = botId;
+        this.loop = loop;
+        this.tcpAddress = tcpAddress;
+        this.udpAddress = udpAddress;
+        this.behavior = behavior;
+        this.answerKey = answerKey;
+        this.stats = stats;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Added by Brooks - Starts a non-blocking connect; the join clock starts here. Loop thread only.
+    public void start() {
+        try {
+            connectStarted = ClockProbe.nowMicros();
+            udp = DatagramChannel.open();
+            udp.configureBlocking(false);
+            udp.connect(udpAddress);
+            udp.register(loop.selector(), SelectionKey.OP_READ, this);
+            tcp = SocketChannel.open();
+            tcp.configureBlocking(false);
+            tcp.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            tcpKey = tcp.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+            if (tcp.connect(tcpAddress)) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            stats.connectFailures.incrementAndGet();
+            close();
+        }
+    }
+
+    // Added by Brooks - Called by the loop for either of this bot's channels
+    void onReady(SelectionKey key) {
+        try {
+            if (key.channel() == udp) {
+                readDatagrams();
+                return;
+            }
+            if (key.isConnectable()) {
+                if (!tcp.finishConnect()) {
+                    return;
+                }
+                onConnected();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                readFrames();
+            }
+        } catch (IOException e) {
+            if (!seated) {
+                stats.connectFailures.incrementAndGet();
+            } else if (!closed) {
+                stats.errors.incrementAndGet();
+            }
+            close();
+        }
+    }
+
+    private void onConnected() {
+        stats.connected.incrementAndGet();
+        tcpKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void readFrames() throws IOException {
+        if (tcp.read(readBuffer) < 0) {
+            close(); // Server closed the connection
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= 4) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 2 || length > MessageCodec.MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (readBuffer.remaining() < 4 + length) {
+                if (4 + length > readBuffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                    return;
+                }
+                break;
+            }
+            int start = readBuffer.position() + 4;
+            TCPMessage message = MessageCodec.decode(readBuffer.array(), start, length);
+            readBuffer.position(start + length);
+            handle(message);
+            if (closed) {
+                return;
+            }
+        }
+        readBuffer.compact();
+    }
+
+    private void handle(TCPMessage message) throws IOException {
+        long now = ClockProbe.nowMicros();
+        switch (message.getType()) {
+            case SESSION:
+                sessionToken = (Long) message.getPayload();
+                break;
+
+            case CLOCK_PROBE:
+                ClockProbe probe = (ClockProbe) message.getPayload();
+                send(new TCPMessage(TCPMessage.MessageType.CLOCK_REPLY,
+                        new ClockProbe(probe.getOriginate(), now, ClockProbe.nowMicros())));
+                if (probe.getTransmit() >= 0) {
+                    clockOffset = probe.getReceive();
+                }
+                break;
+
+            case RANK:
+                if (!seated) {
+                    seated = true;
+                    stats.recordJoin(now - connectStarted);
+                }
+                break;
+
+            case ELIGIBILITY:
+                eligible = true;
+                break;
+
+            case QUESTION:
+                // The frame sent on connect only repeats the room's current question, which this bot cannot buzz on
+                if (message.getPayload() != null && eligible) {
+                    showQuestion((Question) message.getPayload());
+                }
+                break;
+
+            case PREFETCH:
+                pending = (SealedQuestion) message.getPayload();
+                stats.recordPrefetch(pending.getRevealAt(), now);
+                break;
+
+            case REVEAL_KEY:
+                RevealKey key = (RevealKey) message.getPayload();
+                if (pending == null || pending.getRound() != key.getRound()) {
+                    break;
+                }
+                SealedQuestion sealed = pending;
+                pending = null;
+                stats.recordRevealKey(sealed.getRevealAt(), now);
+                Question next = sealed.open(key.getKey());
+                long delayMillis = clockOffset == null ? 0
+                        : Math.max(0, (sealed.getRevealAt() + clockOffset - now) / 1000);
+                loop.schedule(() -> {
+                    if (!closed) {
+                        long revealed = ClockProbe.nowMicros();
+                        stats.recordReveal(sealed.getRevealAt(), revealed - (clockOffset == null ? 0 : clockOffset));
+                        eligible = true;
+                        showQuestion(next);
+                    }
+                }, delayMillis);
+                break;
+
+            case ACK:
+                stats.acks.incrementAndGet();
+                recordVerdict(now);
+                loop.schedule(this::answer, behavior.answerDelayMs);
+                break;
+
+            case NACK:
+                stats.nacks.incrementAndGet();
+                recordVerdict(now);
+                // Like ClientWindow disabling Poll: once someone holds the question there is nothing to buzz on
+                question = buzzPacket == null ? null : question;
+                break;
+
+            case CORRECT:
+                stats.correct.incrementAndGet();
+                break;
+
+            case WRONG:
+                stats.wrong.incrementAndGet();
+                break;
+
+            case TIMEOUT:
+                stats.timeouts.incrementAndGet();
+                break;
+
+            case GAME_OVER:
+            case KILL_CLIENT:
+                stats.gamesOver.incrementAndGet();
+                close();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    // Added by Brooks - New question: maybe leave or drop, otherwise buzz after the configured delay
+    private void showQuestion(Question shown) {
+        question = shown;
+        cancelBuzz();
+        questionsSeen++;
+        if (behavior.questions > 0 && questionsSeen > behavior.questions) {
+            stats.left.incrementAndGet();
+            close();
+            return;
+        }
+        if (random.nextDouble() < behavior.dropChance) {
+            stats.dropped.incrementAndGet();
+            close();
+            return;
+        }
+        long jitter = behavior.buzzJitterMs > 0 ? random.nextLong(behavior.buzzJitterMs) : 0;
+        Question buzzedOn = shown;
+        loop.schedule(() -> {
+            if (!closed && question == buzzedOn) {
+                buzz();
+            }
+        }, behavior.buzzDelayMs + jitter);
+    }
+
+    private void buzz() {
+        buzzSentAt = ClockProbe.nowMicros();
+        buzzPacket = new UDPMessage(sessionToken, buzzSentAt).encode();
+        buzzAttempts = 0;
+        buzzAcked = false;
+        verdictSeen = false;
+        stats.buzzes.incrementAndGet();
+        transmitBuzz();
+    }
+
+    // Fixed timeout rather than BuzzChannel's adaptive one: under load the interesting number is how often it fires
+    private void transmitBuzz() {
+        if (closed || buzzAcked || buzzPacket == null) {
+            return;
+        }
+        if (buzzAttempts >= MAX_BUZZ_ATTEMPTS) {
+            stats.unacknowledged.incrementAndGet();
+            return;
+        }
+        if (buzzAttempts > 0) {
+            stats.retransmits.incrementAndGet();
+        }
+        buzzAttempts++;
+        try {
+            udp.write(ByteBuffer.wrap(buzzPacket));
+        } catch (IOException e) {
+            // Port unreachable and the like; the retransmit timer covers it
+        }
+        buzzTimer = loop.schedule(this::transmitBuzz, BUZZ_RTO_MS);
+    }
+
+    private void cancelBuzz() {
+        if (buzzTimer != null) {
+            buzzTimer.cancel();
+            buzzTimer = null;
+        }
+        buzzPacket = null;
+    }
+
+    private void readDatagrams() {
+        while (true) {
+            datagram.clear();
+            try {
+                if (udp.receive(datagram) == null) {
+                    return;
+                }
+            } catch (IOException e) {
+                return;
+            }
+            long now = ClockProbe.nowMicros();
+            UDPMessage message = UDPMessage.decode(datagram.array(), 0, datagram.position());
+            if (message == null || message.getType() != UDPMessage.BUZZ_ACK || message.getSessionToken() != sessionToken
+                    || buzzPacket == null || message.getTimestamp() != buzzSentAt || buzzAcked) {
+                continue;
+            }
+            buzzAcked = true;
+            if (buzzTimer != null) {
+                buzzTimer.cancel();
+            }
+            if (buzzAttempts == 1) {
+                stats.recordBuzzAck(now - buzzSentAt); // Karn's rule, as in BuzzChannel
+            }
+        }
+    }
+
+    private void recordVerdict(long now) {
+        // Only the first ACK or NACK settles a buzz; later NACKs just announce the next player in the queue
+        if (buzzPacket != null && !verdictSeen) {
+            verdictSeen = true;
+            stats.recordVerdict(now - buzzSentAt);
+        }
+    }
+
+    private void answer() {
+        if (closed || question == null) {
+            return;
+        }
+        // The wire never carries the answer, so only a local copy of the question file can make a bot accurate
+        Question keyed = answerKey != null ? answerKey.getQuestion(question.getQuestionNumber()) : null;
+        char correct = keyed != null ? keyed.getCorrectAnswer() : ' ';
+        boolean known = correct >= 'A' && correct <= 'D';
+        char choice;
+        if (known && random.nextDouble() < behavior.accuracy) {
+            choice = correct;
+        } else {
+            // A deliberately wrong answer, or a plain guess when the answer is unknown
+            do {
+                choice = (char) ('A' + random.nextInt(4));
+            } while (known && choice == correct);
+        }
+        try {
+            send(new TCPMessage(TCPMessage.MessageType.ANSWER, new PlayerAnswer(question.getQuestionNumber(), choice)));
+        } catch (IOException e) {
+            stats.errors.incrementAndGet();
+            close();
+        }
+    }
+
+    private void send(TCPMessage message) throws IOException {
+        outbound.add(ByteBuffer.wrap(MessageCodec.encode(message)));
+        flush();
+    }
+
+    private void flush() throws IOException {
+        while (!outbound.isEmpty()) {
+            ByteBuffer head = outbound.peek();
+            tcp.write(head);
+            if (head.hasRemaining()) {
+                tcpKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            outbound.poll();
+        }
+        tcpKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    // Added by Brooks - Counts an unexpected failure of this bot and drops it
+    void fail() {
+        if (!closed) {
+            stats.errors.incrementAndGet();
+        }
+        close();
+    }
+
+    // Added by Brooks - Closes both channels; also used to simulate a player vanishing mid-game
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelBuzz();
+        try {
+            if (tcp != null) {
+                tcp.close();
+            }
+            if (udp != null) {
+                udp.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "bot " + botId;
+    }
+}
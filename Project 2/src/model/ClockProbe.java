@@ -0,0 +1,39 @@
+package model;
+
+import java.time.Instant;
+
+// Added by Brooks - NTP-style clock probe exchanged over TCP
+// The server sends originate (its clock at send). The client echoes it back together with its own clock at
+// receive and at reply. With the server's receive time that gives the four NTP timestamps, from which the
+// server estimates the client's clock offset and the round-trip delay. All times are wall-clock microseconds.
+// On the server's probe, receive and transmit instead carry its current estimate: the offset (client minus
+// server) and the round-trip delay it was measured at, or -1 as the delay before any sample.
+public class ClockProbe {
+    private final long originate; // Server clock when the probe was sent
+    private final long receive;   // Client clock when the probe arrived
+    private final long transmit;  // Client clock when the reply was sent
+
+    public ClockProbe(long originate, long receive, long transmit) {
+        this.originate = originate;
+        this.receive = receive;
+        this.transmit = transmit;
+    }
+
+    public long getOriginate() {
+        return originate;
+    }
+
+    public long getReceive() {
+        return receive;
+    }
+
+    public long getTransmit() {
+        return transmit;
+    }
+
+    // Added by Brooks - Microsecond wall clock used for probes and buzz timestamps on both ends
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1000;
+    }
+}
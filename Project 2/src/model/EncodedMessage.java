@@ -0,0 +1,38 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Added by Brooks - A TCPMessage encoded once into an immutable frame that can be written to many clients
+// Each writer gets its own read-only view, so the same bytes are shared without copying or re-encoding.
+public final class EncodedMessage {
+    private final TCPMessage.MessageType type;
+    private final byte[] frame;
+
+    private EncodedMessage(TCPMessage.MessageType type, byte[] frame) {
+        this.type = type;
+        this.frame = frame;
+    }
+
+    public static EncodedMessage of(TCPMessage message) throws IOException {
+        return new EncodedMessage(message.getType(), MessageCodec.encode(message));
+    }
+
+    public TCPMessage.MessageType getType() {
+        return type;
+    }
+
+    public int size() {
+        return frame.length;
+    }
+
+    // Added by Brooks - Independent position/limit per caller over the shared bytes
+    public ByteBuffer view() {
+        return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedMessage{" + type + ", " + frame.length + " bytes}";
+    }
+}
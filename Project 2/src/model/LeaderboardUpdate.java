@@ -0,0 +1,66 @@
+package model;
+
+import java.util.List;
+
+// Added by Brooks - Delta for the top of a room's leaderboard
+// Only the ranks whose occupant or score changed since the last update are listed; the client keeps the rest.
+// A newly joined client receives every rank of the current top as its first update. topSize is the length of the
+// top list after applying the changes, which also trims entries that fell off when players left.
+public class LeaderboardUpdate {
+    private final int totalPlayers;
+    private final int topSize;
+    private final List<Entry> changes;
+
+    public LeaderboardUpdate(int totalPlayers, int topSize, List<Entry> changes) {
+        this.totalPlayers = totalPlayers;
+        this.topSize = topSize;
+        this.changes = changes;
+    }
+
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    public List<Entry> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return changes.size() + " of top " + topSize + "/" + totalPlayers;
+    }
+
+    // Added by Brooks - One leaderboard row; rank is 1-based
+    public static class Entry {
+        private final int rank;
+        private final int playerId;
+        private final int score;
+
+        public Entry(int rank, int playerId, int score) {
+            this.rank = rank;
+            this.playerId = playerId;
+            this.score = score;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+
+        public int getPlayerId() {
+            return playerId;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        // Added by Brooks - Same player and score in the same slot; used to compute deltas
+        public boolean sameAs(Entry other) {
+            return other != null && rank == other.rank && playerId == other.playerId && score == other.score;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Added by Brooks - Binary framing for TCPMessage, replacing Java serialization on the TCP channel
+// Frame layout: [int length][byte version][byte type][payload], where length counts everything after itself.
+// Payloads are schema-specific per message type and use varints so small ids and scores stay small on the wire.
+public final class MessageCodec {
+    public static final int PROTOCOL_VERSION = 1;
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    private static final TCPMessage.MessageType[] TYPES = TCPMessage.MessageType.values();
+
+    // Added by Brooks - The answer slot of a QUESTION frame; the real answer stays on the server, which checks
+    // answers against its own QuestionBank
+    private static final char HIDDEN_ANSWER = ' ';
+
+    // Added by Brooks - One reusable encode buffer per thread so steady-state sends allocate nothing
+    private static final ThreadLocal<FrameBuffer> BUFFERS = ThreadLocal.withInitial(FrameBuffer::new);
+
+    private MessageCodec() {
+    }
+
+    // Added by Brooks - Encodes a message into the calling thread's pooled buffer and writes the frame
+    public static void write(TCPMessage message, OutputStream out) throws IOException {
+        FrameBuffer buffer = encodeFrame(message);
+        out.write(buffer.array(), 0, buffer.size());
+    }
+
+    // Added by Brooks - Encodes a message into a standalone byte array holding one complete frame
+    public static byte[] encode(TCPMessage message) throws IOException {
+        return encodeFrame(message).toByteArray();
+    }
+
+    private static FrameBuffer encodeFrame(TCPMessage message) throws IOException {
+        FrameBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        buffer.writeInt(0); // length placeholder, patched below
+        buffer.write(PROTOCOL_VERSION);
+        buffer.write(message.getType().ordinal());
+        writePayload(message, buffer);
+
+        int length = buffer.size() - 4;
+        if (length > MAX_FRAME_SIZE) {
+            throw new ProtocolException("Frame too large: " + length + " bytes");
+        }
+        buffer.patchInt(0, length);
+        return buffer;
+    }
+
+    private static void writePayload(TCPMessage message, FrameBuffer out) throws IOException {
+        Object payload = message.getPayload();
+        switch (message.getType()) {
+            case QUESTION:
+                // The server may send a null question before the first round starts
+                if (payload == null) {
+                    out.write(0);
+                    return;
+                }
+                Question question = (Question) payload;
+                out.write(1);
+                writeVarInt(out, question.getQuestionNumber());
+                writeString(out, question.getQuestionText());
+                String[] options = question.getOptions();
+                writeVarInt(out, options.length);
+                for (String option : options) {
+                    writeString(out, option);
+                }
+                out.write(HIDDEN_ANSWER);
+                return;
+
+            case SCORE_UPDATE:
+                // The player's own score; the scoreboard travels as LEADERBOARD deltas
+                writeVarInt(out, zigZag(payload != null ? (Integer) payload : 0));
+                return;
+
+            case SESSION:
+                out.writeLong((Long) payload);
+                return;
+
+            case CLOCK_PROBE:
+            case CLOCK_REPLY:
+                ClockProbe probe = (ClockProbe) payload;
+                out.writeLong(probe.getOriginate());
+                out.writeLong(probe.getReceive());
+                out.writeLong(probe.getTransmit());
+                return;
+
+            case LEADERBOARD:
+                LeaderboardUpdate update = (LeaderboardUpdate) payload;
+                writeVarInt(out, update.getTotalPlayers());
+                writeVarInt(out, update.getTopSize());
+                writeVarInt(out, update.getChanges().size());
+                for (LeaderboardUpdate.Entry entry : update.getChanges()) {
+                    writeVarInt(out, entry.getRank());
+                    writeVarInt(out, entry.getPlayerId());
+                    writeVarInt(out, zigZag(entry.getScore()));
+                }
+                return;
+
+            case RANK:
+                PlayerRank rank = (PlayerRank) payload;
+                writeVarInt(out, rank.getRank());
+                writeVarInt(out, zigZag(rank.getScore()));
+                writeVarInt(out, rank.getTotalPlayers());
+                return;
+
+            case PREFETCH:
+                SealedQuestion sealed = (SealedQuestion) payload;
+                writeVarInt(out, sealed.getRound());
+                out.writeLong(sealed.getRevealAt());
+                writeBytes(out, sealed.getNonce());
+                writeBytes(out, sealed.getCiphertext());
+                return;
+
+            case REVEAL_KEY:
+                RevealKey key = (RevealKey) payload;
+                writeVarInt(out, key.getRound());
+                writeBytes(out, key.getKey());
+                return;
+
+            case ANSWER:
+                PlayerAnswer answer = (PlayerAnswer) payload;
+                writeVarInt(out, answer.getQuestionId());
+                out.write(answer.getSelectedOption());
+                return;
+
+            default:
+                if (payload != null) {
+                    throw new ProtocolException("Unexpected payload for " + message.getType());
+                }
+        }
+    }
+
+    // Added by Brooks - Reads exactly one frame; throws EOFException when the peer closes cleanly
+    public static TCPMessage read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 2 || length > MAX_FRAME_SIZE) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return decode(frame, 0, length);
+    }
+
+    // Added by Brooks - Decodes the body of a frame (everything after the length prefix)
+    public static TCPMessage decode(byte[] frame, int offset, int length) throws IOException {
+        Reader in = new Reader(frame, offset, offset + length);
+        int version = in.readByte();
+        if (version != PROTOCOL_VERSION) {
+            throw new ProtocolException("Unsupported protocol version " + version);
+        }
+        int typeIndex = in.readByte();
+        if (typeIndex < 0 || typeIndex >= TYPES.length) {
+            throw new ProtocolException("Unknown message type " + typeIndex);
+        }
+        TCPMessage.MessageType type = TYPES[typeIndex];
+
+        switch (type) {
+            case QUESTION: {
+                if (in.readByte() == 0) {
+                    return new TCPMessage(type, null);
+                }
+                int number = in.readVarInt();
+                String text = in.readString();
+                String[] options = new String[in.readCount(1)];
+                for (int i = 0; i < options.length; i++) {
+                    options[i] = in.readString();
+                }
+                in.readByte(); // Answer slot, always HIDDEN_ANSWER
+                return new TCPMessage(type, new Question(text, options, HIDDEN_ANSWER, number));
+            }
+
+            case SCORE_UPDATE:
+                return new TCPMessage(type, unZigZag(in.readVarInt()));
+
+            case SESSION:
+                return new TCPMessage(type, in.readLong());
+
+            case CLOCK_PROBE:
+            case CLOCK_REPLY:
+                return new TCPMessage(type, new ClockProbe(in.readLong(), in.readLong(), in.readLong()));
+
+            case LEADERBOARD: {
+                int totalPlayers = in.readVarInt();
+                int topSize = in.readVarInt();
+                int count = in.readCount(3);
+                if (count > topSize) {
+                    throw new ProtocolException("Invalid leaderboard change count " + count);
+                }
+                List<LeaderboardUpdate.Entry> changes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    changes.add(new LeaderboardUpdate.Entry(in.readVarInt(), in.readVarInt(), unZigZag(in.readVarInt())));
+                }
+                return new TCPMessage(type, new LeaderboardUpdate(totalPlayers, topSize, changes));
+            }
+
+            case RANK:
+                return new TCPMessage(type, new PlayerRank(in.readVarInt(), unZigZag(in.readVarInt()), in.readVarInt()));
+
+            case PREFETCH:
+                return new TCPMessage(type, new SealedQuestion(in.readVarInt(), in.readLong(), in.readBytes(), in.readBytes()));
+
+            case REVEAL_KEY:
+                return new TCPMessage(type, new RevealKey(in.readVarInt(), in.readBytes()));
+
+            case ANSWER:
+                return new TCPMessage(type, new PlayerAnswer(in.readVarInt(), (char) in.readByte()));
+
+            default:
+                return new TCPMessage(type);
+        }
+    }
+
+    private static void writeString(FrameBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeBytes(FrameBuffer out, byte[] bytes) {
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarInt(FrameBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Added by Brooks - Growable byte buffer that exposes its backing array and supports patching the length prefix
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+        FrameBuffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void patchInt(int position, int value) {
+            buf[position] = (byte) (value >>> 24);
+            buf[position + 1] = (byte) (value >>> 16);
+            buf[position + 2] = (byte) (value >>> 8);
+            buf[position + 3] = (byte) value;
+        }
+    }
+
+    // Added by Brooks - Bounds-checked cursor over a received frame
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+        private final int limit;
+
+        Reader(byte[] data, int position, int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        int readByte() throws EOFException {
+            if (position >= limit) {
+                throw new EOFException("Truncated frame");
+            }
+            return data[position++];
+        }
+
+        long readLong() throws EOFException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new ProtocolException("Malformed varint");
+        }
+
+        // Added by Brooks - Reads an element count and checks it against the bytes left, given the smallest
+        // encoding of one element, so a forged count cannot make the decoder allocate more than the frame holds
+        int readCount(int minBytesPerElement) throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > (limit - position) / minBytesPerElement) {
+                throw new ProtocolException("Invalid element count " + count);
+            }
+            return count;
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > limit - position) {
+                throw new ProtocolException("Invalid string length " + length);
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > limit - position) {
+                throw new ProtocolException("Invalid byte array length " + length);
+            }
+            byte[] value = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package model;
+
+// Added by Brooks - A player's own standing, sent only to that player when it changes
+public class PlayerRank {
+    private final int rank;
+    private final int score;
+    private final int totalPlayers;
+
+    public PlayerRank(int rank, int score, int totalPlayers) {
+        this.rank = rank;
+        this.score = score;
+        this.totalPlayers = totalPlayers;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + rank + "/" + totalPlayers + " (" + score + ")";
+    }
+}
@@ -1,78 +1,95 @@
 package model;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.SplittableRandom;
 
 // Added by Brooks - Data storage of all of the questions for the Trivia game
+// Modified by Brooks - A cursor over the shared memory-mapped QuestionStore instead of an in-memory list. Each
+//                      cursor draws questions in its own random order without repeats, optionally filtered by
+//                      category or difficulty; ids are stable across cursors, so answers validate against any of them.
 public class QuestionBank {
-    private List<Question> questions;
-    private int currentQuestionIndex;
-    
+    private static final SplittableRandom SEEDS = new SplittableRandom();
+
+    private final QuestionStore store;
+    private final QuestionStore.Sampler cursor;
+    private int questionsDrawn;
+
     public QuestionBank() {
-        questions = new ArrayList<>();
-        currentQuestionIndex = 0;
-        loadQuestionsFromFile();
+        store = loadQuestionsFromFile();
+        cursor = store.sampler(null, 0, nextSeed());
+    }
+
+    // Added by Brooks - New cursor over an already loaded bank, so each game room reads the file zero times
+    public QuestionBank(QuestionBank source) {
+        this(source, null, 0);
+    }
+
+    // Added by Brooks - New cursor limited to one category and/or difficulty (null / 0 for any)
+    public QuestionBank(QuestionBank source, String category, int difficulty) {
+        store = source.store;
+        cursor = store.sampler(category, difficulty, nextSeed());
+    }
+
+    private static synchronized long nextSeed() {
+        return SEEDS.nextLong();
     }
-    
+
     // Added by Brooks - Load questions from config file
     // Modified by Eric - start index at 1 to match the question number, added the question number as well for client use
-    private void loadQuestionsFromFile() {
-        try (BufferedReader reader = new BufferedReader(
-            new FileReader(Paths.get("config", "questions.txt").toFile()))) {
-            
-            String line;
-            int number = 1; // Start from 1
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 6) {
-                    questions.add(new Question(
-                        parts[0], 
-                        Arrays.copyOfRange(parts, 1, 5),
-                        parts[5].charAt(0),
-                        number // Assigns the correct question number
-                    ));
-                }
-                number++;
-            }
+    // Modified by Brooks - Opens (compiling if needed) config/questions.bin next to config/questions.txt
+    private static QuestionStore loadQuestionsFromFile() {
+        try {
+            return QuestionStore.open(Paths.get("config", "questions.txt"), Paths.get("config", "questions.bin"));
         } catch (IOException e) {
             System.err.println("Error loading questions: " + e.getMessage());
-            loadDefaultQuestions();
+            return loadDefaultQuestions();
         }
     }
-    
+
     // Added by Brooks - Fallback if file loading fails
-    private void loadDefaultQuestions() {
-        questions.add(new Question(
-            "Who holds the single-game points record?",
-            new String[]{"Michael Jordan", "Kobe Bryant", "Wilt Chamberlain", "LeBron James"},
-            'C',
-            1
-        ));
+    private static QuestionStore loadDefaultQuestions() {
+        try {
+            Path text = Files.createTempFile("questions", ".txt");
+            Path compiled = Files.createTempFile("questions", ".bin");
+            text.toFile().deleteOnExit();
+            compiled.toFile().deleteOnExit();
+            Files.write(text, "Who holds the single-game points record?|Michael Jordan|Kobe Bryant|Wilt Chamberlain|LeBron James|C\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            QuestionStore.build(text, compiled);
+            return QuestionStore.open(text, compiled);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create fallback question store: " + e.getMessage(), e);
+        }
     }
-    
+
     // Added by Brooks - Getters for question fields
     public Question getNextQuestion() {
-        return hasMoreQuestions() ? questions.get(currentQuestionIndex++) : null;
+        Question question = cursor.next();
+        if (question != null) {
+            questionsDrawn++;
+        }
+        return question;
     }
-    
+
     public boolean hasMoreQuestions() {
-        return currentQuestionIndex < questions.size();
+        return cursor.hasNext();
     }
-    
+
     public int getCurrentQuestionNumber() {
-        return currentQuestionIndex + 1;
+        return questionsDrawn + 1;
     }
 
     // Modified by Eric - Makes sure to align the question number and question ID
     public Question getQuestion(int questionId) {
-        if (questionId >= 1 && questionId <= questions.size()) {
-            return questions.get(questionId - 1);
-        }
-        return null;
+        return store.getQuestion(questionId);
+    }
+
+    // Added by Brooks - Size of the whole bank, regardless of this cursor's filter
+    public int size() {
+        return store.size();
     }
 }
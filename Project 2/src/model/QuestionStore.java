@@ -0,0 +1,398 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Added by Brooks - Read-only question store backed by a memory-mapped, offset-indexed binary file
+// The file is compiled from config/questions.txt (one question per line: text|A|B|C|D|answer[|category[|difficulty]])
+// and rebuilt automatically whenever the text is newer. Opening it reads only the header and category table;
+// questions are decoded from the mapping when asked for, so startup time and heap stay flat no matter how many
+// questions the bank holds, and the OS pages in only what is actually played.
+//
+// Layout, big-endian:
+//   header    int magic, int version, int count, int categoryCount, int indexOffset
+//   categories categoryCount x (short length, UTF-8 bytes)
+//   index     count x (int recordOffset, short category, byte difficulty, byte reserved)   8 bytes each
+//   records   (short textLength, text, byte optionCount, optionCount x (short length, option), byte answer)
+// Question ids are 1-based positions in the index.
+public class QuestionStore implements Closeable {
+    private static final int MAGIC = 0x54515331; // "TQS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final int MAX_DIFFICULTY = 5;
+    public static final String DEFAULT_CATEGORY = "General";
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final int count;
+    private final int indexOffset;
+    private final List<String> categories;
+
+    private QuestionStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Question store larger than 2 GB is not supported");
+        }
+        this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a question store, or an unsupported version");
+        }
+        this.count = data.getInt(8);
+        int categoryCount = data.getInt(12);
+        this.indexOffset = data.getInt(16);
+        // Modified by Brooks - Every header field is checked against the mapping before it is trusted, so a truncated
+        //                      or corrupt store is reported (and rebuilt by open) instead of failing mid-game
+        if (count < 0 || categoryCount < 0 || categoryCount > Short.MAX_VALUE) {
+            throw new IOException("Corrupt question store header (" + count + " questions, " + categoryCount
+                    + " categories)");
+        }
+        List<String> names = new ArrayList<>(categoryCount);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < categoryCount; i++) {
+            if (position + 2 > data.limit()
+                    || position + 2 + (data.getShort(position) & 0xFFFF) > data.limit()) {
+                throw new IOException("Corrupt question store: category table runs past the end of the file");
+            }
+            int length = data.getShort(position) & 0xFFFF;
+            names.add(readString(position + 2, length));
+            position += 2 + length;
+        }
+        if (indexOffset != position || indexOffset + (long) count * INDEX_ENTRY_SIZE > data.limit()) {
+            throw new IOException("Corrupt question store: index at " + indexOffset + " does not fit "
+                    + count + " questions in " + data.limit() + " bytes");
+        }
+        this.categories = Collections.unmodifiableList(names);
+    }
+
+    // Added by Brooks - Opens the compiled store, compiling it first if it is missing or older than the text file
+    // Modified by Brooks - A store that fails validation is compiled again from the text file when there is one
+    public static QuestionStore open(Path text, Path compiled) throws IOException {
+        if (Files.exists(text) && (!Files.exists(compiled)
+                || Files.getLastModifiedTime(compiled).compareTo(Files.getLastModifiedTime(text)) < 0)) {
+            build(text, compiled);
+        }
+        try {
+            return load(compiled);
+        } catch (IOException e) {
+            if (!Files.exists(text) || !Files.exists(compiled)) {
+                throw e;
+            }
+            System.err.println("Rebuilding " + compiled + ": " + e.getMessage());
+            build(text, compiled);
+            return load(compiled);
+        }
+    }
+
+    private static QuestionStore load(Path compiled) throws IOException {
+        FileChannel channel = FileChannel.open(compiled);
+        try {
+            return new QuestionStore(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    // Added by Brooks - Decodes one question straight from the mapping; null for an unknown id
+    // Modified by Brooks - Also null for a record that runs outside the records area. Records are checked as they
+    //                      are read rather than at open, so opening stays independent of the bank's size.
+    public Question getQuestion(int id) {
+        if (id < 1 || id > count) {
+            return null;
+        }
+        int position = data.getInt(entry(id));
+        if (position < recordsOffset() || !fits(position, 2)) {
+            return corrupt(id);
+        }
+        int textLength = data.getShort(position) & 0xFFFF;
+        if (!fits(position + 2, textLength + 1)) {
+            return corrupt(id);
+        }
+        String text = readString(position + 2, textLength);
+        position += 2 + textLength;
+        String[] options = new String[data.get(position++) & 0xFF];
+        for (int i = 0; i < options.length; i++) {
+            if (!fits(position, 2) || !fits(position + 2, data.getShort(position) & 0xFFFF)) {
+                return corrupt(id);
+            }
+            int length = data.getShort(position) & 0xFFFF;
+            options[i] = readString(position + 2, length);
+            position += 2 + length;
+        }
+        if (!fits(position, 1)) {
+            return corrupt(id);
+        }
+        char answer = (char) data.get(position);
+        return new Question(text, options, answer, id);
+    }
+
+    private long recordsOffset() {
+        return indexOffset + (long) count * INDEX_ENTRY_SIZE;
+    }
+
+    private boolean fits(int position, int length) {
+        return position >= 0 && (long) position + length <= data.limit();
+    }
+
+    private Question corrupt(int id) {
+        System.err.println("Skipping corrupt question record " + id + "; delete the compiled store to rebuild it");
+        return null;
+    }
+
+    public String getCategory(int id) {
+        int category = data.getShort(entry(id) + 4);
+        return category >= 0 && category < categories.size() ? categories.get(category) : DEFAULT_CATEGORY;
+    }
+
+    // Added by Brooks - 1 (easy) to 5 (hard), or 0 when the source line gave none
+    public int getDifficulty(int id) {
+        return data.get(entry(id) + 6);
+    }
+
+    private int entry(int id) {
+        return indexOffset + (id - 1) * INDEX_ENTRY_SIZE;
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        data.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Added by Brooks - Random order without repetition over the questions matching the filter.
+    // category null and difficulty 0 mean "any".
+    public Sampler sampler(String category, int difficulty, long seed) {
+        int categoryId = category == null ? -1 : categories.indexOf(category);
+        if (category != null && categoryId < 0) {
+            return new Sampler(this, 0, -2, difficulty, seed); // Unknown category: nothing matches
+        }
+        return new Sampler(this, count, categoryId, difficulty, seed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Added by Brooks - Walks a keyed pseudo-random permutation of [0, count) and skips ids that fail the filter.
+    // The permutation is a small Feistel network with cycle walking, so a sampler holds two numbers of state
+    // instead of a shuffled copy of millions of ids; filtering reads only the 8-byte index entries.
+    public static class Sampler {
+        private final QuestionStore store;
+        private final int count;
+        private final int categoryId;
+        private final int difficulty;
+        private final int halfBits;
+        private final int halfMask;
+        private final int[] keys = new int[4];
+        private int position;
+        private Question lookahead; // Decoded ahead, so a corrupt record is skipped rather than handed out as null
+
+        Sampler(QuestionStore store, int count, int categoryId, int difficulty, long seed) {
+            this.store = store;
+            this.count = count;
+            this.categoryId = categoryId;
+            this.difficulty = difficulty;
+            int bits = 2;
+            while (bits < 32 && (1L << bits) < count) {
+                bits += 2;
+            }
+            this.halfBits = bits / 2;
+            this.halfMask = (1 << halfBits) - 1;
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextInt();
+            }
+        }
+
+        public boolean hasNext() {
+            while (lookahead == null) {
+                int id = advance();
+                if (id < 0) {
+                    return false;
+                }
+                lookahead = store.getQuestion(id);
+            }
+            return true;
+        }
+
+        // Added by Brooks - Next question, or null when every matching question has been drawn
+        public Question next() {
+            if (!hasNext()) {
+                return null;
+            }
+            Question question = lookahead;
+            lookahead = null;
+            return question;
+        }
+
+        private int advance() {
+            while (position < count) {
+                int id = permute(position++) + 1;
+                if ((categoryId < 0 || store.data.getShort(store.entry(id) + 4) == categoryId)
+                        && (difficulty == 0 || store.getDifficulty(id) == difficulty)) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+
+        // Cycle walking: re-encrypt until the value falls inside [0, count); terminates since the network is a
+        // bijection on the enclosing power-of-four domain
+        private int permute(int value) {
+            int result = value;
+            do {
+                result = feistel(result);
+            } while (Integer.compareUnsigned(result, count) >= 0);
+            return result;
+        }
+
+        private int feistel(int value) {
+            int left = value >>> halfBits;
+            int right = value & halfMask;
+            for (int key : keys) {
+                int mixed = (right * 0x9E3779B1 ^ key) * 0x85EBCA6B;
+                int next = left ^ ((mixed ^ (mixed >>> 15)) & halfMask);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+    }
+
+    // Added by Brooks - Compiles the text bank. Malformed lines are reported and skipped without using up an id,
+    // so question ids are exactly the positions of the valid questions. Written to a temporary file first and
+    // moved into place, so a running server never maps a half-written store.
+    public static int build(Path text, Path compiled) throws IOException {
+        Map<String, Integer> categoryIds = new LinkedHashMap<>();
+        List<int[]> index = new ArrayList<>(); // {recordOffset, category, difficulty}
+        Path records = Files.createTempFile(compiled.toAbsolutePath().getParent(), "questions", ".records");
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(text, StandardCharsets.UTF_8);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(records)))) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    String[] parts = line.split("\\|");
+                    if (parts.length < 6 || parts.length > 8 || parts[5].trim().length() != 1) {
+                        System.err.println("Skipping malformed question on line " + lineNumber + " of " + text);
+                        continue;
+                    }
+                    String category = parts.length > 6 && !parts[6].isBlank() ? parts[6].trim() : DEFAULT_CATEGORY;
+                    int difficulty;
+                    try {
+                        difficulty = parts.length > 7 ? Integer.parseInt(parts[7].trim()) : 0;
+                    } catch (NumberFormatException e) {
+                        System.err.println("Skipping question with bad difficulty on line " + lineNumber + " of " + text);
+                        continue;
+                    }
+                    if (difficulty < 0 || difficulty > MAX_DIFFICULTY) {
+                        System.err.println("Skipping question with difficulty outside 1-" + MAX_DIFFICULTY + " on line "
+                                + lineNumber + " of " + text);
+                        continue;
+                    }
+                    if (categoryIds.size() == Short.MAX_VALUE && !categoryIds.containsKey(category)) {
+                        throw new IOException("Too many categories in " + text);
+                    }
+                    int categoryId = categoryIds.computeIfAbsent(category, c -> categoryIds.size());
+                    index.add(new int[] { out.size(), categoryId, difficulty });
+                    writeString(out, parts[0]);
+                    out.writeByte(4);
+                    for (int i = 1; i <= 4; i++) {
+                        writeString(out, parts[i]);
+                    }
+                    out.writeByte(parts[5].trim().charAt(0));
+                }
+            }
+
+            int categoryBytes = 0;
+            for (String category : categoryIds.keySet()) {
+                categoryBytes += 2 + category.getBytes(StandardCharsets.UTF_8).length;
+            }
+            int indexOffset = HEADER_SIZE + categoryBytes;
+            long recordBase = indexOffset + (long) index.size() * INDEX_ENTRY_SIZE;
+            if (recordBase + Files.size(records) > Integer.MAX_VALUE) {
+                throw new IOException("Question bank too large for one store (2 GB limit)");
+            }
+
+            Path temporary = Files.createTempFile(compiled.toAbsolutePath().getParent(), "questions", ".tmp");
+            try {
+                writeStore(temporary, index, categoryIds, indexOffset, recordBase, records);
+                Files.move(temporary, compiled, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary); // Do not leave a partial store behind in config/
+                throw e;
+            }
+            System.out.println("Compiled " + index.size() + " questions into " + compiled);
+            return index.size();
+        } finally {
+            Files.deleteIfExists(records);
+        }
+    }
+
+    private static void writeStore(Path temporary, List<int[]> index, Map<String, Integer> categoryIds,
+            int indexOffset, long recordBase, Path records) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(index.size());
+            out.writeInt(categoryIds.size());
+            out.writeInt(indexOffset);
+            for (String category : categoryIds.keySet()) {
+                writeString(out, category);
+            }
+            for (int[] entry : index) {
+                out.writeInt((int) (recordBase + entry[0]));
+                out.writeShort(entry[1]);
+                out.writeByte(entry[2]);
+                out.writeByte(0);
+            }
+            Files.copy(records, out);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Question field longer than 65535 bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    // Added by Brooks - Offline compile: java model.QuestionStore <questions.txt> <questions.bin>
+    public static void main(String[] args) throws IOException {
+        Path text = Paths.get(args.length > 0 ? args[0] : "config/questions.txt");
+        Path compiled = Paths.get(args.length > 1 ? args[1] : "config/questions.bin");
+        build(text, compiled);
+    }
+}
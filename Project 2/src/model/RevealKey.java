@@ -0,0 +1,25 @@
+package model;
+
+// Added by Brooks - Key that opens the SealedQuestion of one round
+public class RevealKey {
+    private final int round;
+    private final byte[] key;
+
+    public RevealKey(int round, byte[] key) {
+        this.round = round;
+        this.key = key;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "round " + round;
+    }
+}
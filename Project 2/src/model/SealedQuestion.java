@@ -0,0 +1,96 @@
+package model;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Added by Brooks - The next question, pushed to clients ahead of time but unreadable until its reveal
+// The question is AES-GCM encrypted under a fresh per-round key. The ciphertext travels during the intermission,
+// when the connection is idle; only the 16-byte RevealKey is sent just before revealAt, so no client can read the
+// question early and the large frame is off the round boundary. revealAt is in server-clock microseconds;
+// clients map it onto their own clock with the offset the server reports in each clock probe.
+// Like every QUESTION frame, the sealed copy carries no correct answer.
+public class SealedQuestion {
+    private static final int KEY_BYTES = 16;
+    private static final int NONCE_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int round;
+    private final long revealAt;
+    private final byte[] nonce;
+    private final byte[] ciphertext;
+
+    public SealedQuestion(int round, long revealAt, byte[] nonce, byte[] ciphertext) {
+        this.round = round;
+        this.revealAt = revealAt;
+        this.nonce = nonce;
+        this.ciphertext = ciphertext;
+    }
+
+    public static byte[] newKey() {
+        byte[] key = new byte[KEY_BYTES];
+        RANDOM.nextBytes(key);
+        return key;
+    }
+
+    // Added by Brooks - Encrypts the question's QUESTION frame; the round number is bound in as associated data
+    // so a key cannot open another round's question
+    public static SealedQuestion seal(int round, long revealAt, Question question, byte[] key) throws IOException {
+        byte[] plain = MessageCodec.encode(new TCPMessage(TCPMessage.MessageType.QUESTION, question));
+        byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(nonce);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(roundBytes(round));
+            return new SealedQuestion(round, revealAt, nonce, cipher.doFinal(plain));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot seal question: " + e.getMessage(), e);
+        }
+    }
+
+    // Added by Brooks - Decrypts with the round's key; fails if the key or ciphertext is wrong
+    public Question open(byte[] key) throws IOException {
+        byte[] plain;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(roundBytes(round));
+            plain = cipher.doFinal(ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new ProtocolException("Cannot open sealed question for round " + round);
+        }
+        return (Question) MessageCodec.decode(plain, 4, plain.length - 4).getPayload();
+    }
+
+    private static byte[] roundBytes(int round) {
+        return new byte[] { (byte) (round >>> 24), (byte) (round >>> 16), (byte) (round >>> 8), (byte) round };
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public long getRevealAt() {
+        return revealAt;
+    }
+
+    public byte[] getNonce() {
+        return nonce;
+    }
+
+    public byte[] getCiphertext() {
+        return ciphertext;
+    }
+
+    @Override
+    public String toString() {
+        return "round " + round + ", " + ciphertext.length + " sealed bytes";
+    }
+}
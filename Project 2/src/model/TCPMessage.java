@@ -18,7 +18,15 @@ public class TCPMessage implements Serializable {
         SCORE_UPDATE, // Broadcast updated scores
         GAME_OVER,    // Signals end of game
         KILL_CLIENT,  // Kills the client
-        ELIGIBILITY   // Allow the client to poll
+        ELIGIBILITY,  // Allow the client to poll
+        ANSWER,       // Added by Brooks - Client submits a PlayerAnswer
+        SESSION,      // Added by Brooks - Server issues the client's UDP session token (Long) at connect
+        CLOCK_PROBE,  // Added by Brooks - Server asks for the client's clock (ClockProbe)
+        CLOCK_REPLY,  // Added by Brooks - Client echoes the probe with its receive and transmit times
+        LEADERBOARD,  // Added by Brooks - Changed rows of the room's top list (LeaderboardUpdate)
+        RANK,         // Added by Brooks - The receiving player's own rank and score (PlayerRank)
+        PREFETCH,     // Added by Brooks - Next question, encrypted, with its server-clock reveal time (SealedQuestion)
+        REVEAL_KEY    // Added by Brooks - Key that opens the prefetched question (RevealKey)
     }
     
     private final MessageType type;  // Added by Brooks - The message type
@@ -1,53 +1,72 @@
 package model;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-
-public class UDPMessage implements Serializable {
-    
+import java.nio.ByteBuffer;
+
+// Modified by Brooks - Compact binary buzz packet replacing the serialized object
+// Layout: [byte version][byte type][long sessionToken][long timestamp], 18 bytes in total.
+// The session token is issued to the client over TCP at connect and identifies the sender, so players that
+// share an IP address (same host, same NAT) are told apart. The server answers every BUZZ with a BUZZ_ACK of the
+// same layout echoing token and timestamp, so the client knows when to stop retransmitting.
+public class UDPMessage {
+    public static final int VERSION = 1;
+    public static final byte BUZZ = 1;
+    public static final byte BUZZ_ACK = 2;
+    public static final int SIZE = 18;
+
     // Added by Eric - Data Fields of timestamp and source ip
-    private static final long serialVersionUID = 1L;
-    private long timestamp;
-    private String ip;
+    // Modified by Brooks - The session token replaces the self-reported IP; timestamp is the client's
+    //                      ClockProbe.nowMicros() at send
+    private final byte type;
+    private final long sessionToken;
+    private final long timestamp;
 
     // Added by Eric - UDP Message Protocol Class
-    public UDPMessage(long timestamp, String ip) {
+    public UDPMessage(long sessionToken, long timestamp) {
+        this(BUZZ, sessionToken, timestamp);
+    }
+
+    private UDPMessage(byte type, long sessionToken, long timestamp) {
+        this.type = type;
+        this.sessionToken = sessionToken;
         this.timestamp = timestamp;
-        this.ip = ip;
     }
 
-    // Added by Eric - Getter for the timestamp and the client IP
+    // Added by Brooks - Acknowledgement the server returns for a buzz
+    public static UDPMessage ack(UDPMessage buzz) {
+        return new UDPMessage(BUZZ_ACK, buzz.sessionToken, buzz.timestamp);
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    // Added by Eric - Getter for the timestamp and the session token
     public long getTimestamp() {
         return timestamp;
     }
 
-    public String getClientIP() {
-        return ip;
+    public long getSessionToken() {
+        return sessionToken;
     }
 
-    // Added by Eric - Used to decode the UDP message from byte array to object using serilization
-    public static UDPMessage decode(byte[] data) {
-        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
-            return (UDPMessage) ois.readObject();
-        } catch (Exception e) {
-            System.err.println("Error decoding message: " + e.getMessage());
+    // Added by Eric - Used to decode the UDP message from byte array to object
+    // Modified by Brooks - Reads the binary layout in place; returns null for anything malformed so the caller can
+    // drop it without logging every bad datagram
+    public static UDPMessage decode(byte[] data, int offset, int length) {
+        if (length != SIZE || data[offset] != VERSION || (data[offset + 1] != BUZZ && data[offset + 1] != BUZZ_ACK)) {
             return null;
         }
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset + 2, SIZE - 2);
+        return new UDPMessage(data[offset + 1], buffer.getLong(), buffer.getLong());
     }
 
-    // Added by Eric - Used to encode the UDP message to a byte array using serialization
+    // Added by Eric - Used to encode the UDP message to a byte array
     public byte[] encode() {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-            objectOutputStream.writeObject(this);
-            return byteArrayOutputStream.toByteArray();
-        } catch (IOException e) {
-            System.err.println("Error encoding message: " + e.getMessage());
-            return new byte[0];
-        }
+        return ByteBuffer.allocate(SIZE)
+                .put((byte) VERSION)
+                .put(type)
+                .putLong(sessionToken)
+                .putLong(timestamp)
+                .array();
     }
 }
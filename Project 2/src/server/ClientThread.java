@@ -1,12 +1,20 @@
 package server;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+import model.ClockProbe;
+import model.EncodedMessage;
+import model.MessageCodec;
 import model.PlayerAnswer;
 import model.Question;
 import model.TCPMessage;
@@ -17,69 +25,320 @@ import model.UDPMessage;
 // TCP
 // Modified by Brooks - Enhanced client thread handler with full TCP communication
 // Handles all incoming and outgoing messages for a single client connection
-public class ClientThread implements Runnable {
+// Modified by Brooks - Now a non-blocking connection driven by a ConnectionEngine reactor instead of owning a
+//                      thread; the class name is kept since the rest of the server refers to it
+public class ClientThread {
+    private static final int INITIAL_READ_BUFFER = 512;
+    // Added by Brooks - Outbound queue bounds; a client this far behind is disconnected rather than buffered forever
+    private static final int MAX_QUEUED_FRAMES = 1024;
+    private static final int MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+    private static final long WRITE_STALL_TIMEOUT_MS = 15000;
+    // Added by Brooks - Clock probes: a short burst at connect, then one refresh per interval
+    private static final int CLOCK_PROBE_BURST = 4;
+    private static final long CLOCK_PROBE_INTERVAL_MS = 30000;
+    private static final int MAX_OUTSTANDING_PROBES = 8;
+    // Added by Brooks - Metrics shared by all connections
+    private static final LongAdder FRAMES_QUEUED = Metrics.counter("tcp.frames.queued", "Frames queued to clients");
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("tcp.bytes.written", "Bytes written to client sockets");
+    private static final LongAdder QUEUED_NOW = new LongAdder();
+    private static final LongAdder DISCONNECTS = Metrics.counter("tcp.disconnects", "Client connections closed");
+    private static final LongAdder OVERFLOWS = Metrics.counter("tcp.disconnects.overflow",
+            "Clients disconnected for a full outbound queue");
+    private static final LongAdder STALLS = Metrics.counter("tcp.disconnects.stalled",
+            "Clients disconnected because their socket stopped accepting data");
+    private static final LatencyHistogram SEND_TIME = Metrics.histogram("tcp.send.us",
+            "Time to encode and queue one frame in sendMessage");
+    private static final LatencyHistogram QUEUE_WAIT = Metrics.histogram("tcp.queue.wait.us",
+            "Time from queueing a frame to its last byte reaching the socket");
+
     private final int id;                 // Added by Brooks - Unique client identifier
-    private final Socket socket;          // Added by Brooks - Client connection socket
+    private final SocketChannel channel;  // Added by Brooks - Client connection channel
     private final ServerTrivia server;    // Added by Brooks - Reference to main server
+    private final ConnectionEngine.Reactor reactor;
+    private final String clientIP;
     private final BlockingQueue<UDPMessage> messageQueue = new LinkedBlockingQueue<>();
-    private ObjectOutputStream out;       // Added by Brooks - TCP output stream
-    private boolean isActive = true;      // Added by Brooks - Connection status flag
+    private final ArrayDeque<OutboundFrame> outbound = new ArrayDeque<>(); // Added by Brooks - Frames not yet written
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private int queuedBytes;
+    private long lastWriteProgress;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    private SelectionKey key;
+    private volatile boolean isActive = true;      // Added by Brooks - Connection status flag
+    private boolean closeAfterFlush = false;
     private volatile PlayerAnswer answer = null; // Added by Eric - safe player answer
+    private volatile GameRoom room;              // Added by Brooks - Room chosen by the lobby at connect
+    private volatile long sessionToken;          // Added by Brooks - Identifies this client's buzz packets
+    private final ClockEstimate clock = new ClockEstimate(); // Added by Brooks - Offset used to order this client's buzzes
+    private long lastClockProbe;
+    private final ArrayDeque<Long> outstandingProbes = new ArrayDeque<>(); // Added by Brooks - Originates not yet answered
 
     // Added by Eric - Contructor for the client thread
     // Modified by Brooks - Added server reference
-    public ClientThread(Socket clientSocket, int id, ServerTrivia server) {
+    public ClientThread(SocketChannel channel, int id, ServerTrivia server, ConnectionEngine.Reactor reactor) throws IOException {
         this.id = id;
-        this.socket = clientSocket;
+        this.channel = channel;
         this.server = server;
+        this.reactor = reactor;
+        this.clientIP = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
     }
 
-    // Added by Eric - Method to listen for the incoming TCP packets from the client
-    // Modified by Brooks - Implemented run() with score tracking
-    @Override
-    public void run() {
-        // Added by Brooks - Main client communication loop
-        try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            this.out = new ObjectOutputStream(socket.getOutputStream());
-            
-            // Added by Brooks - Send initial score to client
-            sendMessage(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, server.getClientScore(id)));
-            sendMessage(new TCPMessage(TCPMessage.MessageType.QUESTION, server.getCurrentQuestion()));
-            
-            // Added by Brooks - Continuous message processing loop
-            while (isActive) {
-                Object input = in.readObject();
-                if (input instanceof PlayerAnswer) {
-                    processAnswer((PlayerAnswer) input);
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    // Added by Brooks - Send initial score and current question once the reactor owns the connection
+    void onConnected() {
+        try {
+            sendMessage(new TCPMessage(TCPMessage.MessageType.SESSION, sessionToken));
+            sendMessage(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, room.getClientScore(id)));
+            sendMessage(new TCPMessage(TCPMessage.MessageType.QUESTION, room.getCurrentQuestion()));
+            sendClockProbe();
+            // Frames queued by broadcasts before the key existed still need write interest
+            onWritable();
+        } catch (IOException e) {
+            close(e.getMessage());
+        }
+    }
+
+    // Added by Brooks - Reads whatever is available and dispatches every complete frame
+    // Runs on the reactor thread only
+    void onReadable() {
+        try {
+            if (channel.read(readBuffer) < 0) {
+                close("connection closed");
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 2 || length > MessageCodec.MAX_FRAME_SIZE) {
+                    close("invalid frame length " + length);
+                    return;
+                }
+                // Added by Brooks - Clients only ever send answers and clock replies; anything else is refused from
+                // the type byte (after length and version) before the payload is buffered or decoded
+                if (readBuffer.remaining() >= 6 && !isClientMessageType(readBuffer.get(readBuffer.position() + 5))) {
+                    close("unexpected message type " + readBuffer.get(readBuffer.position() + 5));
+                    return;
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    if (readBuffer.capacity() < 4 + length) {
+                        ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                        larger.put(readBuffer);
+                        readBuffer = larger;
+                        return;
+                    }
+                    break;
+                }
+                TCPMessage input = MessageCodec.decode(readBuffer.array(), readBuffer.position() + 4, length);
+                readBuffer.position(readBuffer.position() + 4 + length);
+                if (input.getType() == TCPMessage.MessageType.ANSWER) {
+                    processAnswer((PlayerAnswer) input.getPayload());
+                } else if (input.getType() == TCPMessage.MessageType.CLOCK_REPLY) {
+                    processClockReply((ClockProbe) input.getPayload());
                 }
                 // Additional message types can be handled here
             }
-        } catch (Exception e) {
-            System.err.println("Client " + id + " disconnected: " + e.getMessage());
-        } finally {
-            // Added by Brooks - Cleanup on disconnect
-            server.removeClient(id);
-            closeConnection();
+            readBuffer.compact();
+            // Added by Brooks - A buffer grown for one large frame goes back to the small size once it is drained,
+            // so a thousand idle connections do not each pin the largest frame they ever sent
+            if (readBuffer.capacity() > INITIAL_READ_BUFFER && readBuffer.position() <= INITIAL_READ_BUFFER) {
+                readBuffer.flip();
+                readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER).put(readBuffer);
+            }
+        } catch (IOException e) {
+            close(e.getMessage());
+        }
+    }
+
+    private static boolean isClientMessageType(int typeIndex) {
+        return typeIndex == TCPMessage.MessageType.ANSWER.ordinal()
+                || typeIndex == TCPMessage.MessageType.CLOCK_REPLY.ordinal();
+    }
+
+    // Added by Brooks - Writes queued frames; called by the reactor when the socket is writable or a flush was requested
+    // Runs on the reactor thread only
+    synchronized void onWritable() {
+        flushScheduled.set(false);
+        try {
+            flushOutbound();
+        } catch (IOException e) {
+            close(e.getMessage());
+        }
+    }
+
+    // Added by Brooks - Writes queued frames until the socket buffer fills; leaves OP_WRITE set only while
+    // data is still pending. Caller must hold this object's lock.
+    private void flushOutbound() throws IOException {
+        while (!outbound.isEmpty()) {
+            ByteBuffer head = outbound.peek().frame;
+            int written = channel.write(head);
+            if (written > 0) {
+                queuedBytes -= written;
+                lastWriteProgress = System.currentTimeMillis();
+                BYTES_WRITTEN.add(written);
+            }
+            if (head.hasRemaining()) {
+                setWriteInterest(true);
+                return;
+            }
+            QUEUE_WAIT.recordSince(outbound.poll().queuedAt);
+            QUEUED_NOW.decrement();
+        }
+        setWriteInterest(false);
+        if (closeAfterFlush) {
+            close("game over");
+        }
+    }
+
+    private void setWriteInterest(boolean enabled) {
+        SelectionKey k = key;
+        if (k == null || !k.isValid()) {
+            return;
+        }
+        int ops = enabled ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (k.interestOps() != ops) {
+            k.interestOps(ops);
+            if (enabled) {
+                k.selector().wakeup();
+            }
         }
     }
 
     // Added by Brooks - Safely sends a TCP message to the client
-    public void sendMessage(TCPMessage message) throws IOException {
-        if (out != null) {
-            out.writeObject(message);
-            out.flush();
-            System.out.println("Sent to client " + id + ": " + message);
+    // Modified by Brooks - Synchronized since the game loop and this thread both send, and frames must not interleave
+    // Modified by Brooks - Only enqueues; the reactor does the writing, so callers never block on a slow client
+    public synchronized void sendMessage(TCPMessage message) throws IOException {
+        if (!isActive) {
+            return;
+        }
+        // Modified by Brooks - Counted and timed in the metrics instead of logging every frame
+        long start = System.nanoTime();
+        enqueue(message.getType(), ByteBuffer.wrap(MessageCodec.encode(message)));
+        SEND_TIME.recordSince(start);
+    }
+
+    // Added by Brooks - Sends a frame that was encoded once for a broadcast; only a view of the shared bytes is queued
+    public synchronized void sendEncoded(EncodedMessage message) throws IOException {
+        if (isActive) {
+            enqueue(message.getType(), message.view());
+        }
+    }
+
+    // Added by Brooks - Bounded enqueue. A newer SCORE_UPDATE or RANK replaces one of the same type still waiting in
+    // the queue, since both carry the player's absolute standing and only the latest matters (LEADERBOARD frames are
+    // deltas and are all delivered); anything else that overflows the bounds disconnects the client.
+    private void enqueue(TCPMessage.MessageType type, ByteBuffer frame) {
+        if (outbound.isEmpty()) {
+            lastWriteProgress = System.currentTimeMillis();
+        }
+        if (isCoalescable(type) && coalesce(type, frame)) {
+            return;
+        }
+        outbound.add(new OutboundFrame(type, frame));
+        FRAMES_QUEUED.increment();
+        QUEUED_NOW.increment();
+        queuedBytes += frame.remaining();
+        if (outbound.size() > MAX_QUEUED_FRAMES || queuedBytes > MAX_QUEUED_BYTES) {
+            OVERFLOWS.increment();
+            close("outbound queue overflow (" + outbound.size() + " frames, " + queuedBytes + " bytes)");
+            return;
         }
+        if (flushScheduled.compareAndSet(false, true)) {
+            reactor.requestFlush(this);
+        }
+    }
+
+    private static boolean isCoalescable(TCPMessage.MessageType type) {
+        return type == TCPMessage.MessageType.SCORE_UPDATE || type == TCPMessage.MessageType.RANK;
+    }
+
+    // Added by Brooks - The head frame may already be partly written, so only frames behind it are replaced
+    private boolean coalesce(TCPMessage.MessageType type, ByteBuffer frame) {
+        Iterator<OutboundFrame> it = outbound.iterator();
+        if (it.hasNext()) {
+            it.next();
+        }
+        while (it.hasNext()) {
+            OutboundFrame queued = it.next();
+            if (queued.type == type) {
+                queuedBytes += frame.remaining() - queued.frame.remaining();
+                queued.frame = frame;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Added by Brooks - Disconnects a client whose socket has accepted nothing for too long (half-open or stuck)
+    // Runs on the reactor thread only
+    synchronized void checkStalled(long now) {
+        if (isActive && !outbound.isEmpty() && now - lastWriteProgress > WRITE_STALL_TIMEOUT_MS) {
+            STALLS.increment();
+            close("write stalled for " + (now - lastWriteProgress) + "ms with " + outbound.size() + " frames queued");
+        }
+    }
+
+    // Added by Brooks - Stamps a probe with the server clock. Stamped when queued, so a probe that waits behind
+    // other frames shows a longer delay and simply loses to better samples in the estimate.
+    // Modified by Brooks - The probe's receive and transmit fields carry the current offset and delay estimate,
+    //                      so the client can map server-clock reveal times onto its own clock
+    // Modified by Brooks - Remembers each originate it sends (reactor thread only, like every caller)
+    private void sendClockProbe() throws IOException {
+        lastClockProbe = System.currentTimeMillis();
+        long originate = ClockProbe.nowMicros();
+        outstandingProbes.addLast(originate);
+        if (outstandingProbes.size() > MAX_OUTSTANDING_PROBES) {
+            outstandingProbes.removeFirst();
+        }
+        sendMessage(new TCPMessage(TCPMessage.MessageType.CLOCK_PROBE,
+                new ClockProbe(originate, clock.getOffsetMicros(), clock.getDelayMicros())));
+    }
+
+    // Added by Brooks - Runs on the reactor thread; keeps probing until the burst is complete
+    // Modified by Brooks - Only a reply to a probe we sent, once, counts; otherwise a client could feed the
+    //                      estimator made-up originates and pick its own offset and delay
+    private void processClockReply(ClockProbe reply) throws IOException {
+        if (!outstandingProbes.remove(reply.getOriginate())) {
+            return;
+        }
+        clock.addSample(reply, ClockProbe.nowMicros());
+        if (clock.getSampleCount() < CLOCK_PROBE_BURST) {
+            sendClockProbe();
+        }
+    }
+
+    // Added by Brooks - Periodic refresh so clock drift does not accumulate; called from the reactor's sweep
+    void refreshClock(long now) {
+        if (isActive && now - lastClockProbe >= CLOCK_PROBE_INTERVAL_MS) {
+            try {
+                sendClockProbe();
+            } catch (IOException e) {
+                close(e.getMessage());
+            }
+        }
+    }
+
+    // Added by Brooks - Converts this client's buzz timestamp to server time, crediting at most maxCreditMicros
+    public long toServerTime(long clientMicros, long arrivalMicros, long maxCreditMicros) {
+        return clock.toServerTime(clientMicros, arrivalMicros, maxCreditMicros);
+    }
+
+    public long getOneWayMicros() {
+        return clock.getOneWayMicros();
     }
 
     // Added by Eric - Processes player answer
     // Modified by Brooks - Added better error handling for answer processing
-    private void processAnswer(PlayerAnswer answer) throws IOException {
+    // Modified by Brooks - Counted in the metrics rather than logged for every answer
+    private void processAnswer(PlayerAnswer answer) {
         if (answer != null) {
             this.answer = answer;
-            System.out.println("Received answer from client " + id + 
-                             " for Q" + answer.getQuestionId() + 
-                             ": " + answer.getSelectedOption());
+            room.onAnswer(id, answer);
         }
     }
 
@@ -97,21 +356,30 @@ public class ClientThread implements Runnable {
     public void sendQuestion(Question question) throws IOException {
         sendMessage(new TCPMessage(TCPMessage.MessageType.QUESTION, question));
     }
-    
+
     // Added by Brooks - Acknowledges first buzz attempt
     public void sendAck() throws IOException {
         sendMessage(new TCPMessage(TCPMessage.MessageType.ACK));
     }
-    
+
     // Added by Brooks - Notifies late buzz attempts
     public void sendNack() throws IOException {
         sendMessage(new TCPMessage(TCPMessage.MessageType.NACK));
     }
-    
+
     // Added by Brooks - Terminates client connection gracefully
-    public void sendGameOver() throws IOException {
-        sendMessage(new TCPMessage(TCPMessage.MessageType.GAME_OVER));
-        isActive = false;
+    // Modified by Brooks - Connection closes once the GAME_OVER frame has been written
+    public synchronized void sendGameOver() throws IOException {
+        sendGameOver(EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.GAME_OVER)));
+    }
+
+    // Added by Brooks - Broadcast variant that reuses a pre-encoded GAME_OVER frame
+    public synchronized void sendGameOver(EncodedMessage gameOver) throws IOException {
+        sendEncoded(gameOver);
+        closeAfterFlush = true;
+        if (outbound.isEmpty()) {
+            close("game over");
+        }
     }
 
     // Added by Eric - Notifies client if they answered correctly
@@ -133,27 +401,79 @@ public class ClientThread implements Runnable {
     public void sendEligibility() throws IOException {
         sendMessage(new TCPMessage(TCPMessage.MessageType.ELIGIBILITY));
     }
-    
+
     // Added by Brooks - Cleans up network resources
-    private void closeConnection() {
+    // Modified by Brooks - Idempotent, and also removes the client from the server
+    void close(String reason) {
+        synchronized (this) {
+            if (!isActive) {
+                return;
+            }
+            isActive = false;
+            QUEUED_NOW.add(-outbound.size());
+            outbound.clear();
+        }
+        DISCONNECTS.increment();
+        System.err.println("Client " + id + " disconnected: " + reason);
+        server.removeClient(id);
         try {
-            if (out != null) out.close();
-            if (socket != null) socket.close();
+            if (key != null) key.cancel();
+            channel.close();
         } catch (IOException e) {
             System.err.println("Error closing connection for client " + id);
         }
     }
-    
+
     // Added by Brooks - Getter for client ID
     public int getClientId() {
         return id;
     }
-    
+
     // Added by Brooks - Getter for client IP address
     public String getClientIP() {
-        return socket.getInetAddress().getHostAddress();
+        return clientIP;
+    }
+
+    // Added by Brooks - Game room this client plays in
+    public GameRoom getRoom() {
+        return room;
+    }
+
+    void setRoom(GameRoom room) {
+        this.room = room;
+    }
+
+    // Added by Brooks - Session token issued at connect
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
+    void setSessionToken(long sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+
+    // Added by Brooks - Frames queued on all connections and not yet written, for the metrics
+    static long getQueuedFrameCount() {
+        return QUEUED_NOW.sum();
+    }
+
+    // Added by Brooks - Connection status for callers that hold a reference past disconnect
+    public boolean isActive() {
+        return isActive;
+    }
+
+    // Added by Brooks - Queued frame tagged with its type so SCORE_UPDATE and RANK frames can be coalesced
+    private static final class OutboundFrame {
+        final TCPMessage.MessageType type;
+        final long queuedAt = System.nanoTime();
+        ByteBuffer frame;
+
+        OutboundFrame(TCPMessage.MessageType type, ByteBuffer frame) {
+            this.type = type;
+            this.frame = frame;
+        }
     }
-    
+
     // Added by Brooks - Adds UDP message to processing queue
     public void addUdpMessage(UDPMessage message) {
         messageQueue.add(message);
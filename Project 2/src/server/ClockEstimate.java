@@ -0,0 +1,84 @@
+package server;
+
+import model.ClockProbe;
+
+// Added by Brooks - Per-client clock offset estimate built from ClockProbe round trips
+// Like NTP's clock filter, the offset is taken from the sample with the smallest round-trip delay among the most
+// recent few, since queueing delay only ever adds error. Accessed from the reactor (samples) and the UDP thread
+// (corrections), hence synchronized.
+public class ClockEstimate {
+    private static final int WINDOW = 8;
+    // A corrected send time may be at most this much earlier than the one-way delay allows, to absorb jitter
+    private static final long JITTER_TOLERANCE_US = 5_000;
+    // Upper bound on the head start any player can be credited, whatever their timestamps claim
+    static final long MAX_CREDIT_US = 250_000;
+
+    private final long[] offsets = new long[WINDOW];
+    private final long[] delays = new long[WINDOW];
+    private int count;
+    private int next;
+    private long offset;
+    private long delay = -1;
+
+    // Added by Brooks - Adds one completed exchange; arrival is the server clock when the reply was read
+    public synchronized void addSample(ClockProbe reply, long arrival) {
+        long t0 = reply.getOriginate();
+        long t1 = reply.getReceive();
+        long t2 = reply.getTransmit();
+        long sampleDelay = (arrival - t0) - (t2 - t1);
+        if (sampleDelay < 0) {
+            return; // Client clock went backwards mid-exchange; the sample is meaningless
+        }
+        offsets[next] = ((t1 - t0) + (t2 - arrival)) / 2;
+        delays[next] = sampleDelay;
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (delays[i] < delays[best]) {
+                best = i;
+            }
+        }
+        offset = offsets[best];
+        delay = delays[best];
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    // Added by Brooks - Current offset (client clock minus server clock), and the round-trip delay of the sample
+    // it came from or -1 before the first sample; sent back to the client so it can read server timestamps
+    public synchronized long getOffsetMicros() {
+        return offset;
+    }
+
+    public synchronized long getDelayMicros() {
+        return delay;
+    }
+
+    // Added by Brooks - Estimated one-way delay to the client, or -1 before the first sample
+    public synchronized long getOneWayMicros() {
+        return delay < 0 ? -1 : delay / 2;
+    }
+
+    // Added by Brooks - Converts a client send timestamp to server time. The result never lies after the
+    // packet's arrival and never earlier than the client's measured one-way delay (plus jitter) before it, so a
+    // forged or badly skewed timestamp cannot buy more than the network genuinely cost that player.
+    // Modified by Brooks - The credit is also capped by the room (maxCreditMicros), since a player can inflate
+    //                      their own measured delay by holding back clock replies
+    public synchronized long toServerTime(long clientMicros, long arrival, long maxCreditMicros) {
+        if (delay < 0) {
+            return arrival; // No estimate yet; arrival order is all we can offer
+        }
+        long corrected = clientMicros - offset;
+        long earliest = arrival - Math.min(Math.min(MAX_CREDIT_US, maxCreditMicros), creditFor(delay / 2));
+        return Math.max(earliest, Math.min(arrival, corrected));
+    }
+
+    // Added by Brooks - Largest credit a player with this one-way delay can receive before any room cap
+    static long creditFor(long oneWayMicros) {
+        return Math.min(MAX_CREDIT_US, oneWayMicros + JITTER_TOLERANCE_US);
+    }
+}
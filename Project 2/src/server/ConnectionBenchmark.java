@@ -0,0 +1,150 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.MessageCodec;
+import model.TCPMessage;
+
+// Added by Brooks - Join-storm benchmark comparing the ConnectionEngine with the old thread-per-client model
+// Usage: java server.ConnectionBenchmark <nio|threads> <CLIENTS>
+// Run each mode in its own JVM so heap, thread and RSS numbers are not mixed up. Every client connects, then
+// waits for the frames a new player gets (session token, score and question); the storm ends when all clients have both.
+public class ConnectionBenchmark {
+    private static final String HOST = "127.0.0.1";
+    private static final int JOIN_FRAMES = 3; // Session token, score and question
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !(args[0].equals("nio") || args[0].equals("threads"))) {
+            System.out.println("Usage: java server.ConnectionBenchmark <nio|threads> <CLIENTS>");
+            System.exit(1);
+        }
+        boolean nio = args[0].equals("nio");
+        int clients = Integer.parseInt(args[1]);
+
+        PrintStream console = System.out;
+        Snapshot before = Snapshot.take();
+
+        int port;
+        if (nio) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            ConnectionEngine engine = new ConnectionEngine(HOST, 0, Runtime.getRuntime().availableProcessors(), new ServerTrivia());
+            port = engine.getPort();
+            startDaemon(() -> {
+                try {
+                    engine.run();
+                } catch (IOException e) {
+                    System.err.println("Engine stopped: " + e.getMessage());
+                }
+            });
+        } else {
+            port = startThreadPerClientServer();
+        }
+
+        long start = System.nanoTime();
+        List<SocketChannel> connections = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            connections.add(SocketChannel.open(new InetSocketAddress(HOST, port)));
+        }
+        long connected = System.nanoTime();
+        for (SocketChannel channel : connections) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            for (int i = 0; i < JOIN_FRAMES; i++) {
+                MessageCodec.read(in);
+            }
+        }
+        long joined = System.nanoTime();
+        System.setOut(console);
+
+        Snapshot after = Snapshot.take();
+        double joinMillis = (joined - start) / 1e6;
+        System.out.printf("mode=%s clients=%d%n", args[0], clients);
+        System.out.printf("join storm: all connected in %.1f ms, all served in %.1f ms (%.0f joins/s)%n",
+                (connected - start) / 1e6, joinMillis, clients / (joinMillis / 1000));
+        System.out.printf("threads: %d -> %d (+%d)%n", before.threads, after.threads, after.threads - before.threads);
+        System.out.printf("heap used: +%.1f KB per connection%n", (after.heapUsed - before.heapUsed) / 1024.0 / clients);
+        if (before.rssKb > 0) {
+            System.out.printf("RSS: +%.1f KB per connection (client and server ends in one JVM)%n",
+                    (double) (after.rssKb - before.rssKb) / clients);
+        }
+        System.exit(0);
+    }
+
+    // Added by Brooks - Equivalent of the old ServerTrivia accept loop: a cached pool with one blocked thread per player
+    private static int startThreadPerClientServer() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 1024, java.net.InetAddress.getByName(HOST));
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        startDaemon(() -> {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    executorService.submit(() -> {
+                        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                            MessageCodec.write(new TCPMessage(TCPMessage.MessageType.SESSION, 0L), out);
+                            MessageCodec.write(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, 0), out);
+                            MessageCodec.write(new TCPMessage(TCPMessage.MessageType.QUESTION, null), out);
+                            out.flush();
+                            while (true) {
+                                MessageCodec.read(in);
+                            }
+                        } catch (IOException e) {
+                            // Client went away
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                System.err.println("Accept loop stopped: " + e.getMessage());
+            }
+        });
+        return serverSocket.getLocalPort();
+    }
+
+    private static void startDaemon(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static final class Snapshot {
+        int threads;
+        long heapUsed;
+        long rssKb;
+
+        static Snapshot take() {
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            Snapshot snapshot = new Snapshot();
+            snapshot.threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            Runtime runtime = Runtime.getRuntime();
+            snapshot.heapUsed = runtime.totalMemory() - runtime.freeMemory();
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                    if (line.startsWith("VmRSS:")) {
+                        snapshot.rssKb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                snapshot.rssKb = 0; // Not Linux; RSS is reported only where /proc is available
+            }
+            return snapshot;
+        }
+    }
+}
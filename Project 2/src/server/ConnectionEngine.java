@@ -0,0 +1,230 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Added by Brooks - Non-blocking connection engine for the TCP side of the game
+// One acceptor thread hands new sockets round-robin to a small fixed set of reactor threads, each of which
+// multiplexes thousands of ClientThread connections on its own Selector. No thread ever blocks on a single
+// player, so the number of threads stays fixed no matter how many players join.
+public class ConnectionEngine {
+    private final ServerSocketChannel serverChannel;
+    private final Selector acceptSelector;
+    private final Reactor[] reactors;
+    private final ServerTrivia server;
+    private final AtomicInteger nextClientID = new AtomicInteger(1); // Added by Brooks - Atomic id assignment on accept
+    private int nextReactor;
+
+    public ConnectionEngine(String host, int port, int reactorCount, ServerTrivia server) throws IOException {
+        this.server = server;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(host, port), 1024);
+        serverChannel.configureBlocking(false);
+        this.acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        this.reactors = new Reactor[Math.max(1, reactorCount)];
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(i);
+            Thread thread = new Thread(reactors[i], "tcp-reactor-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Added by Brooks - Accept loop; runs on the caller's thread until the server socket is closed
+    public void run() throws IOException {
+        while (serverChannel.isOpen()) {
+            acceptSelector.select();
+            Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                keys.next();
+                keys.remove();
+                SocketChannel channel;
+                // Drain every pending connection so a join storm is absorbed in one wakeup
+                while ((channel = serverChannel.accept()) != null) {
+                    accept(channel);
+                }
+            }
+        }
+    }
+
+    private void accept(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            int clientID = nextClientID.getAndIncrement();
+            Reactor reactor = reactors[nextReactor++ % reactors.length];
+            ClientThread clientThread = new ClientThread(channel, clientID, server, reactor);
+            System.out.println("New client connected: " + clientThread.getClientIP());
+
+            server.addClient(clientID, clientThread);
+            reactor.register(clientThread);
+        } catch (IOException e) {
+            System.err.println("Error accepting client: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already failed; nothing more to release
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            serverChannel.close();
+            acceptSelector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing TCP server channel: " + e.getMessage());
+        }
+        for (Reactor reactor : reactors) {
+            reactor.close();
+        }
+    }
+
+    // Added by Brooks - One selector thread. Registration from the acceptor is queued and applied on this thread,
+    // because register() would otherwise block behind a select() in progress
+    static final class Reactor implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private static final long STALL_CHECK_INTERVAL_MS = 1000;
+
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<ClientThread> flushes = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private volatile boolean running = true;
+        private long lastStallCheck = System.currentTimeMillis();
+
+        Reactor(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        void register(ClientThread client) {
+            execute(() -> {
+                try {
+                    client.attach(client.getChannel().register(selector, SelectionKey.OP_READ, client));
+                    client.onConnected();
+                } catch (ClosedChannelException e) {
+                    client.close("closed before registration");
+                } catch (RuntimeException e) {
+                    fail(client, e);
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            pending.add(task);
+            wakeup();
+        }
+
+        // Added by Brooks - Called by producers (game loop, broadcasts) after enqueuing; a broadcast to thousands of
+        // clients costs one selector wakeup, and the writes themselves happen here
+        void requestFlush(ClientThread client) {
+            flushes.add(client);
+            wakeup();
+        }
+
+        private void wakeup() {
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(STALL_CHECK_INTERVAL_MS);
+                } catch (IOException e) {
+                    System.err.println("Reactor " + index + " select failed: " + e.getMessage());
+                    return;
+                }
+                wakeupPending.set(false);
+                // Modified by Brooks - Every callback is isolated: a bug triggered by one client closes that client
+                // only, instead of ending this loop and silently stranding every connection on the reactor
+                Runnable task;
+                while ((task = pending.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Reactor " + index + " task failed: " + e);
+                    }
+                }
+                ClientThread flush;
+                while ((flush = flushes.poll()) != null) {
+                    try {
+                        flush.onWritable();
+                    } catch (RuntimeException e) {
+                        fail(flush, e);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ClientThread client = (ClientThread) key.attachment();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isWritable()) {
+                            client.onWritable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            client.onReadable();
+                        }
+                    } catch (RuntimeException e) {
+                        fail(client, e);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastStallCheck >= STALL_CHECK_INTERVAL_MS) {
+                    lastStallCheck = now;
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.isValid()) {
+                            ClientThread client = (ClientThread) key.attachment();
+                            try {
+                                client.checkStalled(now);
+                                client.refreshClock(now);
+                            } catch (RuntimeException e) {
+                                fail(client, e);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void fail(ClientThread client, RuntimeException e) {
+            System.err.println("Reactor " + index + " error on client " + client.getClientId() + ": " + e);
+            try {
+                client.close("internal error");
+            } catch (RuntimeException closeFailure) {
+                System.err.println("Reactor " + index + " could not close client " + client.getClientId() + ": " + closeFailure);
+            }
+        }
+
+        void close() {
+            running = false;
+            selector.wakeup();
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.ClockProbe;
+import model.EncodedMessage;
+import model.LeaderboardUpdate;
+import model.PlayerAnswer;
+import model.PlayerRank;
+import model.Question;
+import model.QuestionBank;
+import model.RevealKey;
+import model.SealedQuestion;
+import model.TCPMessage;
+
+// Added by Brooks - One independent game: its own players, question cursor, buzz queue, scores and round state
+// machine. Many rooms share one bounded scheduler; each room serialises its own events through a private task
+// queue, so a room's round state is only ever touched by one pool thread at a time and never needs a lock.
+public class GameRoom {
+    // Round timing
+    private static final long LOBBY_MS = 10000;
+    private static final long BUZZ_WINDOW_MS = 15000;
+    private static final long ANSWER_WINDOW_MS = 10000;
+    private static final long INTERMISSION_MS = 5000;
+    // Added by Brooks - After the first buzz the window stays open just long enough for a farther player's
+    // earlier buzz to arrive: the slowest player's one-way delay plus a margin, within these bounds
+    private static final long MIN_GRACE_MS = 10;
+    private static final long MAX_GRACE_MS = 250;
+    private static final long GRACE_MARGIN_US = 5_000;
+    // Added by Brooks - No player is credited more than this multiple of the room's median one-way delay
+    private static final int CREDIT_MEDIAN_FACTOR = 2;
+    // Added by Brooks - Rows of the leaderboard every player sees; beyond that each player only gets their own rank
+    private static final int TOP_K = 10;
+    // Added by Brooks - The next question's key goes out this long before its reveal; small enough that nobody
+    // can read it early to any useful degree, large enough to arrive everywhere before the reveal instant
+    private static final long KEY_LEAD_MS = 250;
+
+    // Added by Brooks - Metrics shared by all rooms
+    private static final LongAdder ROUNDS = Metrics.counter("rounds.started", "Questions put to a room");
+    private static final LongAdder NO_BUZZ = Metrics.counter("rounds.unbuzzed", "Buzz windows that closed with no buzz");
+    private static final LongAdder CORRECT = Metrics.counter("answers.correct", "Correct answers");
+    private static final LongAdder WRONG = Metrics.counter("answers.wrong", "Wrong answers");
+    private static final LongAdder TIMEOUTS = Metrics.counter("answers.timeout", "Players who held the ACK and never answered");
+    private static final LongAdder BUZZES = Metrics.counter("buzzes.accepted", "Buzzes queued for arbitration");
+    private static final LongAdder IGNORED = Metrics.counter("buzzes.ignored",
+            "Buzzes dropped as duplicates, from departed players or outside the buzz window");
+    private static final LatencyHistogram BUZZ_TO_ACK = Metrics.histogram("buzz.to.ack.us",
+            "Time from a buzz arriving to its player being sent the ACK");
+    private static final LatencyHistogram BUZZ_CREDIT = Metrics.histogram("buzz.credit.us",
+            "How much earlier than its arrival a buzz was ordered, after clock correction");
+    private static final LatencyHistogram BUZZ_QUEUE = Metrics.histogram("buzz.queue.depth",
+            "Buzzes waiting each time the next player is served");
+    private static final LatencyHistogram BROADCAST_TIME = Metrics.histogram("room.broadcast.us",
+            "Time to encode a broadcast and queue it for every player in the room");
+    private static final LatencyHistogram BROADCAST_SIZE = Metrics.histogram("room.broadcast.recipients",
+            "Players reached by each broadcast");
+    private static final LatencyHistogram[] PHASE_TIME = new LatencyHistogram[Phase.values().length];
+    static {
+        for (Phase phase : Phase.values()) {
+            if (phase != Phase.GAME_OVER) {
+                String name = phase.name().toLowerCase();
+                PHASE_TIME[phase.ordinal()] = Metrics.histogram("round.phase." + name + ".us",
+                        "Time rooms spend in the " + name + " phase");
+            }
+        }
+    }
+
+    private final int roomId;
+    private final int capacity;
+    private final Lobby lobby;
+    private final ScheduledExecutorService scheduler;
+    private final QuestionBank questionBank;
+
+    private final Map<Integer, ClientThread> players = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> clientScores = new ConcurrentHashMap<>();
+    // Added by Brooks - Ranked view of the scores, and what was last published from it; owned by the task queue
+    private final Leaderboard leaderboard = new Leaderboard();
+    private List<LeaderboardUpdate.Entry> publishedTop = new ArrayList<>();
+    private final Map<Integer, PlayerRank> publishedRanks = new HashMap<>();
+    // Modified by Brooks - Ordered by offset-corrected send time, not arrival; owned by the room's task queue
+    private final PriorityQueue<Buzz> buzzQueue = new PriorityQueue<>();
+
+    // Added by Brooks - Serial execution on the shared scheduler
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    // Guarded by this; once false the lobby stops placing players here
+    private boolean accepting = true;
+    private boolean started;
+
+    // Round state, owned by the room's serial task queue
+    private volatile Question currentQuestion;
+    private volatile long creditCapMicros = ClockEstimate.MAX_CREDIT_US; // Added by Brooks - Set at each question
+    private Phase phase = Phase.LOBBY;
+    private long phaseSeq;
+    private long phaseStarted = System.nanoTime();
+    private ScheduledFuture<?> phaseTimeout;
+    private int answeringClientId;
+    private final Set<Integer> buzzedThisRound = new HashSet<>();
+    // Added by Brooks - Question drawn and pushed during the intermission, and the key that opens it
+    private Question nextQuestion;
+    private RevealKey nextKey;
+    private long nextRevealAt; // Added by Brooks - Server-clock instant the prefetched question opens
+    private boolean keySent;
+    private int round;
+
+    // Added by Brooks - Round phases; LOBBY waits for players, BUZZING is the buzz window, ANSWERING waits on
+    // the player who holds the ACK, INTERMISSION is the pause between questions
+    private enum Phase { LOBBY, BUZZING, ANSWERING, INTERMISSION, GAME_OVER }
+
+    GameRoom(int roomId, int capacity, Lobby lobby, ScheduledExecutorService scheduler, QuestionBank questionBank) {
+        this.roomId = roomId;
+        this.capacity = capacity;
+        this.lobby = lobby;
+        this.scheduler = scheduler;
+        this.questionBank = questionBank;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    // Added by Brooks - Called by the lobby. The first player starts the lobby countdown; a full room starts at once.
+    // Returns false if the room has already closed its doors, in which case the lobby tries another room.
+    synchronized boolean tryAddPlayer(ClientThread client) {
+        if (!accepting || players.size() >= capacity) {
+            return false;
+        }
+        int clientID = client.getClientId();
+        players.put(clientID, client);
+        clientScores.put(clientID, 0);
+        client.setRoom(this);
+        execute(() -> joinLeaderboard(client));
+        System.out.println("Client " + clientID + " joined room " + roomId + " (" + players.size() + "/" + capacity + ")");
+
+        if (!started) {
+            started = true;
+            execute(() -> enterPhase(Phase.LOBBY, LOBBY_MS, this::beginQuestion));
+        }
+        if (players.size() >= capacity) {
+            accepting = false;
+            execute(this::beginQuestion);
+        }
+        return true;
+    }
+
+    synchronized boolean isAccepting() {
+        return accepting && players.size() < capacity;
+    }
+
+    private synchronized void closeDoors() {
+        accepting = false;
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    // Added by Brooks - Retrieves current score for specified client
+    public int getClientScore(int clientID) {
+        return clientScores.getOrDefault(clientID, 0);
+    }
+
+    // Added by Brooks - Question last sent to this room, for players joining while it is still open
+    public Question getCurrentQuestion() {
+        return currentQuestion;
+    }
+
+    // Added by Brooks - Events waiting on this room's task queue, for the metrics
+    int getPendingTasks() {
+        return tasks.size();
+    }
+
+    // Added by Brooks - Runs a task on the shared scheduler, strictly after any task this room queued earlier
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (draining.compareAndSet(false, true)) {
+            scheduler.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Room " + roomId + " task failed: " + e);
+                }
+            }
+        } finally {
+            draining.set(false);
+            // A task added after the last poll but before the flag cleared would otherwise be stranded
+            if (!tasks.isEmpty() && draining.compareAndSet(false, true)) {
+                scheduler.execute(this::drain);
+            }
+        }
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return scheduler.schedule(() -> execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Added by Brooks - Moves to a new phase and arms its timeout. The sequence number lets a timeout that fires
+    // after the phase already ended (its cancel raced with it) recognise itself as stale.
+    private void enterPhase(Phase next, long timeoutMillis, Runnable onTimeout) {
+        if (phaseTimeout != null) {
+            phaseTimeout.cancel(false);
+            phaseTimeout = null;
+        }
+        if (next != phase) {
+            // A BUZZING window shortened to its grace period is still the same phase
+            if (PHASE_TIME[phase.ordinal()] != null) {
+                PHASE_TIME[phase.ordinal()].recordSince(phaseStarted);
+            }
+            phaseStarted = System.nanoTime();
+        }
+        phase = next;
+        long seq = ++phaseSeq;
+        if (next == Phase.INTERMISSION) {
+            publishLeaderboard(); // Score changes are published once per round, not per answer
+        }
+        if (onTimeout != null) {
+            phaseTimeout = schedule(() -> {
+                if (phaseSeq == seq) {
+                    onTimeout.run();
+                }
+            }, timeoutMillis);
+        }
+    }
+
+    private void beginQuestion() {
+        if (phase == Phase.LOBBY) {
+            closeDoors();
+        } else if (phase != Phase.INTERMISSION) {
+            // A room that filled up has already started; its lobby countdown is stale
+            return;
+        }
+        if (players.isEmpty() || (nextQuestion == null && !questionBank.hasMoreQuestions())) {
+            enterPhase(Phase.GAME_OVER, 0, null);
+            endGame();
+            return;
+        }
+        // Modified by Brooks - The buzz queue was reset when the intermission began, and may already hold buzzes
+        //                      sent after the reveal that reached the server before this task ran
+        updateCreditCap();
+        if (nextKey != null) {
+            // Modified by Brooks - Clients already hold the sealed question and its key and reveal it on their own
+            // at this instant, so nothing is sent at the round boundary
+            currentQuestion = nextQuestion;
+            if (!keySent) {
+                sendRevealKey();
+            }
+        } else {
+            currentQuestion = nextQuestion != null ? nextQuestion : questionBank.getNextQuestion();
+            eligibility();
+            broadcastQuestion(currentQuestion);
+        }
+        nextQuestion = null;
+        nextKey = null;
+        ROUNDS.increment();
+        enterPhase(Phase.BUZZING, BUZZ_WINDOW_MS, this::nextBuzzer);
+        if (buzzedThisRound.size() >= players.size()) {
+            nextBuzzer();
+        } else if (!buzzedThisRound.isEmpty()) {
+            enterPhase(Phase.BUZZING, graceMillis(), this::nextBuzzer);
+        }
+    }
+
+    // Added by Brooks - Pause between questions, during which the next question is pushed out sealed
+    // Modified by Brooks - Resets the buzz queue here rather than at the reveal, so early buzzes for the coming
+    //                      question survive until it starts
+    private void beginIntermission() {
+        enterPhase(Phase.INTERMISSION, INTERMISSION_MS, this::beginQuestion);
+        buzzQueue.clear();
+        buzzedThisRound.clear();
+        prefetchNextQuestion();
+    }
+
+    // Added by Brooks - Sends the next question while the connections are otherwise idle, encrypted so that
+    // nobody can read it before the round starts. Only the small key is sent near the reveal, and every client
+    // reveals at the same server-clock instant whatever its latency or how long its queue took to drain. If
+    // sealing fails the question is kept and goes out in the clear at the round boundary instead.
+    private void prefetchNextQuestion() {
+        if (players.isEmpty() || !questionBank.hasMoreQuestions()) {
+            return;
+        }
+        nextQuestion = questionBank.getNextQuestion();
+        round++;
+        byte[] key = SealedQuestion.newKey();
+        long revealAt = ClockProbe.nowMicros() + INTERMISSION_MS * 1000;
+        SealedQuestion sealed;
+        try {
+            sealed = SealedQuestion.seal(round, revealAt, nextQuestion, key);
+        } catch (IOException e) {
+            System.err.println("Room " + roomId + ": cannot seal question, sending it at the reveal: " + e.getMessage());
+            return;
+        }
+        nextKey = new RevealKey(round, key);
+        nextRevealAt = revealAt;
+        keySent = false;
+        broadcast(new TCPMessage(TCPMessage.MessageType.PREFETCH, sealed), -1);
+        long seq = phaseSeq;
+        schedule(() -> {
+            if (phaseSeq == seq && nextKey != null && !keySent) {
+                sendRevealKey();
+            }
+        }, INTERMISSION_MS - KEY_LEAD_MS);
+    }
+
+    private void sendRevealKey() {
+        keySent = true;
+        broadcast(new TCPMessage(TCPMessage.MessageType.REVEAL_KEY, nextKey), -1);
+    }
+
+    // Added by Brooks - Serves the next player in the buzz queue, or moves on when nobody is left
+    private void nextBuzzer() {
+        ClientThread answeringClient = null;
+        Buzz next = null;
+        BUZZ_QUEUE.record(buzzQueue.size());
+        while (answeringClient == null) {
+            next = buzzQueue.poll();
+            if (next == null) {
+                if (buzzedThisRound.isEmpty()) {
+                    NO_BUZZ.increment();
+                }
+                beginIntermission();
+                return;
+            }
+            answeringClient = players.get(next.clientId);
+        }
+
+        // Send ACK to answering client
+        int clientId = answeringClient.getClientId();
+        try {
+            answeringClient.sendAck();
+            BUZZ_TO_ACK.record(ClockProbe.nowMicros() - next.arrivedAt);
+        } catch (IOException e) {
+            System.err.println("Error sending ACK to client " + clientId);
+            nextBuzzer();
+            return;
+        }
+        answeringClient.clearAnswer();
+
+        // Send NACK to all other players in the room
+        broadcast(new TCPMessage(TCPMessage.MessageType.NACK), clientId);
+
+        this.answeringClientId = clientId;
+        enterPhase(Phase.ANSWERING, ANSWER_WINDOW_MS, this::answerTimedOut);
+    }
+
+    // Added by Brooks - Validates player answer against correct answer
+    private boolean validateAnswer(PlayerAnswer answer) {
+        Question question = questionBank.getQuestion(answer.getQuestionId());
+        return question != null &&
+               question.getCorrectAnswer() == answer.getSelectedOption();
+    }
+
+    // Added by Brooks - Updates client score with positive/negative delta
+    // Modified by Brooks - Only updates the ranked board; the change goes out with the round's leaderboard update
+    private void updateClientScore(int clientID, int delta) {
+        clientScores.merge(clientID, delta, Integer::sum);
+        if (leaderboard.contains(clientID)) {
+            leaderboard.add(clientID, delta);
+        }
+    }
+
+    // Added by Brooks - Called by ClientThread when an answer arrives; evaluated on the room's task queue
+    public void onAnswer(int clientId, PlayerAnswer answer) {
+        execute(() -> {
+            if (phase != Phase.ANSWERING || clientId != answeringClientId) {
+                return;
+            }
+            // A late answer to an earlier question must not be scored against this one
+            if (currentQuestion == null || answer.getQuestionId() != currentQuestion.getQuestionNumber()) {
+                return;
+            }
+            ClientThread answeringClient = players.get(clientId);
+            if (validateAnswer(answer)) {
+                CORRECT.increment();
+                updateClientScore(clientId, 10);
+                try {
+                    if (answeringClient != null) answeringClient.sendRight();
+                } catch (IOException e) {
+                    System.err.println("Error sending RIGHT to client " + clientId);
+                }
+                if (answeringClient != null) answeringClient.clearAnswer();
+                beginIntermission();
+            } else {
+                WRONG.increment();
+                updateClientScore(clientId, -10);
+                try {
+                    if (answeringClient != null) answeringClient.sendWrong();
+                } catch (IOException e) {
+                    System.err.println("Error sending WRONG to client " + clientId);
+                }
+                if (answeringClient != null) answeringClient.clearAnswer();
+                // Give the next client a chance
+                nextBuzzer();
+            }
+        });
+    }
+
+    private void answerTimedOut() {
+        int clientId = answeringClientId;
+        TIMEOUTS.increment();
+        updateClientScore(clientId, -20);
+        ClientThread answeringClient = players.get(clientId);
+        if (answeringClient != null) {
+            try {
+                answeringClient.sendTimeout();
+            } catch (IOException e) {
+                System.err.println("Error sending TIMEOUT to client " + clientId);
+            }
+            answeringClient.clearAnswer();
+        }
+        // Timeout - give the next client a chance
+        nextBuzzer();
+    }
+
+    // Added by Brooks - Called by UDPThread for each buzz from a player in this room, with the buzz's send time
+    // already converted to server time. Duplicates are dropped with one set lookup. The first buzz of a question
+    // shortens the window to a grace period, so the ACK goes to the earliest sender rather than the nearest one;
+    // the window still closes at once when every player has buzzed.
+    // Modified by Brooks - Clients reveal a prefetched question on their own clock, so a buzz can be sent after the
+    //                      reveal yet arrive before beginQuestion runs. Such a buzz (sent at or after revealAt in
+    //                      server time) is queued for the coming question instead of being dropped after its ack.
+    public void onBuzz(int clientId, long sentAt, long arrivedAt) {
+        execute(() -> {
+            boolean early = phase == Phase.INTERMISSION && nextKey != null && sentAt >= nextRevealAt;
+            if ((phase != Phase.BUZZING && phase != Phase.ANSWERING && !early)
+                    || !players.containsKey(clientId) || !buzzedThisRound.add(clientId)) {
+                IGNORED.increment();
+                return;
+            }
+            buzzQueue.add(new Buzz(clientId, sentAt, arrivedAt));
+            // Modified by Brooks - Measured in the metrics rather than logged for every buzz
+            BUZZES.increment();
+            BUZZ_CREDIT.record(arrivedAt - sentAt);
+            if (phase != Phase.BUZZING) {
+                return;
+            }
+            if (buzzedThisRound.size() >= players.size()) {
+                nextBuzzer();
+            } else if (buzzedThisRound.size() == 1) {
+                enterPhase(Phase.BUZZING, graceMillis(), this::nextBuzzer);
+            }
+        });
+    }
+
+    // Modified by Brooks - Waits only as long as the largest credit anyone can actually be given
+    private long graceMillis() {
+        long largest = 0;
+        for (ClientThread player : players.values()) {
+            largest = Math.max(largest, ClockEstimate.creditFor(player.getOneWayMicros()));
+        }
+        largest = Math.min(largest, creditCapMicros);
+        return Math.max(MIN_GRACE_MS, Math.min(MAX_GRACE_MS, (largest + GRACE_MARGIN_US) / 1000));
+    }
+
+    // Added by Brooks - A player's credit comes from delays they measure themselves, and holding back clock replies
+    // inflates them. Capping everyone at a multiple of the room's median keeps one player from buying a head start
+    // over the rest, at the cost of under-crediting a genuine outlier. Room task queue only.
+    private void updateCreditCap() {
+        List<Long> delays = new ArrayList<>();
+        for (ClientThread player : players.values()) {
+            long oneWay = player.getOneWayMicros();
+            if (oneWay >= 0) {
+                delays.add(oneWay);
+            }
+        }
+        if (delays.isEmpty()) {
+            creditCapMicros = ClockEstimate.MAX_CREDIT_US;
+            return;
+        }
+        Collections.sort(delays);
+        long median = delays.get(delays.size() / 2);
+        creditCapMicros = ClockEstimate.creditFor(CREDIT_MEDIAN_FACTOR * median);
+    }
+
+    // Added by Brooks - Read by the UDP thread when it converts a buzz timestamp
+    long getCreditCapMicros() {
+        return creditCapMicros;
+    }
+
+    // Added by Brooks - A player who leaves while holding the ACK no longer blocks the round
+    void removePlayer(int clientId) {
+        if (players.remove(clientId) == null) {
+            return;
+        }
+        execute(() -> {
+            buzzedThisRound.remove(clientId);
+            leaderboard.remove(clientId);
+            publishedRanks.remove(clientId);
+            if (phase == Phase.ANSWERING && clientId == answeringClientId) {
+                nextBuzzer();
+            } else if (phase == Phase.BUZZING && !players.isEmpty()
+                    && buzzedThisRound.size() >= players.size()) {
+                nextBuzzer();
+            } else if (players.isEmpty() && phase != Phase.LOBBY && phase != Phase.GAME_OVER) {
+                // Everyone left mid-game; nobody is left to play the remaining questions
+                enterPhase(Phase.GAME_OVER, 0, null);
+                endGame();
+            }
+        });
+    }
+
+    // Added by Brooks - Encodes a message once and queues the same frame for every player except excludeId
+    private void broadcast(TCPMessage message, int excludeId) {
+        long start = System.nanoTime();
+        EncodedMessage encoded;
+        try {
+            encoded = EncodedMessage.of(message);
+        } catch (IOException e) {
+            System.err.println("Error encoding " + message.getType() + " broadcast: " + e.getMessage());
+            return;
+        }
+        int sent = 0;
+        for (ClientThread client : players.values()) {
+            if (client.getClientId() == excludeId) {
+                continue;
+            }
+            try {
+                client.sendEncoded(encoded);
+                sent++;
+            } catch (IOException e) {
+                System.err.println("Error sending " + message.getType() + " to client " + client.getClientId());
+            }
+        }
+        BROADCAST_TIME.recordSince(start);
+        BROADCAST_SIZE.record(sent);
+    }
+
+    private void broadcastQuestion(Question question) {
+        broadcast(new TCPMessage(TCPMessage.MessageType.QUESTION, question), -1);
+    }
+
+    // Added by Brooks - A new player gets the top rows everyone else already has, and their own rank
+    private void joinLeaderboard(ClientThread client) {
+        int clientId = client.getClientId();
+        if (!players.containsKey(clientId)) {
+            return; // Left before the task ran
+        }
+        leaderboard.set(clientId, clientScores.getOrDefault(clientId, 0));
+        PlayerRank rank = new PlayerRank(leaderboard.rankOf(clientId), leaderboard.getScore(clientId), leaderboard.size());
+        publishedRanks.put(clientId, rank);
+        try {
+            client.sendMessage(new TCPMessage(TCPMessage.MessageType.LEADERBOARD,
+                    new LeaderboardUpdate(leaderboard.size(), publishedTop.size(), publishedTop)));
+            client.sendMessage(new TCPMessage(TCPMessage.MessageType.RANK, rank));
+        } catch (IOException e) {
+            System.err.println("Error sending leaderboard to client " + clientId);
+        }
+    }
+
+    // Added by Brooks - Sends the rows of the top list that changed since the last publish as one shared frame,
+    // then each player whose own rank or score moved gets a small personal RANK frame. Rank lookups are
+    // O(log N) on the treap, so a round costs O(N log N) at most instead of a full sort per point change.
+    private void publishLeaderboard() {
+        int total = leaderboard.size();
+        List<LeaderboardUpdate.Entry> top = leaderboard.top(TOP_K);
+        List<LeaderboardUpdate.Entry> changes = new ArrayList<>();
+        for (LeaderboardUpdate.Entry row : top) {
+            int index = row.getRank() - 1;
+            if (index >= publishedTop.size() || !row.sameAs(publishedTop.get(index))) {
+                changes.add(row);
+            }
+        }
+        if (!changes.isEmpty() || top.size() != publishedTop.size()) {
+            broadcast(new TCPMessage(TCPMessage.MessageType.LEADERBOARD, new LeaderboardUpdate(total, top.size(), changes)), -1);
+        }
+        publishedTop = top;
+
+        for (ClientThread player : players.values()) {
+            int clientId = player.getClientId();
+            if (!leaderboard.contains(clientId)) {
+                continue;
+            }
+            PlayerRank rank = new PlayerRank(leaderboard.rankOf(clientId), leaderboard.getScore(clientId), total);
+            PlayerRank last = publishedRanks.get(clientId);
+            if (last != null && last.getRank() == rank.getRank() && last.getScore() == rank.getScore()) {
+                continue;
+            }
+            publishedRanks.put(clientId, rank);
+            try {
+                player.sendMessage(new TCPMessage(TCPMessage.MessageType.RANK, rank));
+            } catch (IOException e) {
+                System.err.println("Error sending rank to client " + clientId);
+            }
+        }
+    }
+
+    private void eligibility() {
+        broadcast(new TCPMessage(TCPMessage.MessageType.ELIGIBILITY), -1);
+    }
+
+    // Added by Brooks - Ends this room's game, announces final scores and hands the room back to the lobby
+    private void endGame() {
+        closeDoors();
+        publishLeaderboard();
+        try {
+            EncodedMessage gameOver = EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.GAME_OVER));
+            players.values().forEach(client -> {
+                try {
+                    client.sendGameOver(gameOver);
+                } catch (IOException e) {
+                    System.err.println("Error sending game over to client " + client.getClientId());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error encoding game over: " + e.getMessage());
+        }
+
+        System.out.println("Room " + roomId + " game over! Final scores:");
+        clientScores.forEach((id, score) ->
+            System.out.println("Client " + id + ": " + score + " points"));
+        lobby.roomFinished(this);
+    }
+
+    // Added by Brooks - One buzz, ordered by server-time send instant with arrival as the tie-breaker
+    private static final class Buzz implements Comparable<Buzz> {
+        final int clientId;
+        final long sentAt;
+        final long arrivedAt;
+
+        Buzz(int clientId, long sentAt, long arrivedAt) {
+            this.clientId = clientId;
+            this.sentAt = sentAt;
+            this.arrivedAt = arrivedAt;
+        }
+
+        @Override
+        public int compareTo(Buzz other) {
+            int bySend = Long.compare(sentAt, other.sentAt);
+            return bySend != 0 ? bySend : Long.compare(arrivedAt, other.arrivedAt);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import model.LeaderboardUpdate;
+
+// Added by Brooks - Order-statistics leaderboard for one game room
+// A treap (randomised balanced search tree) ordered by score descending, then player id ascending, where every
+// node also counts the size of its subtree. That makes a score change, a player's rank and the top K all
+// O(log N) (plus K), instead of re-sorting every score on each change. Not thread-safe: a room only touches it
+// from its own task queue.
+public class Leaderboard {
+    private final Map<Integer, Node> nodes = new HashMap<>();
+    private final SplittableRandom priorities = new SplittableRandom();
+    private Node root;
+
+    // Added by Brooks - Sets a player's score, adding the player if new
+    public void set(int playerId, int score) {
+        Node existing = nodes.get(playerId);
+        if (existing != null) {
+            if (existing.score == score) {
+                return;
+            }
+            remove(playerId);
+        }
+        Node node = new Node(playerId, score, priorities.nextInt());
+        nodes.put(playerId, node);
+        Node[] parts = split(root, node, false);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    public void add(int playerId, int delta) {
+        set(playerId, getScore(playerId) + delta);
+    }
+
+    public void remove(int playerId) {
+        Node node = nodes.remove(playerId);
+        if (node == null) {
+            return;
+        }
+        Node[] below = split(root, node, false);   // [before node, node and after]
+        Node[] above = split(below[1], node, true); // [node, after node]
+        root = merge(below[0], above[1]);
+    }
+
+    public int getScore(int playerId) {
+        Node node = nodes.get(playerId);
+        return node != null ? node.score : 0;
+    }
+
+    public boolean contains(int playerId) {
+        return nodes.containsKey(playerId);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    // Added by Brooks - 1-based rank of a player, or 0 if the player is not on the board
+    public int rankOf(int playerId) {
+        Node target = nodes.get(playerId);
+        if (target == null) {
+            return 0;
+        }
+        int before = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = compare(target, node);
+            if (cmp == 0) {
+                return before + size(node.left) + 1;
+            }
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                before += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return 0;
+    }
+
+    // Added by Brooks - The first k rows in rank order
+    public List<LeaderboardUpdate.Entry> top(int k) {
+        List<LeaderboardUpdate.Entry> rows = new ArrayList<>(Math.min(k, nodes.size()));
+        collect(root, k, rows);
+        return rows;
+    }
+
+    private void collect(Node node, int k, List<LeaderboardUpdate.Entry> rows) {
+        if (node == null || rows.size() >= k) {
+            return;
+        }
+        collect(node.left, k, rows);
+        if (rows.size() < k) {
+            rows.add(new LeaderboardUpdate.Entry(rows.size() + 1, node.playerId, node.score));
+            collect(node.right, k, rows);
+        }
+    }
+
+    // Higher score first; ties broken by lower player id so the order is total
+    private static int compare(Node a, Node b) {
+        if (a.score != b.score) {
+            return a.score > b.score ? -1 : 1;
+        }
+        return Integer.compare(a.playerId, b.playerId);
+    }
+
+    // Splits into nodes ordered before key and the rest; with inclusive the key itself goes to the left part
+    private static Node[] split(Node node, Node key, boolean inclusive) {
+        if (node == null) {
+            return new Node[] { null, null };
+        }
+        int cmp = compare(node, key);
+        if (cmp < 0 || (inclusive && cmp == 0)) {
+            Node[] parts = split(node.right, key, inclusive);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, key, inclusive);
+        node.left = parts[1];
+        node.update();
+        parts[1] = node;
+        return parts;
+    }
+
+    // Every node of a orders before every node of b
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static final class Node {
+        final int playerId;
+        final int score;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(int playerId, int score, int priority) {
+            this.playerId = playerId;
+            this.score = score;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = 1 + Leaderboard.size(left) + Leaderboard.size(right);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import client.BotLoop;
+import client.BotStats;
+import client.TriviaBot;
+import model.QuestionBank;
+
+// Added by Brooks - Load test: thousands of headless TriviaBots against one ServerTrivia, in one JVM
+// Usage: java server.LoadTest [--bots N] [--questions Q] [--embedded] [--loops L] [--ramp-ms MS]
+//                             [--buzz-delay-ms MS] [--buzz-jitter-ms MS] [--accuracy P] [--answer-delay-ms MS]
+//                             [--drop P] [--timeout-s S]
+// Bots are driven by a few NIO loops instead of a thread each. The server comes from config/config.txt, or is
+// started inside this JVM with --embedded, which is also what makes its CPU and heap measurable here: process
+// CPU minus the bot loops' own thread CPU, and its metrics are printed alongside the bots' view. Heap is the
+// whole JVM, bots included (a few KB each).
+public class LoadTest {
+    private static final long SAMPLE_INTERVAL_MS = 200;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int bots = Integer.parseInt(options.getOrDefault("bots", "1000"));
+        int questions = Integer.parseInt(options.getOrDefault("questions", "3"));
+        boolean embedded = options.containsKey("embedded");
+        int loopCount = Integer.parseInt(options.getOrDefault("loops",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long rampMs = Long.parseLong(options.getOrDefault("ramp-ms", "0"));
+        long timeoutMs = Long.parseLong(options.getOrDefault("timeout-s", "180")) * 1000;
+        TriviaBot.Behavior behavior = new TriviaBot.Behavior(
+                Long.parseLong(options.getOrDefault("buzz-delay-ms", "200")),
+                Long.parseLong(options.getOrDefault("buzz-jitter-ms", "300")),
+                Double.parseDouble(options.getOrDefault("accuracy", "0.5")),
+                Long.parseLong(options.getOrDefault("answer-delay-ms", "500")),
+                Double.parseDouble(options.getOrDefault("drop", "0")),
+                questions);
+
+        String[] config = readConfig();
+        InetSocketAddress tcpAddress = new InetSocketAddress(config[0], Integer.parseInt(config[1]));
+        InetSocketAddress udpAddress = new InetSocketAddress(config[0], Integer.parseInt(config[2]));
+        PrintStream console = System.out;
+
+        ServerTrivia server = null;
+        if (embedded) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Joins and results would bury the report
+            server = new ServerTrivia();
+            server.readConfig();
+            Thread serverThread = new Thread(server::startServer, "embedded-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            awaitListening(tcpAddress);
+        }
+
+        QuestionBank answerKey = new QuestionBank(); // Same question file as the server, so accuracy is exact
+        BotStats stats = new BotStats();
+        List<BotLoop> loops = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, loopCount); i++) {
+            loops.add(new BotLoop("bot-loop-" + i));
+        }
+
+        Sampler sampler = new Sampler(server, loops);
+        sampler.start();
+        long start = System.nanoTime();
+        List<TriviaBot> swarm = new ArrayList<>(bots);
+        for (int i = 0; i < bots; i++) {
+            BotLoop loop = loops.get(i % loops.size());
+            TriviaBot bot = new TriviaBot(i + 1, loop, tcpAddress, udpAddress, behavior, answerKey, stats, 31L * i + 7);
+            swarm.add(bot);
+            loop.execute(bot::start);
+            if (rampMs > 0 && bots > 1) {
+                Thread.sleep(rampMs / (bots - 1));
+            }
+        }
+
+        long deadline = start + timeoutMs * 1_000_000;
+        int open;
+        while ((open = countOpen(swarm)) > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(SAMPLE_INTERVAL_MS);
+        }
+        long wallNanos = System.nanoTime() - start;
+        for (int i = 0; i < swarm.size(); i++) {
+            loops.get(i % loops.size()).execute(swarm.get(i)::close);
+        }
+        sampler.stop();
+
+        report(console, options, bots, open, wallNanos, stats, sampler, embedded);
+        System.exit(0);
+    }
+
+    // Printed to the original console; an embedded server keeps logging to the silenced System.out
+    private static void report(PrintStream out, Map<String, String> options, int bots, int stillOpen, long wallNanos, BotStats stats,
+            Sampler sampler, boolean embedded) {
+        out.printf("bots=%d questions=%s loops=%s embedded=%s, ran %.1f s%s%n", bots,
+                options.getOrDefault("questions", "3"), options.getOrDefault("loops",
+                        String.valueOf(Runtime.getRuntime().availableProcessors())), embedded, wallNanos / 1e9,
+                stillOpen > 0 ? " (timed out with " + stillOpen + " bots still playing)" : "");
+        out.printf("connected %d, failed %d, peak rooms %s%n", stats.connected.get(), stats.connectFailures.get(),
+                embedded ? String.valueOf(sampler.peakRooms) : "n/a");
+        printLatency(out, "join (connect -> seated in a room)", stats.joinMicros());
+        printLatency(out, "buzz -> BUZZ_ACK (UDP)", stats.buzzAckMicros());
+        printLatency(out, "buzz -> ACK/NACK (arbitration)", stats.verdictMicros());
+        printLatency(out, "PREFETCH fan-out (first -> last bot in a room)", stats.prefetchSpreadMicros());
+        printLatency(out, "REVEAL_KEY fan-out", stats.revealKeySpreadMicros());
+        printLatency(out, "reveal skew across a room", stats.revealSkewMicros());
+        out.printf("buzzes %d, retransmits %d, never acknowledged %d%n", stats.buzzes.get(),
+                stats.retransmits.get(), stats.unacknowledged.get());
+        out.printf("ACK %d, NACK %d, correct %d, wrong %d, timeouts %d%n", stats.acks.get(), stats.nacks.get(),
+                stats.correct.get(), stats.wrong.get(), stats.timeouts.get());
+        out.printf("left %d, dropped %d, game over %d, errors %d%n", stats.left.get(), stats.dropped.get(),
+                stats.gamesOver.get(), stats.errors.get());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double wallSeconds = wallNanos / 1e9;
+        double botCpu = sampler.botCpuNanos / 1e9;
+        if (sampler.processCpuNanos >= 0) {
+            double processCpu = sampler.processCpuNanos / 1e9;
+            String label = embedded ? "server (process - bot loops)" : "JVM other than bot loops";
+            out.printf("CPU: bot loops %.2f s, %s %.2f s = %.0f%% of %d core(s)%n", botCpu, label,
+                    processCpu - botCpu, 100 * (processCpu - botCpu) / wallSeconds / cores, cores);
+        } else {
+            out.printf("CPU: bot loops %.2f s%n", botCpu);
+        }
+        if (embedded) {
+            // Added by Brooks - The server's own view of the same run, from its metrics
+            for (String name : new String[] { "udp.buzz.handle.us", "buzz.to.ack.us", "room.broadcast.us",
+                    "tcp.queue.wait.us", "tcp.send.us" }) {
+                LatencyHistogram histogram = Metrics.findHistogram(name);
+                if (histogram != null && histogram.getCount() > 0) {
+                    out.printf("server %-41s n=%-6d p50 %8.2f ms  p90 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n", name,
+                            histogram.getCount(), histogram.getPercentile(50) / 1000.0,
+                            histogram.getPercentile(90) / 1000.0, histogram.getPercentile(99) / 1000.0,
+                            histogram.getMax() / 1000.0);
+                }
+            }
+        }
+        out.printf("heap: peak %.1f MB used, %.1f MB after GC%n", sampler.peakHeap / 1048576.0,
+                sampler.finalHeap / 1048576.0);
+    }
+
+    private static void printLatency(PrintStream out, String name, long[] sorted) {
+        if (sorted.length == 0) {
+            out.printf("%-48s no samples%n", name);
+            return;
+        }
+        out.printf("%-48s n=%-6d p50 %8.2f ms  p90 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n", name, sorted.length,
+                BotStats.percentile(sorted, 50) / 1000.0, BotStats.percentile(sorted, 90) / 1000.0,
+                BotStats.percentile(sorted, 99) / 1000.0, sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private static int countOpen(List<TriviaBot> swarm) {
+        int open = 0;
+        for (TriviaBot bot : swarm) {
+            if (!bot.isClosed()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                System.out.println("Unexpected argument " + args[i] + "; see the usage at the top of LoadTest.java");
+                System.exit(1);
+            }
+            String name = args[i].substring(2);
+            if (name.equals("embedded")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                System.out.println("Missing value for --" + name);
+                System.exit(1);
+            }
+        }
+        return options;
+    }
+
+    // Same file and format ClientWindow and ServerTrivia read: IP, TCP port, UDP port
+    private static String[] readConfig() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader("config/config.txt"))) {
+            return new String[] { reader.readLine().trim(), reader.readLine().trim(), reader.readLine().trim() };
+        }
+    }
+
+    private static void awaitListening(InetSocketAddress address) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try (Socket probe = new Socket()) {
+                probe.connect(address, 100);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Embedded server did not start listening on " + address);
+    }
+
+    // Added by Brooks - Background sampling of heap, rooms and CPU while the test runs
+    private static final class Sampler implements Runnable {
+        private final ServerTrivia server;
+        private final List<BotLoop> loops;
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final Thread thread = new Thread(this, "load-test-sampler");
+        private volatile boolean running = true;
+        private final long processCpuStart;
+        private final long botCpuStart;
+
+        volatile long peakHeap;
+        volatile int peakRooms;
+        long finalHeap;
+        long processCpuNanos;
+        long botCpuNanos;
+
+        Sampler(ServerTrivia server, List<BotLoop> loops) {
+            this.server = server;
+            this.loops = loops;
+            this.processCpuStart = processCpu();
+            this.botCpuStart = botCpu();
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+                if (server != null) {
+                    peakRooms = Math.max(peakRooms, server.getLobby().getRoomCount());
+                }
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.interrupt();
+            thread.join();
+            long processCpu = processCpu();
+            processCpuNanos = processCpu < 0 ? -1 : processCpu - processCpuStart;
+            botCpuNanos = botCpu() - botCpuStart;
+            System.gc();
+            finalHeap = memory.getHeapMemoryUsage().getUsed();
+        }
+
+        private long botCpu() {
+            long total = 0;
+            for (BotLoop loop : loops) {
+                total += loop.getCpuNanos();
+            }
+            return total;
+        }
+
+        // -1 where the JVM does not expose process CPU time
+        private static long processCpu() {
+            java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            }
+            return -1;
+        }
+    }
+}
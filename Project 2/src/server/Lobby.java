@@ -0,0 +1,58 @@
+package server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import model.QuestionBank;
+
+// Added by Brooks - Matchmaking: every new connection is placed in the open room, and a new room is opened
+// when the current one fills up or starts its first question. Rooms that finish are dropped from the registry.
+public class Lobby {
+    private final int roomCapacity;
+    private final ScheduledExecutorService scheduler;
+    private final QuestionBank questions;
+    private final Map<Integer, GameRoom> rooms = new ConcurrentHashMap<>();
+    private GameRoom openRoom; // Guarded by this
+    private int nextRoomId = 1;
+
+    public Lobby(int roomCapacity, ScheduledExecutorService scheduler, QuestionBank questions) {
+        this.roomCapacity = roomCapacity;
+        this.scheduler = scheduler;
+        this.questions = questions;
+    }
+
+    // Added by Brooks - Assigns a freshly connected client to a room; the room is set on the client before it
+    // is registered with its reactor, so the first frames it receives already come from that room
+    public synchronized GameRoom assign(ClientThread client) {
+        while (openRoom == null || !openRoom.tryAddPlayer(client)) {
+            openRoom = new GameRoom(nextRoomId++, roomCapacity, this, scheduler, new QuestionBank(questions));
+            rooms.put(openRoom.getRoomId(), openRoom);
+            System.out.println("Opened room " + openRoom.getRoomId());
+        }
+        return openRoom;
+    }
+
+    void roomFinished(GameRoom room) {
+        rooms.remove(room.getRoomId());
+        synchronized (this) {
+            if (openRoom == room) {
+                openRoom = null;
+            }
+        }
+        System.out.println("Room " + room.getRoomId() + " closed, " + rooms.size() + " rooms running");
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    // Added by Brooks - Events waiting on all rooms' task queues, for the metrics
+    public long getPendingTasks() {
+        long pending = 0;
+        for (GameRoom room : rooms.values()) {
+            pending += room.getPendingTasks();
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,207 @@
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Added by Brooks - Server-wide counters, gauges and latency histograms
+// Metrics are registered once, usually as static finals next to the code they measure, and updated without locks:
+// counters are LongAdders, histograms are LatencyHistograms, and gauges are read only when someone looks. The
+// registry is published over JMX (trivia:type=Metrics, one attribute per number) and as plain text by
+// MetricsEndpoint. Names are dotted; histograms of times end in ".us" (microseconds).
+public final class Metrics {
+    private static final String[] QUANTILES = { "p50", "p90", "p99" };
+    private static final double[] PERCENTS = { 50, 90, 99 };
+
+    private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static LongAdder counter(String name, String help) {
+        return register(name, help, Kind.COUNTER, new LongAdder(), null, null).counter;
+    }
+
+    public static LatencyHistogram histogram(String name, String help) {
+        return register(name, help, Kind.HISTOGRAM, null, new LatencyHistogram(), null).histogram;
+    }
+
+    // Added by Brooks - Looks up a histogram registered elsewhere, or null if there is none by that name
+    public static LatencyHistogram findHistogram(String name) {
+        Metric metric = REGISTRY.get(name);
+        return metric != null && metric.kind == Kind.HISTOGRAM ? metric.histogram : null;
+    }
+
+    // Added by Brooks - Re-registering a gauge replaces it, so a restarted component reports its new state
+    public static void gauge(String name, String help, LongSupplier value) {
+        REGISTRY.put(name, new Metric(name, help, Kind.GAUGE, null, null, value));
+    }
+
+    private static Metric register(String name, String help, Kind kind, LongAdder counter, LatencyHistogram histogram,
+            LongSupplier gauge) {
+        Metric metric = REGISTRY.computeIfAbsent(name, n -> new Metric(n, help, kind, counter, histogram, gauge));
+        if (metric.kind != kind) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.kind);
+        }
+        return metric;
+    }
+
+    // Added by Brooks - Prometheus text exposition format, so any scraper or a plain curl can read it
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : REGISTRY.values()) {
+            String name = "trivia_" + metric.name.replace('.', '_');
+            out.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+            switch (metric.kind) {
+                case COUNTER:
+                    out.append("# TYPE ").append(name).append(" counter\n");
+                    out.append(name).append(' ').append(metric.counter.sum()).append('\n');
+                    break;
+                case GAUGE:
+                    out.append("# TYPE ").append(name).append(" gauge\n");
+                    out.append(name).append(' ').append(metric.gauge.getAsLong()).append('\n');
+                    break;
+                default:
+                    LatencyHistogram histogram = metric.histogram;
+                    out.append("# TYPE ").append(name).append(" summary\n");
+                    for (double percent : PERCENTS) {
+                        out.append(name).append("{quantile=\"").append(percent / 100).append("\"} ")
+                                .append(histogram.getPercentile(percent)).append('\n');
+                    }
+                    out.append(name).append("_max ").append(histogram.getMax()).append('\n');
+                    out.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+                    out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    // Added by Brooks - Registers the JMX view; safe to call more than once
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("trivia:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Cannot register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    private enum Kind { COUNTER, GAUGE, HISTOGRAM }
+
+    private static final class Metric {
+        final String name;
+        final String help;
+        final Kind kind;
+        final LongAdder counter;
+        final LatencyHistogram histogram;
+        final LongSupplier gauge;
+
+        Metric(String name, String help, Kind kind, LongAdder counter, LatencyHistogram histogram, LongSupplier gauge) {
+            this.name = name;
+            this.help = help;
+            this.kind = kind;
+            this.counter = counter;
+            this.histogram = histogram;
+            this.gauge = gauge;
+        }
+    }
+
+    // Added by Brooks - Every counter and gauge is one attribute; a histogram "x" becomes x.count, x.mean, x.p50,
+    // x.p90, x.p99 and x.max. The attribute list is rebuilt on each request, so metrics registered later appear too.
+    private static final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Metric metric = REGISTRY.get(attribute);
+            if (metric != null && metric.kind == Kind.COUNTER) {
+                return metric.counter.sum();
+            }
+            if (metric != null && metric.kind == Kind.GAUGE) {
+                return metric.gauge.getAsLong();
+            }
+            int dot = attribute.lastIndexOf('.');
+            metric = dot < 0 ? null : REGISTRY.get(attribute.substring(0, dot));
+            if (metric != null && metric.kind == Kind.HISTOGRAM) {
+                LatencyHistogram histogram = metric.histogram;
+                String field = attribute.substring(dot + 1);
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    if (QUANTILES[i].equals(field)) {
+                        return histogram.getPercentile(PERCENTS[i]);
+                    }
+                }
+                switch (field) {
+                    case "count":
+                        return histogram.getCount();
+                    case "mean":
+                        return (long) histogram.getMean();
+                    case "max":
+                        return histogram.getMax();
+                    default:
+                        break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Unknown names are left out, as the DynamicMBean contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Metric metric : REGISTRY.values()) {
+                if (metric.kind != Kind.HISTOGRAM) {
+                    attributes.add(new MBeanAttributeInfo(metric.name, "long", metric.help, true, false, false));
+                    continue;
+                }
+                for (String field : new String[] { "count", "mean", "p50", "p90", "p99", "max" }) {
+                    attributes.add(new MBeanAttributeInfo(metric.name + "." + field, "long",
+                            metric.help + " (" + field + ")", true, false, false));
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Trivia server metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("No operations on trivia metrics");
+        }
+    }
+}
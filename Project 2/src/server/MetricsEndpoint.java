@@ -0,0 +1,45 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+// Added by Brooks - Local text endpoint for the metrics: GET http://127.0.0.1:<port>/metrics
+// Bound to loopback only, since it is meant for a scraper or an operator on the same machine, not for players.
+// One daemon thread serves it; rendering reads the counters without stopping the game.
+public class MetricsEndpoint {
+    private final HttpServer http;
+
+    public MetricsEndpoint(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> {
+            try {
+                byte[] body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        http.setExecutor(null); // The server's own dispatcher thread is enough for an occasional scrape
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    public void stop() {
+        http.stop(0);
+    }
+}
@@ -5,35 +5,42 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashMap;
+import java.security.SecureRandom;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
-import model.PlayerAnswer;
-import model.Question;
 import model.QuestionBank;
-import model.TCPMessage;
 
 public class ServerTrivia {
     private ExecutorService executorService;
     private UDPThread udpThread;
-    private int nextClientID = 1;
+    private ConnectionEngine connectionEngine; // Added by Brooks - Non-blocking TCP engine, ids are assigned there atomically
     private String serverIP;
     private int serverPort1; // TCP Port
     private int serverPort2; // UDP Port
+    private int metricsPort = DEFAULT_METRICS_PORT; // Added by Brooks - Local metrics endpoint, optional 4th config line
+    private MetricsEndpoint metricsEndpoint;
     private Map<Integer, ClientThread> activeClients = new ConcurrentHashMap<>();
-    private Question currentQuestion;
+    // Added by Brooks - Session token index, so UDPThread resolves a buzz without scanning every client
+    private final Map<Long, ClientThread> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom tokenSource = new SecureRandom();
     
-    // Added by Brooks - Thread-safe score tracking for all clients
-    private final Map<Integer, Integer> clientScores = new ConcurrentHashMap<>();
-    // Added by Brooks - Question bank to serve questions to clients
+    // Added by Brooks - Question bank loaded once; every room gets its own cursor over it
     private QuestionBank questionBank = new QuestionBank();
-    // Added by Brooks - Flag to control game state
-    private volatile boolean gameActive = true;
+
+    // Added by Brooks - Rooms share one bounded pool for their rounds and timers instead of a thread per game
+    private static final int ROOM_CAPACITY = 32;
+    private static final int DEFAULT_METRICS_PORT = 7002;
+    private final ScheduledExecutorService roomScheduler = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "game-room");
+                t.setDaemon(true);
+                return t;
+            });
+    private final Lobby lobby = new Lobby(ROOM_CAPACITY, roomScheduler, questionBank);
     
     // Added by Eric - Server Trivia Constructor
     public ServerTrivia() {
@@ -47,48 +54,29 @@ public class ServerTrivia {
             serverIP = reader.readLine().trim();
             serverPort1 = Integer.parseInt(reader.readLine().trim());
             serverPort2 = Integer.parseInt(reader.readLine().trim());
+            // Added by Brooks - Clients stop after three lines, so the metrics port can follow without affecting them
+            String metricsLine = reader.readLine();
+            if (metricsLine != null && !metricsLine.isBlank()) {
+                metricsPort = Integer.parseInt(metricsLine.trim());
+            }
             System.out.println("Server configured - IP: " + serverIP + 
                              " TCP: " + serverPort1 + 
-                             " UDP: " + serverPort2);
+                             " UDP: " + serverPort2 +
+                             " metrics: " + metricsPort);
         } catch (IOException e) {
             throw new RuntimeException("Error reading server config: " + e.getMessage());
         }
     }
 
-    // Added by Brooks - Initializes score tracking for new clients
-    public void initializeClientScore(int clientID) {
-        clientScores.put(clientID, 0);
-        System.out.println("Score initialized for client " + clientID);
-    }
-    
-    // Added by Brooks - Updates client score with positive/negative delta
-    public void updateClientScore(int clientID, int delta) {
-        clientScores.merge(clientID, delta, Integer::sum);
-        broadcastScores();
-    }
-    
-    // Added by Brooks - Retrieves current score for specified client
-    public int getClientScore(int clientID) {
-        return clientScores.getOrDefault(clientID, 0);
-    }
-
-    // Added by Brooks - Validates player answer against correct answer
-    public boolean validateAnswer(PlayerAnswer answer) {
-        Question question = questionBank.getQuestion(answer.getQuestionId());
-
-        return question != null && 
-               question.getCorrectAnswer() == answer.getSelectedOption();
-    }
-
     // Added by Eric - Start Trivia Server
     // Modified by Brooks - Added full server startup sequence with proper resource cleanup
     public void startServer() {
-        ServerSocket serverSocket = null;
         DatagramSocket udpSocket = null;
         
         try {
             // Start TCP server socket
-            serverSocket = new ServerSocket(serverPort1, 50, InetAddress.getByName(serverIP));
+            // Modified by Brooks - Selector-based engine, one reactor per core instead of one thread per client
+            connectionEngine = new ConnectionEngine(serverIP, serverPort1, Runtime.getRuntime().availableProcessors(), this);
             System.out.println("TCP server started on " + serverIP + ":" + serverPort1);
 
             // Start UDP server socket
@@ -99,33 +87,26 @@ public class ServerTrivia {
             udpThread = new UDPThread(udpSocket, this);
             executorService.submit(udpThread);
 
-            // Start game question loop
-                                                               // MAKE GAME WAIT FOR 10 SEC FOR PEOPLE TO JOIN.
-            startGame();
+            // Added by Brooks - Metrics over JMX and a loopback text endpoint; the game runs on without them
+            registerGauges();
+            Metrics.registerMBean();
+            try {
+                metricsEndpoint = new MetricsEndpoint(metricsPort);
+                metricsEndpoint.start();
+                System.out.println("Metrics at http://127.0.0.1:" + metricsEndpoint.getPort() + "/metrics");
+            } catch (IOException e) {
+                System.err.println("Metrics endpoint not started on port " + metricsPort + ": " + e.getMessage());
+            }
 
             // Accept client connections
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("New client connected: " + clientSocket.getInetAddress());
-
-                int clientID = nextClientID++;
-                ClientThread clientThread = new ClientThread(clientSocket, clientID, this);
-                
-                initializeClientScore(clientID);
-                activeClients.put(clientID, clientThread);
-                executorService.submit(clientThread);
-            }
+            connectionEngine.run();
 
         } catch (Exception e) {
             System.err.println("Server error: " + e.getMessage());
         } finally {
             // Added by Brooks - Proper resource cleanup
-            try {
-                if (serverSocket != null && !serverSocket.isClosed()) {
-                    serverSocket.close();
-                }
-            } catch (IOException e) {
-                System.err.println("Error closing TCP server socket: " + e.getMessage());
+            if (connectionEngine != null) {
+                connectionEngine.close();
             }
             try {
                 if (udpSocket != null && !udpSocket.isClosed()) {
@@ -138,177 +119,66 @@ public class ServerTrivia {
         }
     }
 
-    // Added by Brooks - Manages the game question flow in separate thread
-    // Modified by Eric - Added ACK/NACK logic, answer handling, thread timing logic with sleeps and loops, resets Buzz queue and answer of client
-    // Modified by Pierce - updates client eligibilities before sending a question to the client.
-    // Modified by Brooks - Added logic for extra credit
-    private void startGame() {
-        new Thread(() -> {
-            try {
-                Thread.sleep(10000); // Initial wait for players to join
-                while (gameActive && questionBank.hasMoreQuestions()) {
-                    currentQuestion = questionBank.getNextQuestion();
-                    eligibility();
-                    broadcastQuestion(currentQuestion);
-                    udpThread.clearBuzzQueue(); // Reset the buzz queue
-
-                    // Wait 15 seconds for buzzes
-                    Thread.sleep(15000);
-
-                    // NEW: Flag to track if question was answered correctly
-                    boolean correctAnswerReceived = false;
-                    
-                    // NEW: Process buzzes in order until correct answer or queue empty
-                    while (!correctAnswerReceived && !udpThread.isBuzzQueueEmpty()) {
-                        Integer answeringClientId = udpThread.getFirstBuzzedClient();
-                        if (answeringClientId != null) {
-                            ClientThread answeringClient = activeClients.get(answeringClientId);
-                            if (answeringClient != null) {
-                                // Send ACK to answering client
-                                try {
-                                    answeringClient.sendAck();
-                                } catch (IOException e) {
-                                    System.err.println("Error sending ACK to client " + answeringClientId);
-                                    continue;
-                                }
-                                answeringClient.clearAnswer();
-
-                                // Send NACK to all other active clients
-                                activeClients.values().forEach(c -> {
-                                    if (c.getClientId() != answeringClientId) {
-                                        try {
-                                            c.sendNack();
-                                        } catch (IOException e) {
-                                            System.err.println("Error sending NACK to client " + c.getClientId());
-                                        }
-                                    }
-                                });
-
-                                // Wait up to 10 seconds for the answer
-                                long startTime = System.currentTimeMillis();
-                                PlayerAnswer answer = null;
-                                while (System.currentTimeMillis() - startTime < 10000) {
-                                    answer = answeringClient.getAnswer();
-                                    if (answer != null) {
-                                        if (validateAnswer(answer)) {
-                                            updateClientScore(answeringClientId, 10);
-                                            try {
-                                                answeringClient.sendRight();
-                                            } catch (IOException e) {
-                                                System.err.println("Error sending RIGHT to client " + answeringClientId);
-                                            }
-                                            correctAnswerReceived = true;
-                                        } else {
-                                            updateClientScore(answeringClientId, -10);
-                                            try {
-                                                answeringClient.sendWrong();
-                                            } catch (IOException e) {
-                                                System.err.println("Error sending WRONG to client " + answeringClientId);
-                                            }
-                                            // NEW: Break to give next client a chance
-                                            break;
-                                        }
-                                        break; // Exit loop once answer is received
-                                    }
-                                    Thread.sleep(100); // Check every 100ms
-                                }
-
-                                if (answer == null) { // No answer received after 10 seconds
-                                    updateClientScore(answeringClientId, -20);
-                                    try {
-                                        answeringClient.sendTimeout();
-                                    } catch (IOException e) {
-                                        System.err.println("Error sending TIMEOUT to client " + answeringClientId);
-                                    }
-                                    // NEW: Timeout - break to give next client a chance
-                                }
-                                answeringClient.clearAnswer();
-                            }
-                        }
-                    }
-                    Thread.sleep(5000); // Brief pause between questions
-                }
-                endGame();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
-    }
-
-    // Added by Brooks - Broadcasts question to all connected clients
-    private void broadcastQuestion(Question question) {
-        activeClients.values().forEach(client -> {
-            try {
-                client.sendQuestion(question);
-            } catch (IOException e) {
-                System.err.println("Error sending question to client " + client.getClientId());
-            }
-        });
-    }
-
-    private void broadcastScores() {
-    activeClients.values().forEach(client -> {
-        try {
-            client.sendMessage(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, 
-                new HashMap<>(clientScores)));
-        } catch (IOException e) {
-            System.err.println("Error sending scores to client " + client.getClientId());
-        }
-    });
-}
-
-    //Added by Pierce - sends ELIGIBILITY message to client allowing them to press the poll button.
-    private void eligibility() {
-        activeClients.values().forEach(client -> {
-            try {
-                client.sendEligibility();
-            } catch (IOException e) {
-                System.err.println("Error sending eligibility to client " + client.getClientId());
-            }
-        });
-    }
-
-    // Added by Brooks - Ends game and announces final scores
-    private void endGame() {
-        gameActive = false;
-        activeClients.values().forEach(client -> {
-            try {
-                client.sendGameOver();
-            } catch (IOException e) {
-                System.err.println("Error sending game over to client " + client.getClientId());
-            }
-        });
-        
-        System.out.println("Game over! Final scores:");
-        clientScores.forEach((id, score) -> 
-            System.out.println("Client " + id + ": " + score + " points"));
-    }
-
     // Added by Eric - Shutdown server thread pool
     private void shutdown() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
         executorService.shutdown();
+        roomScheduler.shutdown();
         System.out.println("Server shutting down...");
     }
 
+    // Added by Brooks - Gauges are read only when metrics are scraped, so they cost nothing between scrapes
+    private void registerGauges() {
+        Metrics.gauge("clients.connected", "Connected players", activeClients::size);
+        Metrics.gauge("rooms.active", "Game rooms in the lobby or playing", lobby::getRoomCount);
+        Metrics.gauge("rooms.tasks.pending", "Events queued on all rooms' task queues", lobby::getPendingTasks);
+        Metrics.gauge("tcp.outbound.frames", "Frames queued to clients and not yet fully written",
+                ClientThread::getQueuedFrameCount);
+        Metrics.gauge("udp.packets.dropped", "Buzz datagrams discarded as malformed or with an unknown session",
+                () -> udpThread == null ? 0 : udpThread.getDroppedPackets());
+    }
+
     // Added by Eric - Method to get all connected clients
     public Map<Integer, ClientThread> getActiveClients() {
         return activeClients;
     }
 
     // Added by Eric - Method to add a new client to the map
+    // Modified by Brooks - Matchmaking places the client in a game room before its first frame is sent
+    // Modified by Brooks - Issues the session token the client must put in its buzz packets
     public void addClient(int clientID, ClientThread clientThread) {
         activeClients.put(clientID, clientThread);
+        long token;
+        do {
+            token = tokenSource.nextLong();
+        } while (token == 0 || sessions.putIfAbsent(token, clientThread) != null);
+        clientThread.setSessionToken(token);
+        lobby.assign(clientThread);
     }
 
     // Added by Eric - Method to remove a client from the map
+    // Modified by Brooks - Lets the client's room react to the departure
     public void removeClient(int clientID) {
-        activeClients.remove(clientID);
+        ClientThread client = activeClients.remove(clientID);
+        if (client != null) {
+            sessions.remove(client.getSessionToken());
+            if (client.getRoom() != null) {
+                client.getRoom().removePlayer(clientID);
+            }
+        }
         System.out.println("Client " + clientID + " removed");
     }
 
-    // Added by Eric - Method to get the current question the game server/loop sent to the clients
-    public Question getCurrentQuestion() {
-        return currentQuestion;
+    // Added by Brooks - Resolves a buzz packet's session token to its client, or null if the token is unknown
+    public ClientThread getClientBySession(long token) {
+        return sessions.get(token);
+    }
+
+    // Added by Brooks - Matchmaking state, for monitoring
+    public Lobby getLobby() {
+        return lobby;
     }
 
     // Added by Eric - main method to start trivia server
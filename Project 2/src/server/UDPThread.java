@@ -1,106 +1,91 @@
 package server;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
+import model.ClockProbe;
 import model.UDPMessage;
 
 // Added by Eric - THIS CLASS HANDLES THE COMMUNICATION BETWEEN THE SERVER AND ALL THE CLIENTS
-// UDP 
+// UDP
 public class UDPThread implements Runnable{
 
     private DatagramSocket socket;
     private ServerTrivia server;
-    private Queue<Integer> buzzQueue;
-    
+    private volatile long droppedPackets; // Added by Brooks - Malformed packets and unknown tokens, counted instead of logged
+    // Added by Brooks - Metrics; the handling time covers decode, session lookup, the ack and the hand-off to the room
+    private static final LongAdder RECEIVED = Metrics.counter("udp.packets.received", "Datagrams received on the buzz port");
+    private static final LongAdder ACKS_SENT = Metrics.counter("udp.acks.sent", "BUZZ_ACKs sent");
+    private static final LatencyHistogram HANDLE_TIME = Metrics.histogram("udp.buzz.handle.us",
+            "Time from receiving a buzz to handing it to its room");
+
     public UDPThread(DatagramSocket socket, ServerTrivia server) {
         this.socket = socket;
         this.server = server;
-        this.buzzQueue = new ConcurrentLinkedQueue<>();
     }
 
     // Added by Eric - Method to listen for incoming UDP packets from all clients
+    // Modified by Brooks - One reused packet, decoded in place, sender resolved by session token in O(1)
     @Override
     public void run() {
         try {
             byte[] incomingData = new byte[512];
+            DatagramPacket incomingPacket = new DatagramPacket(incomingData, incomingData.length);
             while (true) {
-                DatagramPacket incomingPacket = new DatagramPacket(incomingData, incomingData.length);
+                incomingPacket.setLength(incomingData.length);
                 socket.receive(incomingPacket);
+                long arrival = ClockProbe.nowMicros();
+                long received = System.nanoTime();
+                RECEIVED.increment();
 
-                // Process the incoming packet
-                String clientIP = incomingPacket.getAddress().getHostAddress();
-                
                 // Decode the message from the packet
                 UDPMessage receivedMessage = UDPMessage.decode(
-                    java.util.Arrays.copyOfRange(incomingPacket.getData(), 0, incomingPacket.getLength())
-                );
-                
-                if (receivedMessage == null) {
-                    System.err.println("Failed to decode message from IP: " + clientIP);
+                    incomingData, incomingPacket.getOffset(), incomingPacket.getLength());
+                if (receivedMessage == null || receivedMessage.getType() != UDPMessage.BUZZ) {
+                    droppedPackets++;
                     continue;
                 }
 
-                // Find the client thread based on IP
-                ClientThread clientThread = getClientThreadByIP(clientIP);
-                if (clientThread != null) {
-                    // Process the message and handle buzz logic
-                    processBuzz(clientThread, receivedMessage);
-                } else {
-                    System.err.println("Unknown client IP: " + clientIP);
+                // Find the client thread based on the session token; forged or stale tokens are dropped
+                ClientThread clientThread = server.getClientBySession(receivedMessage.getSessionToken());
+                if (clientThread == null) {
+                    droppedPackets++;
+                    continue;
                 }
+                // Added by Brooks - Acknowledge before anything else so the client stops retransmitting; duplicates
+                // are acknowledged too, since the ack for the first copy may have been the one that was lost
+                byte[] ack = UDPMessage.ack(receivedMessage).encode();
+                try {
+                    socket.send(new DatagramPacket(ack, ack.length, incomingPacket.getSocketAddress()));
+                    ACKS_SENT.increment();
+                } catch (IOException e) {
+                    System.err.println("Error acknowledging buzz from client " + clientThread.getClientId() + ": " + e.getMessage());
+                }
+                processBuzz(clientThread, receivedMessage, arrival);
+                HANDLE_TIME.recordSince(received);
             }
         } catch (Exception e) {
             System.err.println("Error in UDP listening thread: " + e.getMessage());
         }
     }
 
-    // Added by Eric - Resets the buzz queue after the game loop for one question finishes in the server
-    // Modified by Brooks - Improved queue clearing
-    public void clearBuzzQueue() {
-        if (!buzzQueue.isEmpty()) {
-            System.out.println("Clearing buzz queue: " + buzzQueue);
-            buzzQueue.clear();
-        }
-    }
-
-    // Added by Eric - Allows the server to get the ID of the first buzzed client
-    public Integer getFirstBuzzedClient() {
-        return buzzQueue.poll();
-    }
-
-    // Added by Brooks - Added method to check if buzz queue is empty
-    public boolean isBuzzQueueEmpty() {
-        return buzzQueue.isEmpty();
-    }
-
     // Added by Eric - Method to process the buzz while maintaining timestamp order
     // Modified by Brooks - Simplified buzz processing for extra credit feature
-    private void processBuzz(ClientThread clientThread, UDPMessage receivedMessage) {
-        if (clientThread != null) {
-            Integer clientID = clientThread.getClientId();
-            
-            // Prevent duplicate buzzes from same client
-            if (!buzzQueue.contains(clientID)) {
-                buzzQueue.add(clientID);
-                System.out.println("Client " + clientID + " added to buzz queue");
-            }
-            
-            System.out.println("Current Queue: " + buzzQueue);
-        } else {
-            System.out.println("Client not found for IP: " + receivedMessage.getClientIP());
+    // Modified by Brooks - The client's send timestamp is mapped to server time with its clock offset, and the room
+    //                      orders buzzes by that instead of by arrival
+    private void processBuzz(ClientThread clientThread, UDPMessage receivedMessage, long arrival) {
+        // Modified by Brooks - The buzz queue and duplicate check live in the client's game room
+        GameRoom room = clientThread.getRoom();
+        if (room != null) {
+            long sentAt = clientThread.toServerTime(receivedMessage.getTimestamp(), arrival, room.getCreditCapMicros());
+            room.onBuzz(clientThread.getClientId(), sentAt, arrival);
         }
     }
 
-    // Added by Eric - Method to get the client thread based on the UDP client sender IP
-    private ClientThread getClientThreadByIP(String ip) {
-        for (ClientThread client : server.getActiveClients().values()) {
-            if (client.getClientIP().equals(ip)) {
-                return client;
-            }
-        }
-        return null; 
+    // Added by Brooks - Number of datagrams discarded so far
+    public long getDroppedPackets() {
+        return droppedPackets;
     }
 }